@@ -0,0 +1,61 @@
+package lu.apwbd.storecoords;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import lu.apwbd.storecoords.util.LongPosSet;
+import net.minecraft.core.BlockPos;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/**
+ * Deterministic position sets for the benchmarks. Positions are spread over a square area around the
+ * origin and the usual build height, which roughly matches how stored blocks cluster in a real world.
+ */
+public final class BenchData {
+
+    private BenchData() {}
+
+    /**
+     * @param count  number of positions
+     * @param spread half the side length of the square area, in blocks
+     * @param seed   random seed, so every fork sees the same data
+     * @return distinct packed positions ({@code BlockPos.asLong()})
+     */
+    public static long[] positions(int count, int spread, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        LongOpenHashSet seen = new LongOpenHashSet(count);
+        long[] out = new long[count];
+        int n = 0;
+        while (n < count) {
+            long pos = BlockPos.asLong(
+                    random.nextInt(-spread, spread),
+                    random.nextInt(-64, 320),
+                    random.nextInt(-spread, spread));
+            if (seen.add(pos)) out[n++] = pos;
+        }
+        return out;
+    }
+
+    /**
+     * @return the positions {@code from} (inclusive) to {@code to} (exclusive) of {@code positions} as a set
+     */
+    public static LongPosSet set(long[] positions, int from, int to) {
+        LongPosSet set = new LongPosSet(to - from);
+        for (int i = from; i < to; i++) set.add(positions[i]);
+        return set;
+    }
+
+    /**
+     * Deletes a benchmark's temporary directory and everything the code under test wrote into it.
+     */
+    public static void delete(File dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir.toPath())) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(p);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package lu.apwbd.storecoords.client.render;
+
+import lu.apwbd.storecoords.BenchData;
+import lu.apwbd.storecoords.io.CoordsManager;
+import lu.apwbd.storecoords.util.LongPosSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CPU side of the highlighter: the per-frame range filter of the immediate render path, and a
+ * removal from a large position set followed by {@code BlockHighlighter.removeFromCache}, as the key
+ * handlers do it. Frustum culling and vertex emission need a GL context and are left out; headless,
+ * highlighting is off, so the cache invalidation only resets the nearest-first ordering.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HighlightBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int stored;
+
+    @Param({"96"})
+    public int renderDistance;
+
+    private File dir;
+    private CoordsManager manager;
+    private LongPosSet toRemove;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        long[] all = BenchData.positions(stored, 1024, 11L);
+        dir = Files.createTempDirectory("storecoords-bench").toFile();
+        manager = new CoordsManager(dir, () -> CoordsManager.Settings.DEFAULTS);
+        manager.loadAsync(Runnable::run).join();
+        manager.storeAll(BenchData.set(all, 0, all.length));
+        manager.flush();
+
+        toRemove = BenchData.set(all, 0, Math.min(1024, stored));
+    }
+
+    /**
+     * Writes what the last invocation queued, so the write queue does not grow across invocations.
+     */
+    @TearDown(Level.Invocation)
+    public void drain() {
+        manager.flush();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        manager.flush();
+        BenchData.delete(dir);
+    }
+
+    /**
+     * The immediate-mode loop without drawing: visit sections near the player, then filter each
+     * position by squared distance.
+     */
+    @Benchmark
+    public int distanceFilter(Blackhole bh) {
+        return BlockHighlighter.forEachInRange(manager.getPositions(), 0, 64, 0, renderDistance,
+                section -> true, section -> null, (pos, color) -> bh.consume(pos));
+    }
+
+    /**
+     * Removes a batch of positions and invalidates their sections, then stores them again so every
+     * invocation starts from the same set.
+     */
+    @Benchmark
+    public int removeFromCache() {
+        CoordsManager.BatchResult removed = manager.removeAll(toRemove);
+        BlockHighlighter.removeFromCache(removed.changedPositions);
+        CoordsManager.BatchResult restored = manager.storeAll(toRemove);
+        BlockHighlighter.addToCache(restored.changedPositions);
+        return removed.changedCount() + restored.changedCount();
+    }
+}
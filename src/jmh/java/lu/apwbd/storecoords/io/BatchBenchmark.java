@@ -0,0 +1,105 @@
+package lu.apwbd.storecoords.io;
+
+import lu.apwbd.storecoords.BenchData;
+import lu.apwbd.storecoords.client.config.ClientConfig;
+import lu.apwbd.storecoords.util.LongPosSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch stores and removals through {@code CoordsManager.storeAll/removeAll}, in write-behind and in
+ * synchronous mode, and loading and saving a whole partition. The manager gets fixed
+ * {@link CoordsManager.Settings} instead of the client config, which only exists in a running game.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BatchBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int stored;
+
+    @Param({"64", "4096"})
+    public int batch;
+
+    @Param({"true", "false"})
+    public boolean writeBehind;
+
+    private CoordsManager.Settings settings;
+    private File dir;
+    private CoordsManager manager;
+    private LongPosSet fresh;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        long[] all = BenchData.positions(stored + batch, 4096, 7L);
+
+        CoordsManager.Settings defaults = CoordsManager.Settings.DEFAULTS;
+        settings = new CoordsManager.Settings(writeBehind, defaults.writeDelayMs(), defaults.historyMaxEntries(),
+                defaults.historyMaxBytes(), ClientConfig.StorageFormat.BINARY, defaults.journalCompactBytes());
+
+        dir = Files.createTempDirectory("storecoords-bench").toFile();
+        manager = new CoordsManager(dir, () -> settings);
+        manager.loadAsync(Runnable::run).join();
+        manager.storeAll(BenchData.set(all, 0, stored));
+        manager.flush();
+
+        fresh = BenchData.set(all, stored, stored + batch);
+    }
+
+    /**
+     * Writes what a write-behind invocation queued, so the write queue does not grow across invocations.
+     */
+    @TearDown(Level.Invocation)
+    public void drain() {
+        manager.flush();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        manager.flush();
+        BenchData.delete(dir);
+    }
+
+    /**
+     * Stores the batch and removes it again, so the set is the same size on every invocation. In
+     * synchronous mode this includes both journal appends; in write-behind mode they happen afterwards.
+     */
+    @Benchmark
+    public int storeAndRemove() {
+        return manager.storeAll(fresh).changedCount() + manager.removeAll(fresh).changedCount();
+    }
+
+    /**
+     * Like {@link #storeAndRemove()}, but waits until both changes are on disk.
+     */
+    @Benchmark
+    public boolean storeAndRemoveDurably() {
+        manager.storeAll(fresh);
+        manager.removeAll(fresh);
+        return manager.flush();
+    }
+
+    /**
+     * What joining a world costs: a new manager reading the partition's snapshot and journal.
+     */
+    @Benchmark
+    public int load() {
+        CoordsManager loading = new CoordsManager(dir, () -> settings);
+        loading.loadAsync(Runnable::run).join();
+        return loading.getPositions().size();
+    }
+}
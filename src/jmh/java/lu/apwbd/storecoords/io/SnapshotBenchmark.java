@@ -0,0 +1,81 @@
+package lu.apwbd.storecoords.io;
+
+import lu.apwbd.storecoords.BenchData;
+import lu.apwbd.storecoords.util.SectionIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full snapshot load and save in both formats, i.e. what {@code CoordsManager} does on world join
+ * and on journal compaction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SnapshotBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"YAML", "BINARY"})
+    public String format;
+
+    private long[] positions;
+    private File dir;
+    private File snapshot;
+    private File target;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        positions = BenchData.positions(size, 4096, 42L);
+        dir = Files.createTempDirectory("storecoords-bench").toFile();
+        snapshot = new File(dir, "snapshot");
+        target = new File(dir, "target");
+        write(snapshot, positions.clone());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        snapshot.delete();
+        target.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public SectionIndex load() throws IOException {
+        SectionIndex index = new SectionIndex();
+        if (format.equals("YAML")) {
+            YamlCoordsFile.read(snapshot, index::add);
+        } else {
+            BinaryCoordsFile.read(snapshot, index::add);
+        }
+        return index;
+    }
+
+    @Benchmark
+    public long save() throws IOException {
+        write(target, positions.clone());
+        return target.length();
+    }
+
+    private void write(File file, long[] packed) throws IOException {
+        if (format.equals("YAML")) {
+            YamlCoordsFile.write(file, packed, packed.length);
+        } else {
+            BinaryCoordsFile.write(file, packed, packed.length);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.mojang.logging.LogUtils;
 
 import lu.apwbd.storecoords.client.KeyInputHandler;
 import lu.apwbd.storecoords.client.config.ClientConfig;
+import lu.apwbd.storecoords.world.MultiBlockResolver;
 import net.minecraft.ChatFormatting;
 import net.minecraft.network.chat.MutableComponent;
 import net.minecraft.network.chat.TextComponent;
@@ -12,6 +13,7 @@ import net.minecraftforge.fml.ModLoadingContext;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.config.ModConfig;
 import net.minecraftforge.fml.event.lifecycle.FMLClientSetupEvent;
+import net.minecraftforge.fml.event.lifecycle.FMLLoadCompleteEvent;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
 
 import org.slf4j.Logger;
@@ -24,6 +26,7 @@ public class StoreCoords {
     public StoreCoords() {
         ModLoadingContext.get().registerConfig(ModConfig.Type.CLIENT, ClientConfig.SPEC);
         FMLJavaModLoadingContext.get().getModEventBus().addListener(StoreCoords::clientSetup);
+        FMLJavaModLoadingContext.get().getModEventBus().addListener(StoreCoords::loadComplete);
         LOGGER.info("Mod started successfully");
     }
 
@@ -32,7 +35,16 @@ public class StoreCoords {
             ClientRegistry.registerKeyBinding(KeyInputHandler.STORE_KEY);
             ClientRegistry.registerKeyBinding(KeyInputHandler.REMOVE_KEY);
             ClientRegistry.registerKeyBinding(KeyInputHandler.HIGHLIGHT_TOGGLE_KEY);
+            ClientRegistry.registerKeyBinding(KeyInputHandler.SELECT_CORNER_KEY);
+            ClientRegistry.registerKeyBinding(KeyInputHandler.CONNECTED_TOGGLE_KEY);
+            ClientRegistry.registerKeyBinding(KeyInputHandler.UNDO_KEY);
+            ClientRegistry.registerKeyBinding(KeyInputHandler.REDO_KEY);
         });
     }
 
+    private static void loadComplete(FMLLoadCompleteEvent event) {
+        // registries are frozen and other mods have registered their resolvers by now
+        event.enqueueWork(MultiBlockResolver::freeze);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,200 @@
+package lu.apwbd.storecoords.client;
+
+import lu.apwbd.storecoords.StoreCoords;
+import lu.apwbd.storecoords.client.config.ClientConfig;
+import lu.apwbd.storecoords.client.render.BlockHighlighter;
+import lu.apwbd.storecoords.io.CoordsManager;
+import lu.apwbd.storecoords.util.LongPosSet;
+import lu.apwbd.storecoords.world.MultiBlockResolver;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.client.player.LocalPlayer;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Registry;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.item.BlockItem;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.player.PlayerInteractEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.registries.ForgeRegistries;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Stores blocks from the {@code autoTrack.blocks} allowlist as the player places them.
+ * <p>
+ * Placement events only fire on the server, so the client watches its own block placements instead:
+ * right-clicking a block with an allowlisted block item remembers those of the two positions the block
+ * can end up at that are air or replaceable, and their current states. Once one of them turns into an
+ * allowlisted block within a few ticks, the placement is taken as confirmed and resolved through
+ * {@link MultiBlockResolver}, so the other half of a double chest or a door comes along. Confirmed
+ * placements are collected and stored with one {@code storeAll} per {@code autoTrack.intervalTicks}, so
+ * fast building costs one write per interval.
+ */
+@Mod.EventBusSubscriber(modid = StoreCoords.MOD_ID, value = Dist.CLIENT)
+public final class AutoTracker {
+
+    /** How long a right-click waits for its block to appear before it is forgotten. */
+    private static final int CONFIRM_TICKS = 10;
+
+    private static final class Candidate {
+        final long pos;
+        final BlockState before;
+        int age;
+
+        Candidate(long pos, BlockState before) {
+            this.pos = pos;
+            this.before = before;
+        }
+    }
+
+    private static final List<Candidate> CANDIDATES = new ArrayList<>();
+    private static final LongPosSet PENDING = new LongPosSet();
+
+    private static CoordsManager pendingManager;
+    private static int ticks;
+
+    // parsed allowlist, rebuilt when the config list changes
+    private static List<? extends String> lastConfig;
+    private static final Set<Block> BLOCKS = new HashSet<>();
+    private static final List<TagKey<Block>> TAGS = new ArrayList<>();
+
+    private AutoTracker() {}
+
+    @SubscribeEvent
+    public static void onRightClickBlock(PlayerInteractEvent.RightClickBlock event) {
+        if (!event.getWorld().isClientSide() || !ClientConfig.AUTO_TRACK.get()) return;
+        if (!(event.getItemStack().getItem() instanceof BlockItem item)) return;
+        if (!isTracked(item.getBlock().defaultBlockState())) return;
+
+        ClientLevel level = Minecraft.getInstance().level;
+        if (level == null) return;
+
+        // the block lands either in the clicked block, if that is replaceable, or next to it
+        BlockPos clicked = event.getHitVec().getBlockPos();
+        BlockPos adjacent = clicked.relative(event.getHitVec().getDirection());
+        addCandidate(level, clicked);
+        addCandidate(level, adjacent);
+    }
+
+    @SubscribeEvent
+    public static void onClientTick(TickEvent.ClientTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) return;
+
+        Minecraft mc = Minecraft.getInstance();
+        ClientLevel level = mc.level;
+        LocalPlayer player = mc.player;
+        CoordsManager manager = WorldSession.manager();
+        if (level == null || player == null || manager == null) {
+            CANDIDATES.clear();
+            return;
+        }
+
+        if (manager != pendingManager) {
+            PENDING.clear();
+            pendingManager = manager;
+        }
+
+        if (!CANDIDATES.isEmpty()) confirm(level);
+
+        if (PENDING.isEmpty() || ++ticks < ClientConfig.AUTO_TRACK_INTERVAL_TICKS.get()) return;
+        ticks = 0;
+
+        // loading normally finished at world join; otherwise keep collecting until it has
+        if (!manager.isLoaded()) return;
+        store(player, manager);
+    }
+
+    @SubscribeEvent
+    public static void onLoggedOut(ClientPlayerNetworkEvent.LoggedOutEvent event) {
+        // anything still pending is dropped with the partition; flushing it here would write after the session ended
+        CANDIDATES.clear();
+        PENDING.clear();
+        pendingManager = null;
+        ticks = 0;
+    }
+
+    private static void confirm(ClientLevel level) {
+        for (int i = CANDIDATES.size() - 1; i >= 0; i--) {
+            Candidate c = CANDIDATES.get(i);
+            BlockPos pos = BlockPos.of(c.pos);
+            BlockState now = level.getBlockState(pos);
+
+            if (now != c.before && isTracked(now)) {
+                MultiBlockResolver.resolve(level, pos, PENDING);
+                CANDIDATES.remove(i);
+            } else if (++c.age > CONFIRM_TICKS) {
+                CANDIDATES.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Watches {@code pos} unless it holds a block that cannot be placed into. Without this, opening or
+     * lighting an allowlisted block while holding another would count as placing it.
+     */
+    private static void addCandidate(ClientLevel level, BlockPos pos) {
+        BlockState state = level.getBlockState(pos);
+        if (state.getMaterial().isReplaceable()) CANDIDATES.add(new Candidate(pos.asLong(), state));
+    }
+
+    private static void store(LocalPlayer player, CoordsManager manager) {
+        CoordsManager.BatchResult r = manager.storeAll(PENDING);
+        PENDING.clear();
+
+        if (r.status == CoordsManager.ActionResult.IO_ERROR) {
+            ChatMessages.fileError(player, "edit", manager.getFileName());
+            return;
+        }
+        if (r.status != CoordsManager.ActionResult.OK) return;
+
+        ChatMessages.autoTracked(player, r.changedCount());
+        BlockHighlighter.addToCache(r.changedPositions);
+        StoreTag.apply(manager, r.changedPositions);
+    }
+
+    private static boolean isTracked(BlockState state) {
+        if (state.isAir()) return false;
+
+        List<? extends String> config = ClientConfig.AUTO_TRACK_BLOCKS.get();
+        if (config != lastConfig) parse(config);
+
+        if (BLOCKS.contains(state.getBlock())) return true;
+        for (TagKey<Block> tag : TAGS) {
+            if (state.is(tag)) return true;
+        }
+        return false;
+    }
+
+    private static void parse(List<? extends String> entries) {
+        lastConfig = entries;
+        BLOCKS.clear();
+        TAGS.clear();
+
+        for (String entry : entries) {
+            String id = entry.trim();
+            boolean tag = id.startsWith("#");
+            if (tag) id = id.substring(1);
+
+            ResourceLocation location = ResourceLocation.tryParse(id);
+            if (location == null) {
+                StoreCoords.LOGGER.warn("Ignoring auto-track entry \"{}\", not a valid id", entry);
+            } else if (tag) {
+                TAGS.add(TagKey.create(Registry.BLOCK_REGISTRY, location));
+            } else if (ForgeRegistries.BLOCKS.containsKey(location)) {
+                BLOCKS.add(ForgeRegistries.BLOCKS.getValue(location));
+            } else {
+                StoreCoords.LOGGER.warn("Ignoring auto-track entry \"{}\", no such block", entry);
+            }
+        }
+    }
+}
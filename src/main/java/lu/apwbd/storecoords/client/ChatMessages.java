@@ -1,11 +1,20 @@
 package lu.apwbd.storecoords.client;
 
+import lu.apwbd.storecoords.StoreCoords;
 import net.minecraft.ChatFormatting;
 import net.minecraft.client.player.LocalPlayer;
 import net.minecraft.core.BlockPos;
+import net.minecraft.network.chat.ClickEvent;
+import net.minecraft.network.chat.HoverEvent;
 import net.minecraft.network.chat.MutableComponent;
 import net.minecraft.network.chat.TextComponent;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
 public final class ChatMessages {
 
     private ChatMessages() {}
@@ -69,11 +78,243 @@ public final class ChatMessages {
         send(p, msg);
     }
 
+    public static void connectedCaptureToggled(LocalPlayer p, boolean enabled) {
+        MutableComponent msg = new TextComponent("Connected capture ").withStyle(ChatFormatting.GRAY);
+        msg.append(new TextComponent(enabled ? "ON" : "OFF")
+                .withStyle(enabled ? ChatFormatting.GREEN : ChatFormatting.RED));
+        msg.append(new TextComponent(".").withStyle(ChatFormatting.GRAY));
+        send(p, msg);
+    }
+
+    public static void connectedCapped(LocalPlayer p, int max) {
+        send(p, new TextComponent("Connected capture stopped at " + max + " blocks.").withStyle(ChatFormatting.YELLOW));
+    }
+
+    public static void cornerSelected(LocalPlayer p, int corner, BlockPos pos) {
+        MutableComponent msg = new TextComponent("Corner " + corner + ": ").withStyle(ChatFormatting.GRAY);
+        msg.append(coords(pos, ChatFormatting.AQUA, ChatFormatting.GRAY));
+        send(p, msg);
+    }
+
+    public static void selectionComplete(LocalPlayer p, long volume) {
+        MutableComponent msg = new TextComponent("Region selected: ").withStyle(ChatFormatting.GRAY);
+        msg.append(new TextComponent(volume + " blocks").withStyle(ChatFormatting.AQUA));
+        msg.append(new TextComponent(". Store or remove now applies to the region.").withStyle(ChatFormatting.GRAY));
+        send(p, msg);
+    }
+
+    public static void selectionCleared(LocalPlayer p) {
+        send(p, new TextComponent("Region selection cleared.").withStyle(ChatFormatting.GRAY));
+    }
+
+    public static void selectionTooLarge(LocalPlayer p, long volume, int max) {
+        MutableComponent msg = new TextComponent("Region too large: ").withStyle(ChatFormatting.RED);
+        msg.append(new TextComponent(volume + " blocks").withStyle(ChatFormatting.DARK_RED));
+        msg.append(new TextComponent(" (max " + max + ").").withStyle(ChatFormatting.RED));
+        send(p, msg);
+    }
+
+    public static void regionBusy(LocalPlayer p) {
+        send(p, new TextComponent("Still scanning the previous region.").withStyle(ChatFormatting.RED));
+    }
+
+    public static void regionStored(LocalPlayer p, int count, int unloadedColumns) {
+        MutableComponent msg = new TextComponent("Stored Region: ").withStyle(ChatFormatting.GRAY);
+        msg.append(new TextComponent(count + " blocks").withStyle(ChatFormatting.GOLD));
+        if (unloadedColumns > 0) {
+            msg.append(new TextComponent(" (" + unloadedColumns + " unloaded chunks skipped)")
+                    .withStyle(ChatFormatting.DARK_RED));
+        }
+        send(p, msg);
+    }
+
+    public static void regionRemoved(LocalPlayer p, int count) {
+        MutableComponent msg = new TextComponent("Removed Region: ").withStyle(ChatFormatting.GRAY);
+        msg.append(new TextComponent(count + " blocks").withStyle(ChatFormatting.GOLD));
+        send(p, msg);
+    }
+
+    public static void regionUnchanged(LocalPlayer p, boolean store) {
+        send(p, new TextComponent(store
+                ? "Every block in the region is already stored."
+                : "No stored blocks in the region.").withStyle(ChatFormatting.RED));
+    }
+
+    public static void painted(LocalPlayer p, boolean stored, int count) {
+        MutableComponent msg = new TextComponent(stored ? "Stored " : "Removed ").withStyle(ChatFormatting.GRAY);
+        msg.append(new TextComponent(count + " painted blocks").withStyle(ChatFormatting.GOLD));
+        send(p, msg);
+    }
+
+    public static void paintUnchanged(LocalPlayer p, boolean store) {
+        send(p, new TextComponent(store
+                ? "Every painted block is already stored."
+                : "None of the painted blocks are stored.").withStyle(ChatFormatting.RED));
+    }
+
+    public static void historyApplied(LocalPlayer p, boolean undo, boolean stored, int count) {
+        MutableComponent msg = new TextComponent(undo ? "Undo: " : "Redo: ").withStyle(ChatFormatting.GRAY);
+        msg.append(new TextComponent((stored ? "stored " : "removed ") + count + " blocks").withStyle(ChatFormatting.GOLD));
+        msg.append(new TextComponent(".").withStyle(ChatFormatting.GRAY));
+        send(p, msg);
+    }
+
+    public static void nothingToUndo(LocalPlayer p, boolean undo) {
+        send(p, new TextComponent(undo ? "Nothing to undo." : "Nothing to redo.").withStyle(ChatFormatting.RED));
+    }
+
+    public static void autoTracked(LocalPlayer p, int count) {
+        MutableComponent msg = new TextComponent("Auto-stored ").withStyle(ChatFormatting.GRAY);
+        msg.append(new TextComponent(count + " placed blocks").withStyle(ChatFormatting.GOLD));
+        status(p, msg);
+    }
+
+    public static void staleFlagged(LocalPlayer p, int count) {
+        MutableComponent msg = new TextComponent(count + " stored blocks").withStyle(ChatFormatting.GOLD);
+        msg.append(new TextComponent(" now point at air and are highlighted in red.").withStyle(ChatFormatting.GRAY));
+        send(p, msg);
+    }
+
+    public static void stalePruned(LocalPlayer p, int count) {
+        MutableComponent msg = new TextComponent("Removed ").withStyle(ChatFormatting.GRAY);
+        msg.append(new TextComponent(count + " stored blocks").withStyle(ChatFormatting.GOLD));
+        msg.append(new TextComponent(" that now point at air.").withStyle(ChatFormatting.GRAY));
+        send(p, msg);
+    }
+
+    public static void imported(LocalPlayer p, String fileName, int added, int read, int skipped) {
+        MutableComponent msg = new TextComponent("Imported ").withStyle(ChatFormatting.GRAY);
+        msg.append(new TextComponent(added + " new blocks").withStyle(ChatFormatting.GOLD));
+        msg.append(new TextComponent(" of " + read + " from " + fileName).withStyle(ChatFormatting.GRAY));
+        if (skipped > 0) {
+            msg.append(new TextComponent(" (" + skipped + " unreadable lines skipped)").withStyle(ChatFormatting.DARK_RED));
+        }
+        send(p, msg);
+    }
+
+    public static void exported(LocalPlayer p, String fileName, int count) {
+        MutableComponent msg = new TextComponent("Exported ").withStyle(ChatFormatting.GRAY);
+        msg.append(new TextComponent(count + " blocks").withStyle(ChatFormatting.GOLD));
+        msg.append(new TextComponent(" to " + fileName).withStyle(ChatFormatting.GRAY));
+        send(p, msg);
+    }
+
+    public static void transferBusy(LocalPlayer p) {
+        send(p, new TextComponent("Still busy with the previous transfer.").withStyle(ChatFormatting.RED));
+    }
+
+    public static void unknownTransferFile(LocalPlayer p, String fileName) {
+        send(p, new TextComponent("Cannot use " + fileName + "; expected a .csv, .jsonl or .nbt file name.")
+                .withStyle(ChatFormatting.RED));
+    }
+
+    public static void nearestFound(LocalPlayer p, int found, int requested) {
+        MutableComponent msg = new TextComponent("Nearest stored blocks: ").withStyle(ChatFormatting.GRAY);
+        msg.append(new TextComponent(String.valueOf(found)).withStyle(ChatFormatting.GOLD));
+        if (found < requested) {
+            msg.append(new TextComponent(" of " + requested + " requested").withStyle(ChatFormatting.GRAY));
+        }
+        send(p, msg);
+    }
+
+    public static void nearestEntry(LocalPlayer p, int rank, BlockPos pos, double distance,
+                                    String category, String label) {
+        MutableComponent msg = new TextComponent(rank + ". ").withStyle(ChatFormatting.GRAY);
+        msg.append(clickableCoords(pos));
+        msg.append(new TextComponent(String.format(Locale.ROOT, " (%.1f m)", distance)).withStyle(ChatFormatting.DARK_GREEN));
+        msg.append(tagSuffix(category, label));
+        send(p, msg);
+    }
+
+    public static void noneStored(LocalPlayer p) {
+        send(p, new TextComponent("No blocks stored in this world.").withStyle(ChatFormatting.RED));
+    }
+
+    public static void countWithin(LocalPlayer p, int count, int radius) {
+        MutableComponent msg = new TextComponent("Stored blocks within " + radius + " m: ").withStyle(ChatFormatting.GRAY);
+        msg.append(new TextComponent(String.valueOf(count)).withStyle(ChatFormatting.GOLD));
+        send(p, msg);
+    }
+
+    public static void countInBox(LocalPlayer p, int count, BlockPos a, BlockPos b) {
+        MutableComponent msg = new TextComponent("Stored blocks between ").withStyle(ChatFormatting.GRAY);
+        msg.append(clickableCoords(a));
+        msg.append(new TextComponent(" and ").withStyle(ChatFormatting.GRAY));
+        msg.append(clickableCoords(b));
+        msg.append(new TextComponent(": ").withStyle(ChatFormatting.GRAY));
+        msg.append(new TextComponent(String.valueOf(count)).withStyle(ChatFormatting.GOLD));
+        send(p, msg);
+    }
+
+    public static void listHeader(LocalPlayer p, int page, int pages, int total) {
+        MutableComponent msg = new TextComponent("Stored blocks, page ").withStyle(ChatFormatting.GRAY);
+        msg.append(new TextComponent(page + "/" + pages).withStyle(ChatFormatting.GOLD));
+        msg.append(new TextComponent(" (" + total + " total)").withStyle(ChatFormatting.GRAY));
+        send(p, msg);
+    }
+
+    public static void listEntry(LocalPlayer p, int number, BlockPos pos, String category, String label) {
+        MutableComponent msg = new TextComponent(number + ". ").withStyle(ChatFormatting.GRAY);
+        msg.append(clickableCoords(pos));
+        msg.append(tagSuffix(category, label));
+        send(p, msg);
+    }
+
+    public static void storeTagSet(LocalPlayer p, String category, String label) {
+        MutableComponent msg = new TextComponent("New stores are tagged").withStyle(ChatFormatting.GRAY);
+        msg.append(tagSuffix(category, label));
+        msg.append(new TextComponent(".").withStyle(ChatFormatting.GRAY));
+        send(p, msg);
+    }
+
+    public static void storeTagCleared(LocalPlayer p) {
+        send(p, new TextComponent("New stores are no longer tagged.").withStyle(ChatFormatting.GRAY));
+    }
+
+    public static void tagged(LocalPlayer p, BlockPos anchor, int count, String category, String label) {
+        MutableComponent msg = new TextComponent("Tagged Block: ").withStyle(ChatFormatting.GRAY);
+        msg.append(coords(anchor, ChatFormatting.GOLD, ChatFormatting.GRAY));
+        msg.append(new TextComponent(linkedExtra(count)).withStyle(ChatFormatting.DARK_GREEN));
+        msg.append(tagSuffix(category, label));
+        send(p, msg);
+    }
+
+    public static void blockInfo(LocalPlayer p, BlockPos pos, String category, String label, long created) {
+        MutableComponent msg = new TextComponent("Stored Block: ").withStyle(ChatFormatting.GRAY);
+        msg.append(clickableCoords(pos));
+        msg.append(tagSuffix(category, label));
+        if (created > 0) {
+            String time = DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(
+                    LocalDateTime.ofInstant(Instant.ofEpochMilli(created), ZoneId.systemDefault()).withNano(0));
+            msg.append(new TextComponent(", since " + time.replace('T', ' ')).withStyle(ChatFormatting.GRAY));
+        }
+        send(p, msg);
+    }
+
+    public static void listMore(LocalPlayer p, int nextPage) {
+        String command = "/" + StoreCoords.MOD_ID + " list " + nextPage;
+        send(p, new TextComponent("[Next page]").withStyle(style -> style
+                .withColor(ChatFormatting.AQUA)
+                .withClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, command))
+                .withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, new TextComponent(command)))));
+    }
+
+    public static void pageOutOfRange(LocalPlayer p, int page, int pages) {
+        send(p, new TextComponent("Page " + page + " does not exist (" + pages + " pages).").withStyle(ChatFormatting.RED));
+    }
+
 
     private static void send(LocalPlayer p, MutableComponent message) {
         p.sendMessage(prefix().append(message), p.getUUID());
     }
 
+    /**
+     * Shows the message above the hotbar instead of in chat, for frequent background notices.
+     */
+    private static void status(LocalPlayer p, MutableComponent message) {
+        p.displayClientMessage(prefix().append(message), true);
+    }
+
     private static MutableComponent prefix() {
         MutableComponent msg = new TextComponent("[").withStyle(ChatFormatting.DARK_AQUA);
         msg.append(new TextComponent("SC").withStyle(ChatFormatting.DARK_GREEN));
@@ -87,6 +328,16 @@ public final class ChatMessages {
     }
 
 
+    /**
+     * @return {@code " [category] label"}, leaving out whatever is {@code null}
+     */
+    private static MutableComponent tagSuffix(String category, String label) {
+        MutableComponent c = new TextComponent("");
+        if (category != null) c.append(new TextComponent(" [" + category + "]").withStyle(ChatFormatting.AQUA));
+        if (label != null) c.append(new TextComponent(" " + label).withStyle(ChatFormatting.WHITE));
+        return c;
+    }
+
     private static MutableComponent coords(BlockPos pos, ChatFormatting numberColor, ChatFormatting sepColor) {
         MutableComponent c = new TextComponent(String.valueOf(pos.getX())).withStyle(numberColor);
         c.append(new TextComponent(", ").withStyle(sepColor));
@@ -95,4 +346,15 @@ public final class ChatMessages {
         c.append(new TextComponent(String.valueOf(pos.getZ())).withStyle(numberColor));
         return c;
     }
+
+    /**
+     * Gold coordinates that copy {@code x y z} to the clipboard when clicked.
+     */
+    private static MutableComponent clickableCoords(BlockPos pos) {
+        String plain = pos.getX() + " " + pos.getY() + " " + pos.getZ();
+        return coords(pos, ChatFormatting.GOLD, ChatFormatting.GRAY).withStyle(style -> style
+                .withClickEvent(new ClickEvent(ClickEvent.Action.COPY_TO_CLIPBOARD, plain))
+                .withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT,
+                        new TextComponent("Click to copy " + plain))));
+    }
 }
@@ -0,0 +1,305 @@
+package lu.apwbd.storecoords.client;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.mojang.brigadier.context.CommandContext;
+import lu.apwbd.storecoords.StoreCoords;
+import lu.apwbd.storecoords.client.render.BlockHighlighter;
+import lu.apwbd.storecoords.io.CoordsManager;
+import lu.apwbd.storecoords.io.CoordsMetadata;
+import lu.apwbd.storecoords.io.CoordsTransfer;
+import lu.apwbd.storecoords.util.LongPosSet;
+import lu.apwbd.storecoords.util.SectionIndex;
+import lu.apwbd.storecoords.world.MultiBlockResolver;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.player.LocalPlayer;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.commands.SharedSuggestionProvider;
+import net.minecraft.commands.arguments.coordinates.BlockPosArgument;
+import net.minecraft.commands.arguments.coordinates.Coordinates;
+import net.minecraft.core.BlockPos;
+import net.minecraft.network.chat.TextComponent;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.client.event.RegisterClientCommandsEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Client-side {@code /storecoords} command tree.
+ * <p>
+ * The query commands read the active partition's {@link SectionIndex} directly, which is the same
+ * structure {@code storeAll}/{@code removeAll} update, so results are always current and no copy of
+ * the stored positions is made.
+ */
+@Mod.EventBusSubscriber(modid = StoreCoords.MOD_ID, value = Dist.CLIENT)
+public final class ClientCommands {
+
+    /** Upper bound for {@code near}; every result is one chat line. */
+    private static final int MAX_NEAREST = 50;
+    /** Upper bound for {@code count}; large enough for any loaded area. */
+    private static final int MAX_RADIUS = 100_000;
+    /** {@code near} has no radius argument; this just keeps the squared distance in range. */
+    private static final int NEAREST_RADIUS = 30_000_000;
+    /** Entries per {@code list} page. */
+    private static final int PAGE_SIZE = 10;
+
+    // where the last list page ended, so that the next page resumes there instead of skipping to it
+    private static SectionIndex listedIndex;
+    private static int listedPage;
+    private static long listedLast = SectionIndex.START;
+
+    private ClientCommands() {}
+
+    @SubscribeEvent
+    public static void onRegisterCommands(RegisterClientCommandsEvent event) {
+        register(event.getDispatcher());
+    }
+
+    @SubscribeEvent
+    public static void onLoggedOut(ClientPlayerNetworkEvent.LoggedOutEvent event) {
+        listedIndex = null;
+        listedLast = SectionIndex.START;
+    }
+
+    private static void register(CommandDispatcher<CommandSourceStack> dispatcher) {
+        dispatcher.register(Commands.literal(StoreCoords.MOD_ID)
+                .then(Commands.literal("metrics").executes(ctx -> {
+                    DebugOverlay.dumpToLog();
+                    ctx.getSource().sendSuccess(new TextComponent("StoreCoords metrics written to the log."), false);
+                    return 1;
+                }))
+                .then(Commands.literal("category")
+                        .then(Commands.literal("clear").executes(ctx -> clearStoreTag()))
+                        .then(Commands.argument("category", StringArgumentType.word())
+                                .executes(ctx -> setStoreTag(StringArgumentType.getString(ctx, "category"), null))
+                                .then(Commands.argument("label", StringArgumentType.greedyString())
+                                        .executes(ctx -> setStoreTag(StringArgumentType.getString(ctx, "category"),
+                                                StringArgumentType.getString(ctx, "label"))))))
+                .then(Commands.literal("tag")
+                        .then(Commands.argument("category", StringArgumentType.word())
+                                .executes(ctx -> tagTarget(StringArgumentType.getString(ctx, "category"), null))
+                                .then(Commands.argument("label", StringArgumentType.greedyString())
+                                        .executes(ctx -> tagTarget(StringArgumentType.getString(ctx, "category"),
+                                                StringArgumentType.getString(ctx, "label"))))))
+                .then(Commands.literal("info").executes(ctx -> info()))
+                .then(Commands.literal("list")
+                        .executes(ctx -> list(1))
+                        .then(Commands.argument("page", IntegerArgumentType.integer(1))
+                                .executes(ctx -> list(IntegerArgumentType.getInteger(ctx, "page")))))
+                .then(Commands.literal("near")
+                        .executes(ctx -> near(1))
+                        .then(Commands.argument("count", IntegerArgumentType.integer(1, MAX_NEAREST))
+                                .executes(ctx -> near(IntegerArgumentType.getInteger(ctx, "count")))))
+                .then(Commands.literal("count")
+                        .then(Commands.argument("radius", IntegerArgumentType.integer(1, MAX_RADIUS))
+                                .executes(ctx -> countWithin(IntegerArgumentType.getInteger(ctx, "radius")))))
+                .then(Commands.literal("import")
+                        .then(Commands.argument("file", StringArgumentType.word())
+                                .suggests((ctx, builder) -> SharedSuggestionProvider.suggest(Transfers.importableFiles(), builder))
+                                .executes(ctx -> importFile(StringArgumentType.getString(ctx, "file")))))
+                .then(exportCommand())
+                .then(Commands.literal("box")
+                        .then(Commands.argument("from", BlockPosArgument.blockPos())
+                                .then(Commands.argument("to", BlockPosArgument.blockPos())
+                                        .executes(ctx -> countInBox(blockPos(ctx, "from"), blockPos(ctx, "to")))))));
+    }
+
+    private static LiteralArgumentBuilder<CommandSourceStack> exportCommand() {
+        LiteralArgumentBuilder<CommandSourceStack> export = Commands.literal("export");
+        for (CoordsTransfer.Format format : CoordsTransfer.Format.values()) {
+            export.then(Commands.literal(format.extension)
+                    .then(Commands.argument("file", StringArgumentType.word())
+                            .executes(ctx -> exportFile(StringArgumentType.getString(ctx, "file"), format))));
+        }
+        return export;
+    }
+
+    private static int importFile(String name) {
+        return withManager((player, manager) -> Transfers.importFile(player, manager, name));
+    }
+
+    private static int exportFile(String name, CoordsTransfer.Format format) {
+        return withManager((player, manager) -> Transfers.exportFile(player, manager, name, format));
+    }
+
+    private static int list(int page) {
+        return withManager((player, manager) -> {
+            SectionIndex index = manager.getPositions();
+            if (index.isEmpty()) {
+                ChatMessages.noneStored(player);
+                return;
+            }
+
+            int total = index.size();
+            int pages = (total + PAGE_SIZE - 1) / PAGE_SIZE;
+            if (page > pages) {
+                ChatMessages.pageOutOfRange(player, page, pages);
+                return;
+            }
+
+            // the next page continues after the last position shown, even if entries changed in between
+            int first = (page - 1) * PAGE_SIZE;
+            SectionIndex.Cursor cursor;
+            if (index == listedIndex && page == listedPage + 1) {
+                cursor = index.listing(listedLast);
+            } else {
+                cursor = index.listing(SectionIndex.START);
+                cursor.skip(first);
+            }
+
+            CoordsMetadata metadata = manager.getMetadata();
+            ChatMessages.listHeader(player, page, pages, total);
+            long last = SectionIndex.START;
+            for (int i = 0; i < PAGE_SIZE && cursor.hasNext(); i++) {
+                last = cursor.next();
+                ChatMessages.listEntry(player, first + i + 1, BlockPos.of(last), metadata.category(last), metadata.label(last));
+            }
+            listedIndex = index;
+            listedPage = page;
+            listedLast = last;
+            if (page < pages) ChatMessages.listMore(player, page + 1);
+        });
+    }
+
+    private static int setStoreTag(String category, String label) {
+        LocalPlayer player = Minecraft.getInstance().player;
+        if (player == null) return 0;
+
+        StoreTag.set(category, label);
+        ChatMessages.storeTagSet(player, category, label);
+        return 1;
+    }
+
+    private static int clearStoreTag() {
+        LocalPlayer player = Minecraft.getInstance().player;
+        if (player == null) return 0;
+
+        StoreTag.clear();
+        ChatMessages.storeTagCleared(player);
+        return 1;
+    }
+
+    /**
+     * Tags the stored positions of the targeted block's structure.
+     */
+    private static int tagTarget(String category, String label) {
+        LocalPlayer player = Minecraft.getInstance().player;
+        if (player == null) return 0;
+
+        BlockPos target = KeyInputHandler.getTargetBlockPos(player);
+        if (target == null) {
+            ChatMessages.noTarget(player);
+            return 0;
+        }
+
+        LongPosSet positions = new LongPosSet(4);
+        MultiBlockResolver.resolve(player.level, target, positions);
+        long[] packed = positions.toArray();
+
+        return withManager((p, manager) -> {
+            int tagged = manager.tag(packed, category, label);
+            if (tagged == 0) {
+                ChatMessages.notStored(p, target, packed.length);
+                return;
+            }
+            ChatMessages.tagged(p, target, tagged, category, label);
+            BlockHighlighter.metadataChanged(packed);
+        });
+    }
+
+    /**
+     * Shows category, label and creation time of the targeted block.
+     */
+    private static int info() {
+        LocalPlayer player = Minecraft.getInstance().player;
+        if (player == null) return 0;
+
+        BlockPos target = KeyInputHandler.getTargetBlockPos(player);
+        if (target == null) {
+            ChatMessages.noTarget(player);
+            return 0;
+        }
+
+        return withManager((p, manager) -> {
+            long pos = target.asLong();
+            if (!manager.getPositions().contains(pos)) {
+                ChatMessages.notStored(p, target, 1);
+                return;
+            }
+            CoordsMetadata metadata = manager.getMetadata();
+            ChatMessages.blockInfo(p, target, metadata.category(pos), metadata.label(pos), metadata.created(pos));
+        });
+    }
+
+    private static int near(int count) {
+        return withManager((player, manager) -> {
+            SectionIndex index = manager.getPositions();
+            if (index.isEmpty()) {
+                ChatMessages.noneStored(player);
+                return;
+            }
+
+            BlockPos origin = player.blockPosition();
+            long[] found = index.nearest(origin.getX(), origin.getY(), origin.getZ(), count, NEAREST_RADIUS);
+
+            CoordsMetadata metadata = manager.getMetadata();
+            ChatMessages.nearestFound(player, found.length, count);
+            for (int i = 0; i < found.length; i++) {
+                double distance = Math.sqrt(SectionIndex.distSqr(found[i], origin.getX(), origin.getY(), origin.getZ()));
+                ChatMessages.nearestEntry(player, i + 1, BlockPos.of(found[i]), distance,
+                        metadata.category(found[i]), metadata.label(found[i]));
+            }
+        });
+    }
+
+    private static int countWithin(int radius) {
+        return withManager((player, manager) -> {
+            SectionIndex index = manager.getPositions();
+            BlockPos origin = player.blockPosition();
+            ChatMessages.countWithin(player, index.countWithin(origin.getX(), origin.getY(), origin.getZ(), radius), radius);
+        });
+    }
+
+    private static int countInBox(BlockPos a, BlockPos b) {
+        return withManager((player, manager) -> {
+            SectionIndex index = manager.getPositions();
+            int count = index.countInBox(
+                    Math.min(a.getX(), b.getX()), Math.min(a.getY(), b.getY()), Math.min(a.getZ(), b.getZ()),
+                    Math.max(a.getX(), b.getX()), Math.max(a.getY(), b.getY()), Math.max(a.getZ(), b.getZ()));
+            ChatMessages.countInBox(player, count, a, b);
+        });
+    }
+
+    /**
+     * Runs {@code query} against the active partition once it is loaded. The manager is captured when
+     * the command runs, so a dimension change meanwhile cannot redirect the query.
+     *
+     * @return the command result; {@code 0} if there is no player or partition
+     */
+    private static int withManager(BiConsumer<LocalPlayer, CoordsManager> query) {
+        Minecraft mc = Minecraft.getInstance();
+        LocalPlayer player = mc.player;
+        CoordsManager manager = WorldSession.manager();
+        if (player == null || manager == null) return 0;
+
+        manager.loadAsync(mc).thenAccept(ok -> {
+            if (!ok) {
+                ChatMessages.fileError(player, "load", manager.getFileName());
+                return;
+            }
+            query.accept(player, manager);
+        });
+        return 1;
+    }
+
+    private static BlockPos blockPos(CommandContext<CommandSourceStack> ctx, String name) {
+        // the client has no server level, so resolve the coordinates without the loaded-chunk check
+        return ctx.getArgument(name, Coordinates.class).getBlockPos(ctx.getSource());
+    }
+}
@@ -0,0 +1,62 @@
+package lu.apwbd.storecoords.client;
+
+import lu.apwbd.storecoords.StoreCoords;
+import lu.apwbd.storecoords.client.render.BlockHighlighter;
+import lu.apwbd.storecoords.io.CoordsManager;
+import lu.apwbd.storecoords.metrics.Metrics;
+import lu.apwbd.storecoords.util.SectionIndex;
+import net.minecraft.client.Minecraft;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.client.event.RenderGameOverlayEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import java.util.List;
+
+/**
+ * Adds the mod's metrics to the right-hand side of the F3 debug screen.
+ */
+@Mod.EventBusSubscriber(modid = StoreCoords.MOD_ID, value = Dist.CLIENT)
+public final class DebugOverlay {
+
+    /** The memory estimate walks every section, so it is refreshed at most this often. */
+    private static final long ESTIMATE_INTERVAL_NANOS = 1_000_000_000L;
+
+    private static SectionIndex estimatedIndex;
+    private static long estimatedBytes;
+    private static long estimatedAt;
+
+    private DebugOverlay() {}
+
+    @SubscribeEvent
+    public static void onDebugText(RenderGameOverlayEvent.Text event) {
+        if (!Minecraft.getInstance().options.renderDebug) return;
+
+        event.getRight().add("");
+        event.getRight().addAll(report());
+    }
+
+    /**
+     * Writes the same numbers the debug screen shows to the log.
+     */
+    public static void dumpToLog() {
+        SectionIndex index = activeIndex();
+        Metrics.dump(index, index != null ? index.estimateBytes() : 0, BlockHighlighter.cachedBufferCount());
+    }
+
+    private static List<String> report() {
+        SectionIndex index = activeIndex();
+        long now = System.nanoTime();
+        if (index != estimatedIndex || now - estimatedAt > ESTIMATE_INTERVAL_NANOS) {
+            estimatedIndex = index;
+            estimatedBytes = index != null ? index.estimateBytes() : 0;
+            estimatedAt = now;
+        }
+        return Metrics.report(index, estimatedBytes, BlockHighlighter.cachedBufferCount());
+    }
+
+    private static SectionIndex activeIndex() {
+        CoordsManager manager = WorldSession.manager();
+        return manager != null && manager.isLoaded() ? manager.getPositions() : null;
+    }
+}
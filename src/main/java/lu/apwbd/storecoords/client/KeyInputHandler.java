@@ -2,23 +2,29 @@ package lu.apwbd.storecoords.client;
 
 import com.mojang.blaze3d.platform.InputConstants;
 import lu.apwbd.storecoords.StoreCoords;
+import lu.apwbd.storecoords.client.config.ClientConfig;
 import lu.apwbd.storecoords.client.render.BlockHighlighter;
 import lu.apwbd.storecoords.io.CoordsManager;
+import lu.apwbd.storecoords.util.LongPosSet;
 import lu.apwbd.storecoords.world.MultiBlockResolver;
 import net.minecraft.client.KeyMapping;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.player.LocalPlayer;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.Registry;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.level.block.Block;
 import net.minecraft.world.phys.BlockHitResult;
 import net.minecraft.world.phys.HitResult;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.client.event.InputEvent;
+import net.minecraftforge.client.settings.KeyConflictContext;
+import net.minecraftforge.client.settings.KeyModifier;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
 import org.lwjgl.glfw.GLFW;
 
-import java.util.Set;
-
 @Mod.EventBusSubscriber(modid = StoreCoords.MOD_ID, value = Dist.CLIENT)
 public final class KeyInputHandler {
 
@@ -43,7 +49,41 @@ public final class KeyInputHandler {
             "key.categories.storecoords"
     );
 
-    private static final CoordsManager MANAGER = new CoordsManager();
+    public static final KeyMapping SELECT_CORNER_KEY = new KeyMapping(
+            "key.storecoords.select_corner",
+            InputConstants.Type.KEYSYM,
+            GLFW.GLFW_KEY_RIGHT,
+            "key.categories.storecoords"
+    );
+
+    public static final KeyMapping CONNECTED_TOGGLE_KEY = new KeyMapping(
+            "key.storecoords.toggle_connected",
+            InputConstants.Type.KEYSYM,
+            GLFW.GLFW_KEY_LEFT,
+            "key.categories.storecoords"
+    );
+
+    /** Bound to Ctrl+Z and Ctrl+Y by default, since a bare Z or Y is easily pressed by accident. */
+    public static final KeyMapping UNDO_KEY = new KeyMapping(
+            "key.storecoords.undo",
+            KeyConflictContext.IN_GAME,
+            KeyModifier.CONTROL,
+            InputConstants.Type.KEYSYM,
+            GLFW.GLFW_KEY_Z,
+            "key.categories.storecoords"
+    );
+
+    public static final KeyMapping REDO_KEY = new KeyMapping(
+            "key.storecoords.redo",
+            KeyConflictContext.IN_GAME,
+            KeyModifier.CONTROL,
+            InputConstants.Type.KEYSYM,
+            GLFW.GLFW_KEY_Y,
+            "key.categories.storecoords"
+    );
+
+    /** Whether store and remove capture all connected blocks instead of only the targeted structure. */
+    private static boolean connectedCapture = false;
 
     @SubscribeEvent
     public static void onKeyInput(InputEvent.KeyInputEvent event) {
@@ -55,10 +95,36 @@ public final class KeyInputHandler {
         LocalPlayer player = mc.player;
         if (player == null) return;
 
+        CoordsManager manager = WorldSession.manager();
+        if (manager == null) return;
+
         InputConstants.Key pressed = InputConstants.getKey(event.getKey(), event.getScanCode());
 
         if (HIGHLIGHT_TOGGLE_KEY.isActiveAndMatches(pressed)) {
-            BlockHighlighter.toggle(player, MANAGER);
+            BlockHighlighter.toggle(player, manager);
+            return;
+        }
+
+        if (CONNECTED_TOGGLE_KEY.isActiveAndMatches(pressed)) {
+            connectedCapture = !connectedCapture;
+            ChatMessages.connectedCaptureToggled(player, connectedCapture);
+            return;
+        }
+
+        boolean undoPressed = UNDO_KEY.isActiveAndMatches(pressed);
+        if (undoPressed || REDO_KEY.isActiveAndMatches(pressed)) {
+            manager.loadAsync(mc).thenAccept(ok -> {
+                if (!ok) {
+                    ChatMessages.fileError(player, "load", manager.getFileName());
+                    return;
+                }
+                handleHistory(player, manager, undoPressed, undoPressed ? manager.undo() : manager.redo());
+            });
+            return;
+        }
+
+        if (SELECT_CORNER_KEY.isActiveAndMatches(pressed)) {
+            RegionSelection.select(player, getTargetBlockPos(player));
             return;
         }
 
@@ -66,8 +132,8 @@ public final class KeyInputHandler {
         boolean removePressed = REMOVE_KEY.isActiveAndMatches(pressed);
         if (!storePressed && !removePressed) return;
 
-        if (!MANAGER.ensureLoaded()) {
-            ChatMessages.fileError(player, "load", MANAGER.getFileName());
+        if (RegionSelection.isComplete()) {
+            RegionSelection.apply(player, manager, storePressed);
             return;
         }
 
@@ -77,15 +143,43 @@ public final class KeyInputHandler {
             return;
         }
 
-        Set<BlockPos> positions = MultiBlockResolver.resolve(player.level, target);
-
-        if (storePressed) {
-            CoordsManager.BatchResult r = MANAGER.storeAll(positions);
-            handleStore(player, target, positions.size(), r);
-        } else {
-            CoordsManager.BatchResult r = MANAGER.removeAll(positions);
-            handleRemove(player, target, positions.size(), r);
+        if (!connectedCapture) {
+            // collects every block the crosshair passes over until the key is released
+            PaintStroke.start(manager, storePressed ? STORE_KEY : REMOVE_KEY, storePressed, target);
+            return;
         }
+
+        int max = ClientConfig.CONNECTED_MAX_BLOCKS.get();
+        LongPosSet positions = MultiBlockResolver.resolveConnected(player.level, target, connectedTag(), max);
+        if (positions.size() >= max) ChatMessages.connectedCapped(player, max);
+
+        // usually already loaded at world join; otherwise the edit is applied once loading completes
+        manager.loadAsync(mc).thenAccept(ok -> {
+            if (!ok) {
+                ChatMessages.fileError(player, "load", manager.getFileName());
+                return;
+            }
+
+            if (storePressed) {
+                CoordsManager.BatchResult r = manager.storeAll(positions);
+                handleStore(player, manager, target, positions.size(), r);
+            } else {
+                CoordsManager.BatchResult r = manager.removeAll(positions);
+                handleRemove(player, manager, target, positions.size(), r);
+            }
+        });
+    }
+
+    /**
+     * @return the tag configured for connected capture, or {@code null} if none or not a valid id
+     */
+    private static TagKey<Block> connectedTag() {
+        String id = ClientConfig.CONNECTED_TAG.get().trim();
+        if (id.startsWith("#")) id = id.substring(1);
+        if (id.isEmpty()) return null;
+
+        ResourceLocation location = ResourceLocation.tryParse(id);
+        return location != null ? TagKey.create(Registry.BLOCK_REGISTRY, location) : null;
     }
 
     /**
@@ -95,7 +189,7 @@ public final class KeyInputHandler {
      * @param player The local player instance used to determine the targeted block.
      * @return The {@code BlockPos} of the targeted block, or {@code null} if no valid block is targeted.
      */
-    private static BlockPos getTargetBlockPos(LocalPlayer player) {
+    static BlockPos getTargetBlockPos(LocalPlayer player) {
         HitResult hit = player.pick(5.0D, 0.0F, false);
         if (!(hit instanceof BlockHitResult bhr)) return null;
 
@@ -106,9 +200,10 @@ public final class KeyInputHandler {
     }
 
 
-    private static void handleStore(LocalPlayer player, BlockPos anchor, int resolvedCount, CoordsManager.BatchResult r) {
+    static void handleStore(LocalPlayer player, CoordsManager manager, BlockPos anchor, int resolvedCount,
+                            CoordsManager.BatchResult r) {
         if (r.status == CoordsManager.ActionResult.IO_ERROR) {
-            ChatMessages.fileError(player, "edit", MANAGER.getFileName());
+            ChatMessages.fileError(player, "edit", manager.getFileName());
             return;
         }
         if (r.status == CoordsManager.ActionResult.ALREADY_EXISTS) {
@@ -117,15 +212,14 @@ public final class KeyInputHandler {
         }
 
         ChatMessages.stored(player, anchor, resolvedCount);
-
-        if (!r.changedPositions.isEmpty()) {
-            BlockHighlighter.addToCache(r.changedPositions);
-        }
+        BlockHighlighter.addToCache(r.changedPositions);
+        StoreTag.apply(manager, r.changedPositions);
     }
 
-    private static void handleRemove(LocalPlayer player, BlockPos anchor, int resolvedCount, CoordsManager.BatchResult r) {
+    static void handleRemove(LocalPlayer player, CoordsManager manager, BlockPos anchor, int resolvedCount,
+                             CoordsManager.BatchResult r) {
         if (r.status == CoordsManager.ActionResult.IO_ERROR) {
-            ChatMessages.fileError(player, "edit", MANAGER.getFileName());
+            ChatMessages.fileError(player, "edit", manager.getFileName());
             return;
         }
         if (r.status == CoordsManager.ActionResult.NOT_FOUND) {
@@ -134,8 +228,26 @@ public final class KeyInputHandler {
         }
 
         ChatMessages.removed(player, anchor, resolvedCount);
+        BlockHighlighter.removeFromCache(r.changedPositions);
+    }
+
+    private static void handleHistory(LocalPlayer player, CoordsManager manager, boolean undo,
+                                      CoordsManager.HistoryStep step) {
+        if (step == null) {
+            ChatMessages.nothingToUndo(player, undo);
+            return;
+        }
 
-        if (!r.changedPositions.isEmpty()) {
+        CoordsManager.BatchResult r = step.result;
+        if (r.status == CoordsManager.ActionResult.IO_ERROR) {
+            ChatMessages.fileError(player, "edit", manager.getFileName());
+            return;
+        }
+
+        ChatMessages.historyApplied(player, undo, step.stored, r.changedCount());
+        if (step.stored) {
+            BlockHighlighter.addToCache(r.changedPositions);
+        } else {
             BlockHighlighter.removeFromCache(r.changedPositions);
         }
     }
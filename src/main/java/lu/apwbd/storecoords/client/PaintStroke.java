@@ -0,0 +1,214 @@
+package lu.apwbd.storecoords.client;
+
+import com.mojang.blaze3d.vertex.PoseStack;
+import com.mojang.blaze3d.vertex.VertexConsumer;
+import lu.apwbd.storecoords.StoreCoords;
+import lu.apwbd.storecoords.client.config.ClientConfig;
+import lu.apwbd.storecoords.client.render.BlockHighlighter;
+import lu.apwbd.storecoords.io.CoordsManager;
+import lu.apwbd.storecoords.util.LongPosSet;
+import lu.apwbd.storecoords.util.SectionIndex;
+import lu.apwbd.storecoords.world.MultiBlockResolver;
+import net.minecraft.client.KeyMapping;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.player.LocalPlayer;
+import net.minecraft.client.renderer.LevelRenderer;
+import net.minecraft.client.renderer.MultiBufferSource;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.phys.Vec3;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.client.event.RenderLevelStageEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+/**
+ * Hold-to-paint for the store and remove keys.
+ * <p>
+ * Pressing either key starts a stroke with the targeted block. While the key stays down, every block the
+ * crosshair moves onto is resolved and added to the stroke. Releasing the key commits the stroke as one
+ * batch, so painting a row of blocks costs one write instead of one per block. A long stroke is also
+ * committed every {@code paint.commitTicks} ticks, and early once it reaches {@code paint.maxBlocks}.
+ * Until then the blocks that would change are outlined, green for storing and red for removing. A quick
+ * tap is a stroke of one block and reports exactly like a single store or remove.
+ */
+@Mod.EventBusSubscriber(modid = StoreCoords.MOD_ID, value = Dist.CLIENT)
+public final class PaintStroke {
+
+    private static final LongPosSet PENDING = new LongPosSet();
+
+    private static CoordsManager manager;
+    private static KeyMapping key;
+    private static boolean store;
+
+    /** The first block of the batch being collected; reported by name when it stays the only one. */
+    private static BlockPos anchor;
+    private static int anchors;
+    private static long lastTarget;
+    private static int ticks;
+
+    private PaintStroke() {}
+
+    /**
+     * Starts a stroke, committing a running one first.
+     *
+     * @param manager the active partition
+     * @param key     the key that has to stay down
+     * @param store   {@code true} to store, {@code false} to remove
+     * @param target  the block targeted when the key went down
+     */
+    static void start(CoordsManager manager, KeyMapping key, boolean store, BlockPos target) {
+        LocalPlayer player = Minecraft.getInstance().player;
+        if (PaintStroke.manager != null && player != null) commit(player);
+
+        PaintStroke.manager = manager;
+        PaintStroke.key = key;
+        PaintStroke.store = store;
+        add(player, target);
+    }
+
+    @SubscribeEvent
+    public static void onClientTick(TickEvent.ClientTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || manager == null) return;
+
+        LocalPlayer player = Minecraft.getInstance().player;
+        if (player == null || WorldSession.manager() != manager) {
+            StoreCoords.LOGGER.debug("Dropping paint stroke after a level change");
+            cancel();
+            return;
+        }
+
+        if (!key.isDown()) {
+            commit(player);
+            cancel();
+            return;
+        }
+
+        BlockPos target = KeyInputHandler.getTargetBlockPos(player);
+        if (target != null && target.asLong() != lastTarget) add(player, target);
+
+        if (PENDING.isEmpty()) return;
+        if (++ticks >= ClientConfig.PAINT_COMMIT_TICKS.get() || PENDING.size() >= ClientConfig.PAINT_MAX_BLOCKS.get()) {
+            commit(player);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onLoggedOut(ClientPlayerNetworkEvent.LoggedOutEvent event) {
+        cancel();
+    }
+
+    /**
+     * Outlines the blocks the running stroke would change.
+     *
+     * @param event the {@code RenderLevelStageEvent} of the current frame
+     */
+    @SubscribeEvent
+    public static void onRenderStage(RenderLevelStageEvent event) {
+        if (manager == null || PENDING.isEmpty()) return;
+        if (event.getStage() != RenderLevelStageEvent.Stage.AFTER_TRANSLUCENT_BLOCKS) return;
+
+        SectionIndex stored = manager.getPositions();
+        float red = store ? 0.3F : 1.0F;
+        float green = store ? 1.0F : 0.3F;
+
+        PoseStack poseStack = event.getPoseStack();
+        Vec3 cam = event.getCamera().getPosition();
+
+        MultiBufferSource.BufferSource buffer = Minecraft.getInstance().renderBuffers().bufferSource();
+        VertexConsumer consumer = buffer.getBuffer(RenderType.lines());
+
+        poseStack.pushPose();
+        poseStack.translate(-cam.x, -cam.y, -cam.z);
+        for (int s = PENDING.firstSlot(); s >= 0; s = PENDING.nextSlot(s)) {
+            long p = PENDING.keyAt(s);
+            if (stored.contains(p) == store) continue;
+
+            int x = BlockPos.getX(p);
+            int y = BlockPos.getY(p);
+            int z = BlockPos.getZ(p);
+            LevelRenderer.renderLineBox(poseStack, consumer,
+                    x - 0.005D, y - 0.005D, z - 0.005D, x + 1.005D, y + 1.005D, z + 1.005D,
+                    red, green, 0.3F, 1.0F);
+        }
+        poseStack.popPose();
+
+        buffer.endBatch(RenderType.lines());
+    }
+
+    private static void add(LocalPlayer player, BlockPos target) {
+        if (player == null) return;
+
+        lastTarget = target.asLong();
+        if (PENDING.contains(lastTarget)) return;
+
+        if (anchor == null) anchor = target.immutable();
+        anchors++;
+        MultiBlockResolver.resolve(player.level, target, PENDING);
+    }
+
+    /**
+     * Stores or removes the collected blocks as one batch and starts a new, empty batch.
+     */
+    private static void commit(LocalPlayer player) {
+        if (PENDING.isEmpty()) return;
+
+        CoordsManager target = manager;
+        LongPosSet positions = new LongPosSet(PENDING);
+        BlockPos first = anchor;
+        int count = anchors;
+        boolean storing = store;
+
+        PENDING.clear();
+        anchor = null;
+        anchors = 0;
+        ticks = 0;
+
+        // usually already loaded at world join; otherwise the edit is applied once loading completes
+        target.loadAsync(Minecraft.getInstance()).thenAccept(ok -> {
+            if (!ok) {
+                ChatMessages.fileError(player, "load", target.getFileName());
+                return;
+            }
+
+            CoordsManager.BatchResult r = storing ? target.storeAll(positions) : target.removeAll(positions);
+            if (count == 1) {
+                if (storing) {
+                    KeyInputHandler.handleStore(player, target, first, positions.size(), r);
+                } else {
+                    KeyInputHandler.handleRemove(player, target, first, positions.size(), r);
+                }
+                return;
+            }
+
+            if (r.status == CoordsManager.ActionResult.IO_ERROR) {
+                ChatMessages.fileError(player, "edit", target.getFileName());
+                return;
+            }
+            if (r.status != CoordsManager.ActionResult.OK) {
+                ChatMessages.paintUnchanged(player, storing);
+                return;
+            }
+
+            ChatMessages.painted(player, storing, r.changedCount());
+            if (storing) {
+                BlockHighlighter.addToCache(r.changedPositions);
+                StoreTag.apply(target, r.changedPositions);
+            } else {
+                BlockHighlighter.removeFromCache(r.changedPositions);
+            }
+        });
+    }
+
+    private static void cancel() {
+        PENDING.clear();
+        manager = null;
+        key = null;
+        anchor = null;
+        anchors = 0;
+        lastTarget = 0;
+        ticks = 0;
+    }
+}
@@ -0,0 +1,233 @@
+package lu.apwbd.storecoords.client;
+
+import com.mojang.blaze3d.vertex.PoseStack;
+import com.mojang.blaze3d.vertex.VertexConsumer;
+import lu.apwbd.storecoords.StoreCoords;
+import lu.apwbd.storecoords.client.config.ClientConfig;
+import lu.apwbd.storecoords.client.render.BlockHighlighter;
+import lu.apwbd.storecoords.io.CoordsManager;
+import lu.apwbd.storecoords.util.LongPosSet;
+import lu.apwbd.storecoords.world.RegionScan;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.player.LocalPlayer;
+import net.minecraft.client.renderer.LevelRenderer;
+import net.minecraft.client.renderer.MultiBufferSource;
+import net.minecraft.client.renderer.RenderType;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.phys.Vec3;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.client.event.RenderLevelStageEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+/**
+ * Two-corner region selection for storing or removing whole cuboids at once.
+ * <p>
+ * The select key sets the first corner, then the second; pressing it again starts over, and pressing it
+ * without a targeted block clears the selection. While a region is selected, the store and remove keys
+ * apply to it instead of the targeted block. Storing scans the region for non-air blocks across several
+ * client ticks; removing drops every stored position inside the region straight from the index. Either
+ * way the result is one batch and therefore one persisted write.
+ */
+@Mod.EventBusSubscriber(modid = StoreCoords.MOD_ID, value = Dist.CLIENT)
+public final class RegionSelection {
+
+    private static BlockPos first;
+    private static BlockPos second;
+
+    private static RegionScan scan;
+    private static CoordsManager scanManager;
+
+    private RegionSelection() {}
+
+    public static boolean isComplete() {
+        return first != null && second != null;
+    }
+
+    /**
+     * Handles a press of the select key.
+     *
+     * @param player the local player
+     * @param target the targeted block, or {@code null} to clear the selection
+     */
+    public static void select(LocalPlayer player, BlockPos target) {
+        if (target == null) {
+            if (first != null) {
+                clear();
+                ChatMessages.selectionCleared(player);
+            } else {
+                ChatMessages.noTarget(player);
+            }
+            return;
+        }
+
+        if (first == null || second != null) {
+            first = target.immutable();
+            second = null;
+            ChatMessages.cornerSelected(player, 1, first);
+            return;
+        }
+
+        second = target.immutable();
+        ChatMessages.cornerSelected(player, 2, second);
+        ChatMessages.selectionComplete(player, RegionScan.volume(first, second));
+    }
+
+    /**
+     * Stores every non-air block, or removes every stored position, inside the selected region. The
+     * selection is cleared once the operation has started.
+     *
+     * @param player  the local player
+     * @param manager the active partition
+     * @param store   {@code true} to store, {@code false} to remove
+     */
+    public static void apply(LocalPlayer player, CoordsManager manager, boolean store) {
+        if (!isComplete()) return;
+        if (scan != null) {
+            ChatMessages.regionBusy(player);
+            return;
+        }
+
+        long volume = RegionScan.volume(first, second);
+        int max = ClientConfig.MAX_SELECTION_VOLUME.get();
+        if (volume > max) {
+            ChatMessages.selectionTooLarge(player, volume, max);
+            return;
+        }
+
+        BlockPos a = first;
+        BlockPos b = second;
+        clear();
+
+        manager.loadAsync(Minecraft.getInstance()).thenAccept(ok -> {
+            if (!ok) {
+                ChatMessages.fileError(player, "load", manager.getFileName());
+                return;
+            }
+
+            if (store) {
+                scan = new RegionScan(player.level, a, b);
+                scanManager = manager;
+            } else {
+                removeRegion(player, manager, a, b);
+            }
+        });
+    }
+
+    /**
+     * Advances the running region scan by the configured block budget and stores the result once
+     * the scan is done. A scan is dropped if the player changed level or partition meanwhile.
+     *
+     * @param event the client tick event
+     */
+    @SubscribeEvent
+    public static void onClientTick(TickEvent.ClientTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || scan == null) return;
+
+        Minecraft mc = Minecraft.getInstance();
+        LocalPlayer player = mc.player;
+        if (player == null || mc.level != scan.level() || WorldSession.manager() != scanManager) {
+            StoreCoords.LOGGER.debug("Dropping region scan after a level change");
+            cancelScan();
+            return;
+        }
+
+        if (!scan.step(ClientConfig.SCAN_BLOCKS_PER_TICK.get())) return;
+
+        RegionScan done = scan;
+        CoordsManager manager = scanManager;
+        cancelScan();
+
+        CoordsManager.BatchResult r = manager.storeAll(done.found());
+        if (r.status == CoordsManager.ActionResult.IO_ERROR) {
+            ChatMessages.fileError(player, "edit", manager.getFileName());
+            return;
+        }
+        if (r.status == CoordsManager.ActionResult.ALREADY_EXISTS) {
+            ChatMessages.regionUnchanged(player, true);
+            return;
+        }
+
+        ChatMessages.regionStored(player, r.changedCount(), done.unloadedColumns());
+        BlockHighlighter.addToCache(r.changedPositions);
+        StoreTag.apply(manager, r.changedPositions);
+    }
+
+    @SubscribeEvent
+    public static void onLoggedOut(ClientPlayerNetworkEvent.LoggedOutEvent event) {
+        clear();
+        cancelScan();
+    }
+
+    /**
+     * Outlines the selected region, or the first corner while the second is still missing.
+     *
+     * @param event the {@code RenderLevelStageEvent} of the current frame
+     */
+    @SubscribeEvent
+    public static void onRenderStage(RenderLevelStageEvent event) {
+        if (first == null) return;
+        if (event.getStage() != RenderLevelStageEvent.Stage.AFTER_TRANSLUCENT_BLOCKS) return;
+
+        BlockPos a = first;
+        BlockPos b = second != null ? second : first;
+
+        PoseStack poseStack = event.getPoseStack();
+        Vec3 cam = event.getCamera().getPosition();
+
+        MultiBufferSource.BufferSource buffer = Minecraft.getInstance().renderBuffers().bufferSource();
+        VertexConsumer consumer = buffer.getBuffer(RenderType.lines());
+
+        poseStack.pushPose();
+        poseStack.translate(-cam.x, -cam.y, -cam.z);
+        LevelRenderer.renderLineBox(poseStack, consumer,
+                Math.min(a.getX(), b.getX()) - 0.01D,
+                Math.min(a.getY(), b.getY()) - 0.01D,
+                Math.min(a.getZ(), b.getZ()) - 0.01D,
+                Math.max(a.getX(), b.getX()) + 1.01D,
+                Math.max(a.getY(), b.getY()) + 1.01D,
+                Math.max(a.getZ(), b.getZ()) + 1.01D,
+                0.3F, 0.9F, 1.0F, 1.0F);
+        poseStack.popPose();
+
+        buffer.endBatch(RenderType.lines());
+    }
+
+    private static void removeRegion(LocalPlayer player, CoordsManager manager, BlockPos a, BlockPos b) {
+        int minX = Math.min(a.getX(), b.getX());
+        int minY = Math.min(a.getY(), b.getY());
+        int minZ = Math.min(a.getZ(), b.getZ());
+        int maxX = Math.max(a.getX(), b.getX());
+        int maxY = Math.max(a.getY(), b.getY());
+        int maxZ = Math.max(a.getZ(), b.getZ());
+
+        LongPosSet inside = new LongPosSet();
+        manager.getPositions().forEachInBox(minX, minY, minZ, maxX, maxY, maxZ, inside::add);
+
+        if (inside.isEmpty()) {
+            ChatMessages.regionUnchanged(player, false);
+            return;
+        }
+
+        CoordsManager.BatchResult r = manager.removeAll(inside);
+        if (r.status == CoordsManager.ActionResult.IO_ERROR) {
+            ChatMessages.fileError(player, "edit", manager.getFileName());
+            return;
+        }
+
+        ChatMessages.regionRemoved(player, r.changedCount());
+        BlockHighlighter.removeFromCache(r.changedPositions);
+    }
+
+    private static void clear() {
+        first = null;
+        second = null;
+    }
+
+    private static void cancelScan() {
+        scan = null;
+        scanManager = null;
+    }
+}
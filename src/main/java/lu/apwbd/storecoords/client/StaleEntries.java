@@ -0,0 +1,184 @@
+package lu.apwbd.storecoords.client;
+
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import lu.apwbd.storecoords.StoreCoords;
+import lu.apwbd.storecoords.client.config.ClientConfig;
+import lu.apwbd.storecoords.client.render.BlockHighlighter;
+import lu.apwbd.storecoords.io.CoordsManager;
+import lu.apwbd.storecoords.util.LongPosSet;
+import lu.apwbd.storecoords.util.SectionIndex;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.client.player.LocalPlayer;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.world.ChunkEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+/**
+ * Finds stored positions that point at air, checking each chunk as the client receives it.
+ * <p>
+ * A chunk load only queues the chunk; a few queued chunks are checked per client tick. Only the stored
+ * positions inside the chunk are looked at, found through the section index with one probe per chunk
+ * section, so the cost follows what is stored in loaded chunks, not what is stored overall. Depending on
+ * {@code validation.staleMode}, stale positions are flagged, and drawn in red by the highlighter, or
+ * collected and removed once per tick window as one batch, which is one write and one undo step.
+ * <p>
+ * Positions only record where a block was stored, not which block, so "now a different block" cannot
+ * be told apart from a legitimate change; only air counts as stale.
+ */
+@Mod.EventBusSubscriber(modid = StoreCoords.MOD_ID, value = Dist.CLIENT)
+public final class StaleEntries {
+
+    private static final LongArrayFIFOQueue QUEUE = new LongArrayFIFOQueue();
+    private static final LongPosSet FLAGGED = new LongPosSet();
+    private static final LongPosSet TO_PRUNE = new LongPosSet();
+
+    /** The partition the flags belong to. */
+    private static CoordsManager flaggedManager;
+    private static int newlyFlagged;
+    private static int ticks;
+
+    private StaleEntries() {}
+
+    /**
+     * @return the positions currently flagged as stale; read-only for callers
+     */
+    public static LongPosSet flagged() {
+        return FLAGGED;
+    }
+
+    @SubscribeEvent
+    public static void onChunkLoad(ChunkEvent.Load event) {
+        if (!(event.getWorld() instanceof ClientLevel)) return;
+        if (ClientConfig.STALE_MODE.get() == ClientConfig.StaleMode.OFF) return;
+
+        ChunkPos pos = event.getChunk().getPos();
+        QUEUE.enqueue(pos.toLong());
+    }
+
+    @SubscribeEvent
+    public static void onClientTick(TickEvent.ClientTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) return;
+
+        Minecraft mc = Minecraft.getInstance();
+        ClientLevel level = mc.level;
+        LocalPlayer player = mc.player;
+        CoordsManager manager = WorldSession.manager();
+        if (level == null || player == null || manager == null) return;
+
+        if (manager != flaggedManager) {
+            // queued chunks already belong to the new level; only the findings are per partition
+            clearFindings();
+            flaggedManager = manager;
+        }
+
+        ClientConfig.StaleMode mode = ClientConfig.STALE_MODE.get();
+        if (mode == ClientConfig.StaleMode.OFF) {
+            if (!FLAGGED.isEmpty()) unflagAll();
+            QUEUE.clear();
+            return;
+        }
+        // chunks stay queued until the partition is loaded
+        if (!manager.isLoaded()) return;
+
+        SectionIndex index = manager.getPositions();
+        for (int n = ClientConfig.STALE_CHUNKS_PER_TICK.get(); n > 0 && !QUEUE.isEmpty(); n--) {
+            long chunkKey = QUEUE.dequeueLong();
+            if (index.isEmpty()) continue;
+
+            LevelChunk chunk = level.getChunkSource().getChunk(ChunkPos.getX(chunkKey), ChunkPos.getZ(chunkKey), false);
+            if (chunk != null) check(chunk, index, mode);
+        }
+
+        if (++ticks < ClientConfig.STALE_WINDOW_TICKS.get()) return;
+        ticks = 0;
+
+        if (!TO_PRUNE.isEmpty()) prune(player, manager);
+        if (newlyFlagged > 0) {
+            ChatMessages.staleFlagged(player, newlyFlagged);
+            newlyFlagged = 0;
+        }
+    }
+
+    @SubscribeEvent
+    public static void onLoggedOut(ClientPlayerNetworkEvent.LoggedOutEvent event) {
+        QUEUE.clear();
+        clearFindings();
+        flaggedManager = null;
+    }
+
+    private static void check(LevelChunk chunk, SectionIndex index, ClientConfig.StaleMode mode) {
+        int minX = chunk.getPos().getMinBlockX();
+        int minZ = chunk.getPos().getMinBlockZ();
+        LongPosSet stale = new LongPosSet(4);
+        LongPosSet restored = new LongPosSet(4);
+
+        index.forEachSectionIn(minX, chunk.getMinBuildHeight(), minZ,
+                minX + 15, chunk.getMaxBuildHeight() - 1, minZ + 15, section -> {
+            LevelChunkSection blocks = chunk.getSection(chunk.getSectionIndex(section.minY()));
+            boolean empty = blocks.hasOnlyAir();
+
+            for (int i = 0; i < section.size(); i++) {
+                long pos = section.get(i);
+                if (empty || blocks.getBlockState(BlockPos.getX(pos) & 15, BlockPos.getY(pos) & 15, BlockPos.getZ(pos) & 15).isAir()) {
+                    stale.add(pos);
+                } else if (FLAGGED.contains(pos)) {
+                    restored.add(pos);
+                }
+            }
+        });
+
+        if (!restored.isEmpty()) {
+            restored.forEach(FLAGGED::remove);
+            BlockHighlighter.metadataChanged(restored.toArray());
+        }
+        if (stale.isEmpty()) return;
+
+        if (mode == ClientConfig.StaleMode.PRUNE) {
+            stale.forEach(TO_PRUNE::add);
+            return;
+        }
+
+        int before = FLAGGED.size();
+        stale.forEach(FLAGGED::add);
+        newlyFlagged += FLAGGED.size() - before;
+        BlockHighlighter.metadataChanged(stale.toArray());
+    }
+
+    /**
+     * Removes everything collected during the window as one batch.
+     */
+    private static void prune(LocalPlayer player, CoordsManager manager) {
+        CoordsManager.BatchResult r = manager.removeAll(TO_PRUNE);
+        TO_PRUNE.clear();
+
+        if (r.status == CoordsManager.ActionResult.IO_ERROR) {
+            ChatMessages.fileError(player, "edit", manager.getFileName());
+            return;
+        }
+        if (r.status != CoordsManager.ActionResult.OK) return;
+
+        ChatMessages.stalePruned(player, r.changedCount());
+        BlockHighlighter.removeFromCache(r.changedPositions);
+    }
+
+    private static void unflagAll() {
+        long[] flagged = FLAGGED.toArray();
+        FLAGGED.clear();
+        BlockHighlighter.metadataChanged(flagged);
+    }
+
+    private static void clearFindings() {
+        FLAGGED.clear();
+        TO_PRUNE.clear();
+        newlyFlagged = 0;
+        ticks = 0;
+    }
+}
@@ -0,0 +1,44 @@
+package lu.apwbd.storecoords.client;
+
+import lu.apwbd.storecoords.client.render.BlockHighlighter;
+import lu.apwbd.storecoords.io.CoordsManager;
+
+/**
+ * The category and label that newly stored positions are tagged with, set through
+ * {@code /storecoords category}. Lasts until it is cleared or the game is closed. Client thread only.
+ */
+public final class StoreTag {
+
+    private static String category;
+    private static String label;
+
+    private StoreTag() {}
+
+    public static void set(String category, String label) {
+        StoreTag.category = category;
+        StoreTag.label = label;
+    }
+
+    public static void clear() {
+        set(null, null);
+    }
+
+    public static String category() {
+        return category;
+    }
+
+    public static String label() {
+        return label;
+    }
+
+    /**
+     * Tags just stored positions with the active category and label, if any.
+     *
+     * @param manager the partition the positions were stored in
+     * @param stored  packed positions that were added
+     */
+    public static void apply(CoordsManager manager, long[] stored) {
+        if (category == null && label == null) return;
+        if (manager.tag(stored, category, label) > 0) BlockHighlighter.metadataChanged(stored);
+    }
+}
@@ -0,0 +1,189 @@
+package lu.apwbd.storecoords.client;
+
+import lu.apwbd.storecoords.StoreCoords;
+import lu.apwbd.storecoords.client.render.BlockHighlighter;
+import lu.apwbd.storecoords.io.CoordsManager;
+import lu.apwbd.storecoords.io.CoordsTransfer;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.player.LocalPlayer;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.loading.FMLPaths;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Runs the {@code import} and {@code export} commands against the {@code config/storecoords/transfer}
+ * directory.
+ * <p>
+ * An import is parsed off the client thread and then stored with one {@code storeAll}, so it is a single
+ * journal write and a single undo step. An export is written on the client thread a slice per tick from a
+ * cursor over the live index; the cursor is reopened after the last written position every tick, so edits
+ * made while the export runs do not invalidate it.
+ */
+@Mod.EventBusSubscriber(modid = StoreCoords.MOD_ID, value = Dist.CLIENT)
+public final class Transfers {
+
+    public static final File DIRECTORY = new File(
+            new File(FMLPaths.CONFIGDIR.get().toFile(), StoreCoords.MOD_ID), "transfer");
+
+    /** Positions written per client tick while exporting. */
+    private static final int EXPORT_PER_TICK = 50_000;
+
+    private static CoordsTransfer.Exporter export;
+    private static CoordsManager exportManager;
+    private static String exportName;
+    private static boolean importing;
+
+    private Transfers() {}
+
+    /**
+     * @return the importable files in the transfer directory, for command suggestions
+     */
+    public static List<String> importableFiles() {
+        List<String> names = new ArrayList<>();
+        String[] files = DIRECTORY.list();
+        if (files == null) return names;
+
+        for (String name : files) {
+            if (CoordsTransfer.Format.byFileName(name) != null) names.add(name);
+        }
+        return names;
+    }
+
+    /**
+     * Reads {@code name} from the transfer directory and stores every position in it that is not
+     * stored yet.
+     */
+    public static void importFile(LocalPlayer player, CoordsManager manager, String name) {
+        File file = resolve(name);
+        if (file == null || CoordsTransfer.Format.byFileName(name) == null) {
+            ChatMessages.unknownTransferFile(player, name);
+            return;
+        }
+        if (importing) {
+            ChatMessages.transferBusy(player);
+            return;
+        }
+
+        importing = true;
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return CoordsTransfer.read(file);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }).whenCompleteAsync((result, error) -> {
+            importing = false;
+            if (error != null) {
+                StoreCoords.LOGGER.error("Failed to import {}", file.getPath(), error);
+                ChatMessages.fileError(player, "import", name);
+                return;
+            }
+            store(player, manager, name, result);
+        }, Minecraft.getInstance());
+    }
+
+    private static void store(LocalPlayer player, CoordsManager manager, String name, CoordsTransfer.ImportResult result) {
+        if (manager != WorldSession.manager()) {
+            StoreCoords.LOGGER.debug("Dropping import of {} after a level change", name);
+            return;
+        }
+
+        int read = result.positions.size();
+        CoordsManager.BatchResult r = read == 0
+                ? new CoordsManager.BatchResult(CoordsManager.ActionResult.ALREADY_EXISTS, new long[0])
+                : manager.storeAll(result.positions);
+
+        if (r.status == CoordsManager.ActionResult.IO_ERROR) {
+            ChatMessages.fileError(player, "edit", manager.getFileName());
+            return;
+        }
+
+        ChatMessages.imported(player, name, r.changedCount(), read, result.skipped);
+        if (r.status == CoordsManager.ActionResult.OK) {
+            BlockHighlighter.addToCache(r.changedPositions);
+        }
+    }
+
+    /**
+     * Starts writing every stored position of {@code manager} to {@code name} in the transfer directory.
+     * The file's extension is added if missing.
+     */
+    public static void exportFile(LocalPlayer player, CoordsManager manager, String name, CoordsTransfer.Format format) {
+        if (CoordsTransfer.Format.byFileName(name) != format) name = name + "." + format.extension;
+
+        File file = resolve(name);
+        if (file == null) {
+            ChatMessages.unknownTransferFile(player, name);
+            return;
+        }
+        if (export != null) {
+            ChatMessages.transferBusy(player);
+            return;
+        }
+
+        try {
+            export = CoordsTransfer.export(file, format);
+            exportManager = manager;
+            exportName = name;
+        } catch (IOException e) {
+            StoreCoords.LOGGER.error("Failed to start exporting to {}", file.getPath(), e);
+            ChatMessages.fileError(player, "export", name);
+        }
+    }
+
+    @SubscribeEvent
+    public static void onClientTick(TickEvent.ClientTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || export == null) return;
+
+        LocalPlayer player = Minecraft.getInstance().player;
+        if (player == null || WorldSession.manager() != exportManager) {
+            StoreCoords.LOGGER.debug("Dropping export after a level change");
+            cancelExport();
+            return;
+        }
+
+        CoordsTransfer.Exporter running = export;
+        try {
+            if (!running.write(exportManager.getPositions().listing(running.last()), EXPORT_PER_TICK)) return;
+            running.finish();
+            ChatMessages.exported(player, exportName, running.written());
+        } catch (IOException e) {
+            StoreCoords.LOGGER.error("Failed to export to {}", exportName, e);
+            running.abort();
+            ChatMessages.fileError(player, "export", exportName);
+        }
+        export = null;
+        exportManager = null;
+        exportName = null;
+    }
+
+    @SubscribeEvent
+    public static void onLoggedOut(ClientPlayerNetworkEvent.LoggedOutEvent event) {
+        cancelExport();
+    }
+
+    private static void cancelExport() {
+        if (export != null) export.abort();
+        export = null;
+        exportManager = null;
+        exportName = null;
+    }
+
+    /**
+     * @return the file for {@code name}, or {@code null} if the name would leave the transfer directory
+     */
+    private static File resolve(String name) {
+        if (name.isEmpty() || name.startsWith(".")) return null;
+        return new File(DIRECTORY, name);
+    }
+}
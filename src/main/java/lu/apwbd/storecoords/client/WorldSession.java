@@ -0,0 +1,161 @@
+package lu.apwbd.storecoords.client;
+
+import lu.apwbd.storecoords.StoreCoords;
+import lu.apwbd.storecoords.client.render.BlockHighlighter;
+import lu.apwbd.storecoords.io.CoordsManager;
+import lu.apwbd.storecoords.io.CoordsRepository;
+import lu.apwbd.storecoords.io.StorageWatcher;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.player.LocalPlayer;
+import net.minecraft.client.multiplayer.ClientLevel;
+import net.minecraft.client.multiplayer.ServerData;
+import net.minecraft.client.server.IntegratedServer;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.storage.LevelResource;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.loading.FMLPaths;
+
+import java.io.File;
+import java.nio.file.Path;
+
+/**
+ * Tracks which coordinate partition (world + dimension) is active for the local player and switches
+ * it on login and dimension change, so that only that partition is loaded and highlighted.
+ */
+@Mod.EventBusSubscriber(modid = StoreCoords.MOD_ID, value = Dist.CLIENT)
+public final class WorldSession {
+
+    private static final CoordsRepository REPOSITORY = new CoordsRepository(
+            new File(FMLPaths.CONFIGDIR.get().toFile(), StoreCoords.MOD_ID),
+            WorldSession::installErrorListener,
+            task -> Minecraft.getInstance().execute(task)
+    );
+
+    private static final StorageWatcher WATCHER = new StorageWatcher();
+
+    private static CoordsManager active;
+
+    private WorldSession() {}
+
+    /**
+     * @return the manager of the partition the player is currently in, or {@code null} outside a world
+     */
+    public static CoordsManager manager() {
+        return active;
+    }
+
+    /**
+     * Activates the partition of a newly loaded client level. Fires on login and on every
+     * dimension change, since each creates a new {@code ClientLevel}.
+     *
+     * @param event the {@code WorldEvent.Load} instance for the level being loaded
+     */
+    @SubscribeEvent
+    public static void onWorldLoad(WorldEvent.Load event) {
+        if (!(event.getWorld() instanceof ClientLevel level)) return;
+
+        CoordsManager manager = REPOSITORY.get(
+                worldId(Minecraft.getInstance()),
+                level.dimension().location().toString(),
+                level.dimension() == Level.OVERWORLD
+        );
+        if (manager == active) return;
+
+        active = manager;
+        BlockHighlighter.bind(manager);
+        WATCHER.watch(manager.getDirectory(), () -> Minecraft.getInstance().execute(() -> reloadExternal(manager)));
+
+        // preload on the writer thread so the first keypress or toggle does not wait for disk IO
+        manager.loadAsync(Minecraft.getInstance()).thenAccept(ok -> {
+            if (!ok) StoreCoords.LOGGER.error("Failed to load coordinates for {}", level.dimension().location());
+        });
+    }
+
+    /**
+     * Flushes pending write-behind changes when the client level is unloaded, so leaving a world
+     * never depends on the writer thread having caught up.
+     *
+     * @param event the {@code WorldEvent.Unload} instance for the level being unloaded
+     */
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event) {
+        if (!event.getWorld().isClientSide()) return;
+        if (active != null) active.flush();
+    }
+
+    @SubscribeEvent
+    public static void onLoggedOut(ClientPlayerNetworkEvent.LoggedOutEvent event) {
+        WATCHER.stopWatching();
+        REPOSITORY.flushAll();
+        active = null;
+        BlockHighlighter.bind(null);
+    }
+
+    /**
+     * Keeps the regions around the player in memory when the active partition is stored in a region
+     * indexed store, such as the database; does nothing otherwise.
+     */
+    @SubscribeEvent
+    public static void onClientTick(TickEvent.ClientTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) return;
+
+        Minecraft mc = Minecraft.getInstance();
+        LocalPlayer player = mc.player;
+        CoordsManager manager = active;
+        if (player == null || manager == null) return;
+
+        manager.follow(player.getBlockX(), player.getBlockZ(), mc).thenAccept(delta -> apply(manager, delta));
+    }
+
+    /**
+     * Picks up an external edit of the active partition's files and hands only what changed to the
+     * highlighter.
+     */
+    private static void reloadExternal(CoordsManager manager) {
+        if (manager != active) return;
+
+        manager.reloadIfChanged(Minecraft.getInstance()).thenAccept(delta -> {
+            if (delta == null || delta.isEmpty()) return;
+
+            StoreCoords.LOGGER.info("Reloaded {} after an external change: +{} -{}",
+                    manager.getFileName(), delta.added.length, delta.removed.length);
+            apply(manager, delta);
+        });
+    }
+
+    private static void apply(CoordsManager manager, CoordsManager.ReloadDelta delta) {
+        if (delta == null || delta.isEmpty() || manager != active) return;
+        BlockHighlighter.removeFromCache(delta.removed);
+        BlockHighlighter.addToCache(delta.added);
+    }
+
+    /**
+     * Identifies the current world: the save folder in singleplayer, the server address otherwise.
+     */
+    private static String worldId(Minecraft mc) {
+        IntegratedServer server = mc.getSingleplayerServer();
+        if (server != null) {
+            Path save = server.getWorldPath(LevelResource.ROOT).toAbsolutePath().normalize().getFileName();
+            return "sp_" + (save != null ? save.toString() : "world");
+        }
+
+        ServerData data = mc.getCurrentServer();
+        if (data != null) return "mp_" + data.ip;
+
+        return "unknown";
+    }
+
+    private static void installErrorListener(CoordsManager manager) {
+        manager.setSaveErrorListener(() -> {
+            Minecraft mc = Minecraft.getInstance();
+            mc.execute(() -> {
+                if (mc.player != null) ChatMessages.fileError(mc.player, "save", manager.getFileName());
+            });
+        });
+    }
+}
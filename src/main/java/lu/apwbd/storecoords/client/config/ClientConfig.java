@@ -2,6 +2,8 @@ package lu.apwbd.storecoords.client.config;
 
 import net.minecraftforge.common.ForgeConfigSpec;
 
+import java.util.List;
+
 public final class ClientConfig {
 
     public enum ColorMode {
@@ -12,12 +14,61 @@ public final class ClientConfig {
         HIGH_CONTRAST
     }
 
+    public enum RenderMode {
+        IMMEDIATE,
+        BUFFERED,
+        MERGED
+    }
+
+    public enum StorageFormat {
+        YAML,
+        BINARY,
+        DATABASE
+    }
+
+    public enum StaleMode {
+        OFF,
+        FLAG,
+        PRUNE
+    }
+
     public static final ForgeConfigSpec SPEC;
 
     public static final ForgeConfigSpec.IntValue RENDER_DISTANCE;
     public static final ForgeConfigSpec.EnumValue<ColorMode> COLOR_MODE;
 
     public static final ForgeConfigSpec.DoubleValue ALPHA;
+    public static final ForgeConfigSpec.EnumValue<RenderMode> RENDER_MODE;
+    public static final ForgeConfigSpec.IntValue MAX_BOXES_PER_FRAME;
+    public static final ForgeConfigSpec.BooleanValue ADAPTIVE_BUDGET;
+    public static final ForgeConfigSpec.DoubleValue TARGET_RENDER_MS;
+    public static final ForgeConfigSpec.ConfigValue<List<? extends String>> CATEGORY_COLORS;
+
+    public static final ForgeConfigSpec.EnumValue<StorageFormat> STORAGE_FORMAT;
+    public static final ForgeConfigSpec.BooleanValue WRITE_BEHIND;
+    public static final ForgeConfigSpec.IntValue WRITE_DELAY_MS;
+    public static final ForgeConfigSpec.IntValue JOURNAL_COMPACT_KB;
+    public static final ForgeConfigSpec.IntValue MAX_LOADED_PARTITIONS;
+
+    public static final ForgeConfigSpec.IntValue HISTORY_MAX_ENTRIES;
+    public static final ForgeConfigSpec.IntValue HISTORY_MAX_KB;
+
+    public static final ForgeConfigSpec.EnumValue<StaleMode> STALE_MODE;
+    public static final ForgeConfigSpec.IntValue STALE_CHUNKS_PER_TICK;
+    public static final ForgeConfigSpec.IntValue STALE_WINDOW_TICKS;
+
+    public static final ForgeConfigSpec.BooleanValue AUTO_TRACK;
+    public static final ForgeConfigSpec.ConfigValue<List<? extends String>> AUTO_TRACK_BLOCKS;
+    public static final ForgeConfigSpec.IntValue AUTO_TRACK_INTERVAL_TICKS;
+
+    public static final ForgeConfigSpec.IntValue PAINT_COMMIT_TICKS;
+    public static final ForgeConfigSpec.IntValue PAINT_MAX_BLOCKS;
+
+    public static final ForgeConfigSpec.IntValue MAX_SELECTION_VOLUME;
+    public static final ForgeConfigSpec.IntValue SCAN_BLOCKS_PER_TICK;
+
+    public static final ForgeConfigSpec.IntValue CONNECTED_MAX_BLOCKS;
+    public static final ForgeConfigSpec.ConfigValue<String> CONNECTED_TAG;
 
     static {
         ForgeConfigSpec.Builder b = new ForgeConfigSpec.Builder();
@@ -36,6 +87,143 @@ public final class ClientConfig {
                 .comment("Alpha/transparency for highlight lines (0.0 - 1.0)")
                 .defineInRange("alpha", 0.8, 0.05, 1.0);
 
+        RENDER_MODE = b
+                .comment("IMMEDIATE re-emits every box each frame. BUFFERED uploads each chunk section's boxes once",
+                        "into a GPU vertex buffer and only rebuilds it when the section, color or alpha changes.",
+                        "MERGED outlines only the outer edges of each cluster of adjacent stored blocks of the same colour")
+                .defineEnum("renderMode", RenderMode.IMMEDIATE);
+
+        MAX_BOXES_PER_FRAME = b
+                .comment("Most highlight boxes drawn per frame, nearest first. 0 draws every box in range")
+                .defineInRange("maxBoxesPerFrame", 8192, 0, 1_000_000);
+
+        ADAPTIVE_BUDGET = b
+                .comment("Lower the per-frame box budget below maxBoxesPerFrame while highlighting takes longer than targetRenderMs")
+                .define("adaptiveBudget", false);
+
+        TARGET_RENDER_MS = b
+                .comment("Time per frame, in milliseconds, the adaptive budget aims to keep highlighting within")
+                .defineInRange("targetRenderMs", 1.5, 0.1, 50.0);
+
+        CATEGORY_COLORS = b
+                .comment("Highlight colours per category, as \"category=#RRGGBB\" entries, e.g. [\"diamonds=#00FFFF\"].",
+                        "Positions in other categories or without one use the colour mode's colour")
+                .defineList("categoryColors", List.of(), entry -> entry instanceof String);
+
+        b.pop();
+
+        b.push("storage");
+
+        STORAGE_FORMAT = b
+                .comment("Storage format: YAML (coords.yml, human-readable), BINARY (coords.bin, compact and fast to load)",
+                        "or DATABASE (coords.mv.db, an embedded H2 database that writes each change as one transaction and never compacts).",
+                        "With DATABASE only the regions around the player are kept in memory, so highlighting and the",
+                        "list, near, count and export commands cover those regions; edits elsewhere read their regions first.",
+                        "External changes to the files or the database are picked up while playing.",
+                        "Switching formats migrates the existing data on the next load.")
+                .defineEnum("format", StorageFormat.YAML);
+
+        WRITE_BEHIND = b
+                .comment("Save coordinate changes on a background thread instead of on every keypress")
+                .define("writeBehind", true);
+
+        WRITE_DELAY_MS = b
+                .comment("Delay in milliseconds used to merge bursts of changes into one write-behind save")
+                .defineInRange("writeDelayMs", 1500, 0, 60000);
+
+        JOURNAL_COMPACT_KB = b
+                .comment("Size in KiB the change journal may reach before it is folded into a new snapshot in the background")
+                .defineInRange("journalCompactKb", 512, 16, 65536);
+
+        MAX_LOADED_PARTITIONS = b
+                .comment("How many world/dimension partitions may stay in memory before inactive ones are evicted")
+                .defineInRange("maxLoadedPartitions", 3, 1, 64);
+
+        b.pop();
+
+        b.push("history");
+
+        HISTORY_MAX_ENTRIES = b
+                .comment("How many store/remove operations can be undone. 0 disables undo")
+                .defineInRange("maxEntries", 64, 0, 4096);
+
+        HISTORY_MAX_KB = b
+                .comment("Memory in KiB the undo history may use; the oldest operations are forgotten first")
+                .defineInRange("maxKb", 4096, 16, 262144);
+
+        b.pop();
+
+        b.push("validation");
+
+        STALE_MODE = b
+                .comment("What to do with stored positions that turn out to be air when their chunk loads:",
+                        "OFF ignores them, FLAG highlights them in red, PRUNE removes them")
+                .defineEnum("staleMode", StaleMode.FLAG);
+
+        STALE_CHUNKS_PER_TICK = b
+                .comment("How many freshly loaded chunks are checked for stale positions per client tick")
+                .defineInRange("chunksPerTick", 16, 1, 1024);
+
+        STALE_WINDOW_TICKS = b
+                .comment("Ticks over which stale positions are collected before they are pruned in one batch or reported")
+                .defineInRange("windowTicks", 40, 1, 1200);
+
+        b.pop();
+
+        b.push("autoTrack");
+
+        AUTO_TRACK = b
+                .comment("Store blocks from the list below automatically when you place them")
+                .define("enabled", false);
+
+        AUTO_TRACK_BLOCKS = b
+                .comment("Block ids, or block tags prefixed with #, that are stored automatically when placed")
+                .defineList("blocks",
+                        List.of("minecraft:chest", "minecraft:trapped_chest", "minecraft:barrel", "#minecraft:shulker_boxes"),
+                        entry -> entry instanceof String);
+
+        AUTO_TRACK_INTERVAL_TICKS = b
+                .comment("Ticks over which placed blocks are collected before they are stored in one batch")
+                .defineInRange("intervalTicks", 20, 1, 1200);
+
+        b.pop();
+
+        b.push("paint");
+
+        PAINT_COMMIT_TICKS = b
+                .comment("While the store or remove key is held, collected blocks are saved after this many ticks",
+                        "even if the key is not released yet")
+                .defineInRange("commitTicks", 40, 1, 1200);
+
+        PAINT_MAX_BLOCKS = b
+                .comment("Most blocks one held key press collects before they are saved early")
+                .defineInRange("maxBlocks", 4096, 1, 65536);
+
+        b.pop();
+
+        b.push("selection");
+
+        MAX_SELECTION_VOLUME = b
+                .comment("Largest region, in blocks, that can be stored or removed at once")
+                .defineInRange("maxVolume", 1_048_576, 1, 16_777_216);
+
+        SCAN_BLOCKS_PER_TICK = b
+                .comment("How many blocks of a selected region are scanned per client tick when storing it")
+                .defineInRange("scanBlocksPerTick", 32768, 256, 1_048_576);
+
+        b.pop();
+
+        b.push("connected");
+
+        CONNECTED_MAX_BLOCKS = b
+                .comment("Most blocks a connected capture collects before it stops")
+                .defineInRange("maxBlocks", 512, 1, 65536);
+
+        CONNECTED_TAG = b
+                .comment("Block tag whose members count as connected to each other, e.g. \"forge:ores\".",
+                        "Empty, or a tag the targeted block is not in, means only the same block counts.")
+                .define("tag", "");
+
         b.pop();
 
         SPEC = b.build();
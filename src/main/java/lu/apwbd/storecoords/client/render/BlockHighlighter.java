@@ -1,25 +1,38 @@
 package lu.apwbd.storecoords.client.render;
 
+import com.mojang.blaze3d.systems.RenderSystem;
 import com.mojang.blaze3d.vertex.PoseStack;
 import com.mojang.blaze3d.vertex.VertexConsumer;
+import com.mojang.math.Matrix4f;
+import it.unimi.dsi.fastutil.longs.Long2ByteOpenHashMap;
 import lu.apwbd.storecoords.StoreCoords;
 import lu.apwbd.storecoords.client.ChatMessages;
+import lu.apwbd.storecoords.client.StaleEntries;
 import lu.apwbd.storecoords.client.config.ClientConfig;
 import lu.apwbd.storecoords.io.CoordsManager;
+import lu.apwbd.storecoords.metrics.Metrics;
+import lu.apwbd.storecoords.util.SectionIndex;
 import net.minecraft.client.Camera;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.player.LocalPlayer;
 import net.minecraft.client.renderer.LevelRenderer;
 import net.minecraft.client.renderer.MultiBufferSource;
 import net.minecraft.client.renderer.RenderType;
+import net.minecraft.client.renderer.ShaderInstance;
+import net.minecraft.client.renderer.culling.Frustum;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
 import net.minecraft.world.phys.AABB;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.client.event.RenderLevelStageEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 @Mod.EventBusSubscriber(modid = StoreCoords.MOD_ID, value = Dist.CLIENT)
 public final class BlockHighlighter {
@@ -29,8 +42,31 @@ public final class BlockHighlighter {
     private static float r,g,b;
     private static ClientConfig.ColorMode lastMode;
 
-    private static final Set<BlockPos> cachedSet = new HashSet<>();
-    private static final List<BlockPos> cachedList = new ArrayList<>();
+    /**
+     * The active partition. Its live, section-indexed position set is read every frame rather than
+     * copied, so stores, removals and a completed background load show up without cache bookkeeping.
+     */
+    private static CoordsManager manager;
+    /** The index the cached buffers were built from; a different one means the buffers are stale. */
+    private static SectionIndex lastIndex;
+
+    private static final SectionBuffers BUFFERS = new SectionBuffers();
+    private static final NearestOrder ORDER = new NearestOrder();
+    private static final MergedOutlines MERGED = new MergedOutlines();
+    private static final CategoryPalette PALETTE = new CategoryPalette();
+    private static final SectionColors COLORS = new SectionColors();
+
+    /** Lower bound for the adaptive budget, so highlighting never disappears entirely. */
+    private static final int MIN_ADAPTIVE_BUDGET = 256;
+    private static int adaptiveBudget;
+
+    // per-frame section visibility (0 = unknown, 1 = visible, 2 = culled); render thread only
+    private static final Long2ByteOpenHashMap VISIBILITY = new Long2ByteOpenHashMap();
+    private static final List<SectionIndex.Section> VISIBLE_SECTIONS = new ArrayList<>();
+
+    // per-frame counters for the debug overlay; render thread only
+    private static int considered;
+    private static int drawn;
 
     private BlockHighlighter() {}
 
@@ -45,57 +81,84 @@ public final class BlockHighlighter {
         enabled = !enabled;
         ChatMessages.highlightToggled(player, enabled);
 
+        BUFFERS.clear();
+        MERGED.clear();
+        COLORS.clear();
+        ORDER.invalidate();
+        lastIndex = null;
         if (!enabled) return;
 
-        if (!manager.ensureLoaded()) return;
-        rebuildFromSnapshot(manager.getBlocksSnapshot());
+        // positions appear on the first frame after the load completes; no need to wait here
+        manager.loadAsync(Minecraft.getInstance()).thenAccept(ok -> {
+            if (!ok) ChatMessages.fileError(player, "load", manager.getFileName());
+        });
     }
 
     /**
-     * Rebuilds the cached collections for highlighted blocks from the provided snapshot.
-     * This method clears the existing cached data and updates the caches with the
-     * new block positions from the snapshot to ensure consistent rendering.
+     * Switches the highlight to another partition's positions, e.g. after a dimension change, so
+     * positions from one dimension are never drawn at the same coordinates in another.
      *
-     * @param snapshot the set of {@code BlockPos} instances representing the new
-     *                 block positions to update the cached data
+     * @param manager the now active manager, or {@code null} when leaving a world
+     */
+    public static void bind(CoordsManager manager) {
+        BUFFERS.clear();
+        MERGED.clear();
+        COLORS.clear();
+        ORDER.invalidate();
+        lastIndex = null;
+        BlockHighlighter.manager = manager;
+    }
+
+    /**
+     * @return the number of section vertex buffers currently cached for the buffered render mode
      */
-    private static void rebuildFromSnapshot(Set<BlockPos> snapshot) {
-        cachedSet.clear();
-        cachedList.clear();
-        cachedSet.addAll(snapshot);
-        cachedList.addAll(snapshot);
+    public static int cachedBufferCount() {
+        return BUFFERS.bufferCount();
     }
 
     /**
-     * Adds a set of immutable block positions to the cache for highlighting purposes.
-     * This method updates both the cached set and the corresponding list, preventing
-     * duplicate entries while maintaining the order for rendering.
+     * Notifies the highlighter that positions were stored. The shared set already contains them;
+     * this only invalidates the cached geometry of the chunk sections they fall into.
      *
-     * @param added the set of {@code BlockPos} instances to be added to the cache;
-     *              must not be {@code null} or empty. Each block position is converted
-     *              to an immutable reference before caching.
+     * @param added packed positions ({@code BlockPos.asLong()}) that were added
      */
-    public static void addToCache(Set<BlockPos> added) {
-        if (!enabled || added == null || added.isEmpty()) return;
+    public static void addToCache(long[] added) {
+        invalidate(added);
+    }
 
-        for (BlockPos p : added) {
-            BlockPos im = p.immutable();
-            if (cachedSet.add(im)) {
-                cachedList.add(im);
-            }
-        }
+    /**
+     * Notifies the highlighter that positions were removed. The shared set no longer contains them;
+     * this only invalidates the cached geometry of the chunk sections they fall into.
+     *
+     * @param removed packed positions ({@code BlockPos.asLong()}) that were removed
+     */
+    public static void removeFromCache(long[] removed) {
+        invalidate(removed);
     }
 
     /**
-     * Removes a set of block positions from the cached collections used for highlighting.
-     * This method updates both the cached set and the cached list by removing the specified
-     **/
-    public static void removeFromCache(Set<BlockPos> removed) {
-        if (!enabled || removed == null || removed.isEmpty()) return;
+     * Notifies the highlighter that the category or stale flag of positions changed, so their colours
+     * are resolved again.
+     *
+     * @param tagged packed positions ({@code BlockPos.asLong()}) whose metadata changed
+     */
+    public static void metadataChanged(long[] tagged) {
+        invalidate(tagged);
+    }
 
-        cachedSet.removeAll(removed);
+    private static void invalidate(long[] changed) {
+        ORDER.invalidate();
+        if (!enabled || changed == null) return;
 
-        cachedList.removeIf(removed::contains);
+        long previous = 0;
+        for (int i = 0; i < changed.length; i++) {
+            long sectionKey = SectionIndex.sectionKey(changed[i]);
+            BUFFERS.markDirty(sectionKey);
+            COLORS.markDirty(sectionKey);
+            // outlines also reach into neighbouring sections; changes usually come in runs per section
+            if (i == 0 || sectionKey != previous) MERGED.markDirty(sectionKey);
+            previous = sectionKey;
+        }
     }
 
     /**
@@ -114,39 +177,338 @@ public final class BlockHighlighter {
         Minecraft mc = Minecraft.getInstance();
         if (mc.player == null || mc.level == null) return;
 
-        if (cachedList.isEmpty()) return;
+        if (manager == null) return;
+        SectionIndex index = manager.getPositions();
+        if (index != lastIndex) {
+            BUFFERS.clear();
+            MERGED.clear();
+            COLORS.clear();
+            lastIndex = index;
+        }
+        if (index.isEmpty()) return;
+
+        if (PALETTE.update(manager.getMetadata())) {
+            COLORS.clear();
+            MERGED.clear();
+            BUFFERS.markAllDirty();
+            ORDER.invalidate();
+        }
+        COLORS.begin(manager.getMetadata(), PALETTE, StaleEntries.flagged());
 
         PoseStack poseStack = event.getPoseStack();
         Camera camera = event.getCamera();
+        Frustum frustum = event.getFrustum();
 
         double camX = camera.getPosition().x;
         double camY = camera.getPosition().y;
         double camZ = camera.getPosition().z;
 
+        float alpha = ClientConfig.ALPHA.get().floatValue();
+        updateColorCache();
+
+        BlockPos playerPos = mc.player.blockPosition();
+        int px = playerPos.getX();
+        int py = playerPos.getY();
+        int pz = playerPos.getZ();
+        int maxDist = ClientConfig.RENDER_DISTANCE.get();
+
+        long start = System.nanoTime();
+        considered = 0;
+        drawn = 0;
+        int budget = frameBudget();
+
+        ClientConfig.RenderMode mode = ClientConfig.RENDER_MODE.get();
+        if (mode == ClientConfig.RenderMode.BUFFERED) {
+            renderBuffered(index, poseStack, event.getProjectionMatrix(), frustum,
+                    camX, camY, camZ, px, py, pz, maxDist, alpha, budget);
+        } else if (mode == ClientConfig.RenderMode.MERGED) {
+            renderMerged(mc, index, poseStack, frustum, camX, camY, camZ, px, py, pz, maxDist, alpha, budget);
+        } else if (budget > 0) {
+            renderNearest(mc, index, poseStack, frustum, camX, camY, camZ, px, py, pz, maxDist, alpha, budget);
+        } else {
+            renderImmediate(mc, index, poseStack, frustum, camX, camY, camZ, px, py, pz, maxDist, alpha);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        Metrics.recordFrame(elapsed, considered, drawn);
+        adaptBudget(elapsed, budget);
+    }
+
+    /**
+     * @return the number of boxes this frame may draw, or 0 for no limit
+     */
+    private static int frameBudget() {
+        int configured = ClientConfig.MAX_BOXES_PER_FRAME.get();
+        if (configured == 0 || !ClientConfig.ADAPTIVE_BUDGET.get()) return configured;
+
+        if (adaptiveBudget <= 0 || adaptiveBudget > configured) adaptiveBudget = configured;
+        return adaptiveBudget;
+    }
+
+    /**
+     * Shrinks the adaptive budget quickly while a frame takes longer than the target and grows it
+     * slowly again while there is headroom and the budget is what limited the frame.
+     */
+    private static void adaptBudget(long elapsedNanos, int budget) {
+        if (budget == 0 || !ClientConfig.ADAPTIVE_BUDGET.get()) return;
+
+        double target = ClientConfig.TARGET_RENDER_MS.get() * 1_000_000.0D;
+        if (elapsedNanos > target) {
+            adaptiveBudget = Math.max(MIN_ADAPTIVE_BUDGET, (int) (adaptiveBudget * 0.85D));
+        } else if (elapsedNanos < target * 0.7D && drawn >= adaptiveBudget) {
+            int configured = ClientConfig.MAX_BOXES_PER_FRAME.get();
+            adaptiveBudget = Math.min(configured, adaptiveBudget + Math.max(64, adaptiveBudget / 10));
+        }
+    }
+
+    /**
+     * Emits line boxes nearest first until the budget is spent. Walks the maintained distance
+     * ordering, so it can stop at the first position beyond render distance.
+     */
+    private static void renderNearest(Minecraft mc, SectionIndex index, PoseStack poseStack, Frustum frustum,
+                                      double camX, double camY, double camZ,
+                                      int px, int py, int pz, int maxDist, float alpha, int budget) {
+        ORDER.update(index, COLORS, px, py, pz, maxDist);
+        VISIBILITY.clear();
+
         MultiBufferSource.BufferSource buffer = mc.renderBuffers().bufferSource();
         VertexConsumer consumer = buffer.getBuffer(RenderType.lines());
 
         poseStack.pushPose();
         poseStack.translate(-camX, -camY, -camZ);
-        float alpha = ClientConfig.ALPHA.get().floatValue();
-        updateColorCache();
 
-        BlockPos playerPos = mc.player.blockPosition();
-        double maxDist = ClientConfig.RENDER_DISTANCE.get().doubleValue();
-        double maxDistSq = maxDist * maxDist;
+        long maxDistSq = (long) maxDist * maxDist;
 
-        for (BlockPos pos : cachedList) {
-            if (pos.distSqr(playerPos) > maxDistSq) continue;
+        for (int i = 0; i < ORDER.size() && drawn < budget; i++) {
+            if (ORDER.distSqAt(i) > maxDistSq) break;
+            considered++;
 
-            AABB box = new AABB(pos).inflate(0.002D);
+            long pos = ORDER.get(i);
+            if (!isVisible(frustum, SectionIndex.sectionKey(pos))) continue;
+            drawn++;
 
-            LevelRenderer.renderLineBox(poseStack, consumer, box, r, g, b, alpha);
+            renderBox(poseStack, consumer, pos, ORDER.colorAt(i), alpha);
         }
 
         poseStack.popPose();
         buffer.endBatch(RenderType.lines());
     }
 
+    /**
+     * Emits a line box for every in-range position of every in-frustum section, every frame.
+     */
+    private static void renderImmediate(Minecraft mc, SectionIndex index, PoseStack poseStack, Frustum frustum,
+                                        double camX, double camY, double camZ,
+                                        int px, int py, int pz, int maxDist, float alpha) {
+        MultiBufferSource.BufferSource buffer = mc.renderBuffers().bufferSource();
+        VertexConsumer consumer = buffer.getBuffer(RenderType.lines());
+
+        poseStack.pushPose();
+        poseStack.translate(-camX, -camY, -camZ);
+
+        considered += forEachInRange(index, px, py, pz, maxDist, section -> isVisible(frustum, section), COLORS::get,
+                (pos, color) -> {
+                    drawn++;
+                    renderBox(poseStack, consumer, pos, color, alpha);
+                });
+
+        poseStack.popPose();
+        buffer.endBatch(RenderType.lines());
+    }
+
+    /**
+     * Receives the positions of the immediate render path together with their colour.
+     */
+    @FunctionalInterface
+    interface BoxConsumer {
+        void accept(long pos, int color);
+    }
+
+    /**
+     * The CPU side of the immediate render path: visits the sections within {@code maxDist} of the
+     * player, skips those {@code visible} rejects, and hands every position within range to
+     * {@code action}. Kept apart from the vertex emission so the benchmarks run the same loop.
+     *
+     * @param colors the colours of a section's positions, or {@code null} for the colour mode's colour
+     * @return the number of positions in the visited sections, visible or not
+     */
+    static int forEachInRange(SectionIndex index, int px, int py, int pz, int maxDist,
+                              Predicate<SectionIndex.Section> visible,
+                              Function<SectionIndex.Section, int[]> colors, BoxConsumer action) {
+        long maxDistSq = (long) maxDist * maxDist;
+        int[] visited = new int[1];
+
+        // only the sections within render distance and inside the frustum are visited
+        index.forEachSectionNear(px, py, pz, maxDist, section -> {
+            visited[0] += section.size();
+            if (!visible.test(section)) return;
+
+            int[] sectionColors = colors.apply(section);
+            for (int i = 0; i < section.size(); i++) {
+                long pos = section.get(i);
+                int x = BlockPos.getX(pos);
+                int y = BlockPos.getY(pos);
+                int z = BlockPos.getZ(pos);
+
+                long dx = x - px;
+                long dy = y - py;
+                long dz = z - pz;
+                if (dx * dx + dy * dy + dz * dz > maxDistSq) continue;
+
+                action.accept(pos, sectionColors != null ? sectionColors[i] : CategoryPalette.DEFAULT);
+            }
+        });
+        return visited[0];
+    }
+
+    /**
+     * Draws every in-range, in-frustum section from its cached vertex buffer. Range is decided per
+     * section here, so a section that reaches into render distance is drawn whole. With a budget,
+     * sections are drawn nearest first until it is spent.
+     */
+    private static void renderBuffered(SectionIndex index, PoseStack poseStack, Matrix4f projection, Frustum frustum,
+                                       double camX, double camY, double camZ,
+                                       int px, int py, int pz, int maxDist, float alpha, int budget) {
+        BUFFERS.beginFrame(r, g, b, alpha);
+
+        RenderType lines = RenderType.lines();
+        lines.setupRenderState();
+        ShaderInstance shader = RenderSystem.getShader();
+
+        VISIBLE_SECTIONS.clear();
+        index.forEachSectionNear(px, py, pz, maxDist, section -> {
+            considered += section.size();
+            if (!isVisible(frustum, section)) {
+                BUFFERS.touch(section.key());
+                return;
+            }
+            VISIBLE_SECTIONS.add(section);
+        });
+
+        if (budget > 0) VISIBLE_SECTIONS.sort(Comparator.comparingLong(section -> section.distSqr(px, py, pz)));
+
+        for (SectionIndex.Section section : VISIBLE_SECTIONS) {
+            if (budget > 0 && drawn >= budget) {
+                BUFFERS.touch(section.key());
+                continue;
+            }
+            drawn += section.size();
+            BUFFERS.draw(section, COLORS.get(section), poseStack, projection, shader, camX, camY, camZ);
+        }
+        VISIBLE_SECTIONS.clear();
+
+        BUFFERS.endFrame();
+        lines.clearRenderState();
+    }
+
+    /**
+     * Draws the merged outline of every in-range, in-frustum section. Like the buffered mode, range is
+     * decided per section; with a budget, sections are visited nearest first and every twelve outline
+     * lines count as one box. Blocks are merged per colour, so categories and stale positions are
+     * outlined in their own colour.
+     */
+    private static void renderMerged(Minecraft mc, SectionIndex index, PoseStack poseStack, Frustum frustum,
+                                     double camX, double camY, double camZ,
+                                     int px, int py, int pz, int maxDist, float alpha, int budget) {
+        VISIBLE_SECTIONS.clear();
+        index.forEachSectionNear(px, py, pz, maxDist, section -> {
+            considered += section.size();
+            if (isVisible(frustum, section)) VISIBLE_SECTIONS.add(section);
+        });
+        if (budget > 0) VISIBLE_SECTIONS.sort(Comparator.comparingLong(section -> section.distSqr(px, py, pz)));
+
+        MultiBufferSource.BufferSource buffer = mc.renderBuffers().bufferSource();
+        VertexConsumer consumer = buffer.getBuffer(RenderType.lines());
+
+        poseStack.pushPose();
+        poseStack.translate(-camX, -camY, -camZ);
+
+        PoseStack.Pose pose = poseStack.last();
+        for (SectionIndex.Section section : VISIBLE_SECTIONS) {
+            if (budget > 0 && drawn >= budget) break;
+
+            long[] lines = MERGED.get(index, COLORS, section);
+            drawn += (lines.length + 11) / 12;
+            for (long line : lines) {
+                renderLine(pose, consumer, section.minX(), section.minY(), section.minZ(), line, alpha);
+            }
+        }
+        VISIBLE_SECTIONS.clear();
+
+        poseStack.popPose();
+        buffer.endBatch(RenderType.lines());
+    }
+
+    /**
+     * Emits one line of a merged outline in its colour, nudged off the blocks it outlines like the
+     * edges of {@link LevelRenderer#renderLineBox}.
+     */
+    private static void renderLine(PoseStack.Pose pose, VertexConsumer consumer, int ox, int oy, int oz, long line,
+                                   float alpha) {
+        int color = MergedOutlines.color(line);
+        float lr = color == CategoryPalette.DEFAULT ? r : (color >> 16 & 255) / 255.0F;
+        float lg = color == CategoryPalette.DEFAULT ? g : (color >> 8 & 255) / 255.0F;
+        float lb = color == CategoryPalette.DEFAULT ? b : (color & 255) / 255.0F;
+
+        float from = MergedOutlines.from(line);
+        float to = MergedOutlines.to(line) + 1.0F;
+        float u = MergedOutlines.u(line) + MergedOutlines.outU(line) * 0.002F;
+        float v = MergedOutlines.v(line) + MergedOutlines.outV(line) * 0.002F;
+
+        float x0, y0, z0, x1, y1, z1, nx = 0.0F, ny = 0.0F, nz = 0.0F;
+        switch (MergedOutlines.axis(line)) {
+            case 0 -> { x0 = from; x1 = to; y0 = y1 = u; z0 = z1 = v; nx = 1.0F; }
+            case 1 -> { y0 = from; y1 = to; x0 = x1 = u; z0 = z1 = v; ny = 1.0F; }
+            default -> { z0 = from; z1 = to; x0 = x1 = u; y0 = y1 = v; nz = 1.0F; }
+        }
+
+        consumer.vertex(pose.pose(), ox + x0, oy + y0, oz + z0).color(lr, lg, lb, alpha)
+                .normal(pose.normal(), nx, ny, nz).endVertex();
+        consumer.vertex(pose.pose(), ox + x1, oy + y1, oz + z1).color(lr, lg, lb, alpha)
+                .normal(pose.normal(), nx, ny, nz).endVertex();
+    }
+
+    /**
+     * Emits one block's line box in the given category colour, or the colour mode's colour for
+     * {@link CategoryPalette#DEFAULT}.
+     */
+    private static void renderBox(PoseStack poseStack, VertexConsumer consumer, long pos, int color, float alpha) {
+        int x = BlockPos.getX(pos);
+        int y = BlockPos.getY(pos);
+        int z = BlockPos.getZ(pos);
+
+        if (color == CategoryPalette.DEFAULT) {
+            LevelRenderer.renderLineBox(poseStack, consumer,
+                    x - 0.002D, y - 0.002D, z - 0.002D,
+                    x + 1.002D, y + 1.002D, z + 1.002D,
+                    r, g, b, alpha);
+        } else {
+            LevelRenderer.renderLineBox(poseStack, consumer,
+                    x - 0.002D, y - 0.002D, z - 0.002D,
+                    x + 1.002D, y + 1.002D, z + 1.002D,
+                    (color >> 16 & 255) / 255.0F, (color >> 8 & 255) / 255.0F, (color & 255) / 255.0F, alpha);
+        }
+    }
+
+    private static boolean isVisible(Frustum frustum, long sectionKey) {
+        byte cached = VISIBILITY.get(sectionKey);
+        if (cached != 0) return cached == 1;
+
+        int x = SectionPos.sectionToBlockCoord(SectionPos.x(sectionKey));
+        int y = SectionPos.sectionToBlockCoord(SectionPos.y(sectionKey));
+        int z = SectionPos.sectionToBlockCoord(SectionPos.z(sectionKey));
+        boolean visible = frustum.isVisible(new AABB(x, y, z, x + 16, y + 16, z + 16));
+        VISIBILITY.put(sectionKey, visible ? (byte) 1 : (byte) 2);
+        return visible;
+    }
+
+    private static boolean isVisible(Frustum frustum, SectionIndex.Section section) {
+        int x = section.minX();
+        int y = section.minY();
+        int z = section.minZ();
+        return frustum.isVisible(new AABB(x, y, z, x + 16, y + 16, z + 16));
+    }
+
     /**
      * Determines the appropriate RGB color values based on the current color mode
      * set in the client configuration. The selected mode corresponds to a specific
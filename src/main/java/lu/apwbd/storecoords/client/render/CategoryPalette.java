@@ -0,0 +1,94 @@
+package lu.apwbd.storecoords.client.render;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import lu.apwbd.storecoords.StoreCoords;
+import lu.apwbd.storecoords.client.config.ClientConfig;
+import lu.apwbd.storecoords.io.CoordsMetadata;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Highlight colour per category id, resolved from the {@code categoryColors} config list.
+ * <p>
+ * The config entries are parsed once per change and mapped onto the metadata's category ids, so the
+ * colour of a category is an array read. The table is only rebuilt when the config list, the metadata
+ * instance or the number of known categories changes. Render thread only.
+ */
+final class CategoryPalette {
+
+    /** Colour of categories without a configured colour. */
+    static final int DEFAULT = -1;
+
+    private static final int[] EMPTY = new int[0];
+
+    private List<? extends String> lastConfig;
+    private final Object2IntOpenHashMap<String> configured = new Object2IntOpenHashMap<>();
+
+    private CoordsMetadata lastMetadata;
+    private int lastIdLimit = -1;
+    private int[] colors = EMPTY;
+
+    /**
+     * Brings the table up to date.
+     *
+     * @return {@code true} if colours of existing categories may have changed, so cached geometry is stale
+     */
+    boolean update(CoordsMetadata metadata) {
+        boolean configChanged = false;
+        List<? extends String> config = ClientConfig.CATEGORY_COLORS.get();
+        if (config != lastConfig) {
+            lastConfig = config;
+            parse(config);
+            configChanged = true;
+        }
+
+        if (!configChanged && metadata == lastMetadata && metadata.categoryIdLimit() == lastIdLimit) return false;
+
+        boolean metadataChanged = metadata != lastMetadata;
+        lastMetadata = metadata;
+        lastIdLimit = metadata.categoryIdLimit();
+
+        if (configured.isEmpty()) {
+            colors = EMPTY;
+        } else {
+            colors = new int[lastIdLimit];
+            Arrays.fill(colors, DEFAULT);
+            for (int id = 1; id < lastIdLimit; id++) colors[id] = configured.getInt(metadata.categoryName(id));
+        }
+        // a new category id only affects positions that were just tagged, and those sections are marked dirty anyway
+        return configChanged || metadataChanged;
+    }
+
+    /**
+     * @return {@code true} if no category has its own colour, so every position uses the default
+     */
+    boolean isEmpty() {
+        return colors.length == 0;
+    }
+
+    /**
+     * @return the packed {@code 0xRRGGBB} colour of the category, or {@link #DEFAULT}
+     */
+    int color(int categoryId) {
+        return categoryId < colors.length ? colors[categoryId] : DEFAULT;
+    }
+
+    private void parse(List<? extends String> entries) {
+        configured.clear();
+        configured.defaultReturnValue(DEFAULT);
+
+        for (String entry : entries) {
+            int eq = entry.lastIndexOf('=');
+            String value = eq < 0 ? "" : entry.substring(eq + 1).trim();
+            if (value.startsWith("#")) value = value.substring(1);
+
+            try {
+                if (eq <= 0 || value.length() != 6) throw new NumberFormatException();
+                configured.put(entry.substring(0, eq).trim(), Integer.parseInt(value, 16));
+            } catch (NumberFormatException e) {
+                StoreCoords.LOGGER.warn("Ignoring category colour \"{}\", expected category=#RRGGBB", entry);
+            }
+        }
+    }
+}
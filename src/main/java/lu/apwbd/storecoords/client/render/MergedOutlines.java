@@ -0,0 +1,290 @@
+package lu.apwbd.storecoords.client.render;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import lu.apwbd.storecoords.util.SectionIndex;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+
+import java.util.Arrays;
+
+/**
+ * Cache of merged outlines: only the outer edges of each cluster of stored blocks of one colour, so that
+ * a solid 10x10x10 cluster is drawn as the twelve edges of one box instead of a thousand boxes, and an
+ * L-shaped cluster as one outline rather than several boxes with seams between them.
+ * <p>
+ * An edge is a grid line with four blocks around it. For each colour among them, it is part of that
+ * colour's outline unless the blocks of that colour form a flat surface, i.e. unless none, all, or two
+ * side by side of the four have it. Colours come from {@link SectionColors}, so categories and stale
+ * positions keep their own colour, and where two colours meet both outlines are drawn.
+ * <p>
+ * Edges are computed per chunk section, but the blocks around an edge on a section border are read from
+ * the neighbouring sections, so clusters are outlined across borders without seams. Every border edge is
+ * owned by exactly one of the sections around it, so nothing is drawn twice. A store, removal or colour
+ * change drops the cached edges of the sections it touched and of their neighbours, and those are computed again the next time they are
+ * drawn. Collinear edges are joined into one line, and each line is packed with its colour into one
+ * long. Render thread only.
+ */
+final class MergedOutlines {
+
+    private static final long[] NONE = new long[0];
+
+    /** Grid value of a block that is not stored; no colour is this value. */
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    /** Cache entries are dropped as a whole beyond this many sections, e.g. after travelling far. */
+    private static final int MAX_SECTIONS = 8192;
+
+    /** Side of the padded grid: the section plus one layer of each neighbour. */
+    private static final int SIDE = 18;
+
+    private final Long2ObjectOpenHashMap<long[]> lines = new Long2ObjectOpenHashMap<>();
+
+    /** Colours of the section being merged and the border layers of its neighbours, or {@link #EMPTY}. */
+    private final int[] grid = new int[SIDE * SIDE * SIDE];
+    /** Whether each of the 27 sections around (and including) the one being merged holds positions. */
+    private final boolean[] present = new boolean[27];
+    private long[] scratch = new long[64];
+    /** Indices into {@link #scratch} of the lines that end just before the current edge, and after it. */
+    private int[] open = new int[4];
+    private int[] next = new int[4];
+    private final int[] around = new int[4];
+
+    /**
+     * Drops the cached edges of the section and of the neighbours that share a border edge with it,
+     * since theirs depend on its blocks.
+     */
+    void markDirty(long sectionKey) {
+        int sx = SectionPos.x(sectionKey);
+        int sy = SectionPos.y(sectionKey);
+        int sz = SectionPos.z(sectionKey);
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    // corner neighbours share only a point
+                    if (dx != 0 && dy != 0 && dz != 0) continue;
+                    lines.remove(SectionPos.asLong(sx + dx, sy + dy, sz + dz));
+                }
+            }
+        }
+    }
+
+    void clear() {
+        lines.clear();
+    }
+
+    /**
+     * @param colors the colours the section and its neighbours are outlined in; must have been
+     *               {@linkplain SectionColors#begin begun} for this frame
+     * @return the outline of the section, computed now if it is not cached
+     */
+    long[] get(SectionIndex index, SectionColors colors, SectionIndex.Section section) {
+        long[] cached = lines.get(section.key());
+        if (cached == null) {
+            if (lines.size() >= MAX_SECTIONS) lines.clear();
+            cached = merge(index, colors, section);
+            lines.put(section.key(), cached);
+        }
+        return cached;
+    }
+
+    /** 0 for a line along x, 1 along y, 2 along z. */
+    static int axis(long line) {
+        return (int) line & 3;
+    }
+
+    /** First block of the line along its axis. */
+    static int from(long line) {
+        return (int) (line >>> 2) & 15;
+    }
+
+    /** Last block of the line along its axis, inclusive. */
+    static int to(long line) {
+        return (int) (line >>> 6) & 15;
+    }
+
+    /**
+     * Local grid coordinates (0 to 16) of the line on the two other axes: y and z for a line along x,
+     * x and z along y, x and y along z.
+     */
+    static int u(long line) {
+        return (int) (line >>> 10) & 31;
+    }
+
+    static int v(long line) {
+        return (int) (line >>> 15) & 31;
+    }
+
+    /** Direction, -1, 0 or 1, in which the line is nudged off the blocks on the {@link #u} axis. */
+    static int outU(long line) {
+        return (int) ((line >>> 20) & 3) - 1;
+    }
+
+    static int outV(long line) {
+        return (int) ((line >>> 22) & 3) - 1;
+    }
+
+    /** Colour of the line, {@link CategoryPalette#DEFAULT} for the colour mode's colour. */
+    static int color(long line) {
+        return (int) (line >>> 32);
+    }
+
+    private long[] merge(SectionIndex index, SectionColors colors, SectionIndex.Section section) {
+        if (section.size() == 0) return NONE;
+        fill(index, colors, section);
+
+        int count = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            for (int u = 0; u <= 16; u++) {
+                for (int v = 0; v <= 16; v++) {
+                    if (!owns(axis, u, v)) continue;
+
+                    int openCount = 0;
+                    for (int a = 0; a < 16; a++) {
+                        // the blocks around the edge: (u - 1, v - 1), (u - 1, v), (u, v - 1), (u, v)
+                        around[0] = cell(axis, a, u - 1, v - 1);
+                        around[1] = cell(axis, a, u - 1, v);
+                        around[2] = cell(axis, a, u, v - 1);
+                        around[3] = cell(axis, a, u, v);
+
+                        int nextCount = 0;
+                        for (int k = 0; k < 4; k++) {
+                            int color = around[k];
+                            if (color == EMPTY || seenBefore(k)) continue;
+
+                            boolean c00 = around[0] == color;
+                            boolean c01 = around[1] == color;
+                            boolean c10 = around[2] == color;
+                            boolean c11 = around[3] == color;
+                            int n = (c00 ? 1 : 0) + (c01 ? 1 : 0) + (c10 ? 1 : 0) + (c11 ? 1 : 0);
+                            if (n == 4 || (n == 2 && c00 != c11)) continue;
+
+                            // nudge the line towards the side with fewer blocks so it is not hidden inside them
+                            int low = (c00 ? 1 : 0) + (c01 ? 1 : 0);
+                            int high = (c10 ? 1 : 0) + (c11 ? 1 : 0);
+                            int outU = Integer.signum(low - high);
+                            low = (c00 ? 1 : 0) + (c10 ? 1 : 0);
+                            high = (c01 ? 1 : 0) + (c11 ? 1 : 0);
+                            int outV = Integer.signum(low - high);
+
+                            long line = axis | (a << 2) | (a << 6) | (u << 10) | (v << 15)
+                                    | ((outU + 1) << 20) | ((outV + 1) << 22) | ((long) color << 32);
+                            int joined = joins(line, openCount);
+                            if (joined >= 0) {
+                                scratch[joined] = (scratch[joined] & ~(15L << 6)) | (a << 6);
+                            } else {
+                                if (count == scratch.length) scratch = Arrays.copyOf(scratch, count * 2);
+                                joined = count;
+                                scratch[count++] = line;
+                            }
+                            next[nextCount++] = joined;
+                        }
+
+                        int[] swap = open;
+                        open = next;
+                        next = swap;
+                        openCount = nextCount;
+                    }
+                }
+            }
+        }
+
+        return Arrays.copyOf(scratch, count);
+    }
+
+    /**
+     * @return {@code true} if the colour of block {@code k} around the edge is also that of an earlier one
+     */
+    private boolean seenBefore(int k) {
+        for (int j = 0; j < k; j++) {
+            if (around[j] == around[k]) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the index of the open line that {@code line}, a single edge right after it, continues,
+     *         or -1 if it starts a new one
+     */
+    private int joins(long line, int openCount) {
+        long sameMask = ~((15L << 2) | (15L << 6));
+        for (int i = 0; i < openCount; i++) {
+            if ((scratch[open[i]] & sameMask) == (line & sameMask)) return open[i];
+        }
+        return -1;
+    }
+
+    /**
+     * Copies the colours of the section's blocks and the adjacent layer of each neighbour into the
+     * padded grid.
+     */
+    private void fill(SectionIndex index, SectionColors colors, SectionIndex.Section section) {
+        Arrays.fill(grid, EMPTY);
+        long key = section.key();
+        int sx = SectionPos.x(key);
+        int sy = SectionPos.y(key);
+        int sz = SectionPos.z(key);
+        int ox = section.minX();
+        int oy = section.minY();
+        int oz = section.minZ();
+
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    SectionIndex.Section s = index.section(SectionPos.asLong(sx + dx, sy + dy, sz + dz));
+                    present[(dx + 1) * 9 + (dy + 1) * 3 + (dz + 1)] = s != null;
+                    if (s == null || (dx != 0 && dy != 0 && dz != 0)) continue;
+
+                    int[] sectionColors = colors.get(s);
+                    for (int i = 0; i < s.size(); i++) {
+                        long pos = s.get(i);
+                        int x = BlockPos.getX(pos) - ox + 1;
+                        int y = BlockPos.getY(pos) - oy + 1;
+                        int z = BlockPos.getZ(pos) - oz + 1;
+                        if (x < 0 || x >= SIDE || y < 0 || y >= SIDE || z < 0 || z >= SIDE) continue;
+                        int color = sectionColors != null ? sectionColors[i] : CategoryPalette.DEFAULT;
+                        grid[(x * SIDE + y) * SIDE + z] = color;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param a position along the axis, 0 to 15
+     * @param u local coordinate on the first other axis, -1 to 16
+     * @param v local coordinate on the second other axis, -1 to 16
+     */
+    private int cell(int axis, int a, int u, int v) {
+        return grid[gridIndex(axis, a, u, v)];
+    }
+
+    private static int gridIndex(int axis, int a, int u, int v) {
+        return switch (axis) {
+            case 0 -> ((a + 1) * SIDE + (u + 1)) * SIDE + (v + 1);
+            case 1 -> ((u + 1) * SIDE + (a + 1)) * SIDE + (v + 1);
+            default -> ((u + 1) * SIDE + (v + 1)) * SIDE + (a + 1);
+        };
+    }
+
+    /**
+     * Decides which of the up to four sections around an edge draws it: the first one that holds
+     * positions, in the order (u, v), (u, v - 1), (u - 1, v), (u - 1, v - 1) of the blocks around it.
+     * Inner edges always belong to the section itself.
+     */
+    private boolean owns(int axis, int u, int v) {
+        if (u < 16 && v < 16) return true;
+        for (int i = 0; i < 4; i++) {
+            int du = Math.floorDiv(i < 2 ? u : u - 1, 16);
+            int dv = Math.floorDiv((i & 1) == 0 ? v : v - 1, 16);
+            if (present(axis, du, dv)) return du == 0 && dv == 0;
+        }
+        return false;
+    }
+
+    private boolean present(int axis, int du, int dv) {
+        int dx = axis == 0 ? 0 : du;
+        int dy = axis == 0 ? du : axis == 1 ? 0 : dv;
+        int dz = axis == 2 ? 0 : dv;
+        return present[(dx + 1) * 9 + (dy + 1) * 3 + (dz + 1)];
+    }
+}
@@ -0,0 +1,156 @@
+package lu.apwbd.storecoords.client.render;
+
+import lu.apwbd.storecoords.util.SectionIndex;
+import net.minecraft.core.BlockPos;
+
+import java.util.Arrays;
+
+/**
+ * Stored positions around the player, ordered by distance so that a per-frame box budget is spent on
+ * the nearest boxes.
+ * <p>
+ * Candidates are collected from the sections within render distance plus a margin, so they stay valid
+ * while the player moves a few blocks; they are only collected again when the player leaves the margin,
+ * the render distance changes or the stored positions change. The ordering is only recomputed when the
+ * player enters another block. After a one-block step the previous order is nearly right, so it is
+ * repaired with an insertion sort instead of sorting from scratch. Category colours are captured along
+ * with the candidates, so drawing them needs no lookups. Render thread only.
+ */
+final class NearestOrder {
+
+    private static final int MARGIN = 16;
+
+    private long[] positions = new long[256];
+    private int[] colors = new int[256];
+    private int[] distSq = new int[256];
+    private int[] order = new int[256];
+    private int size;
+
+    private SectionIndex index;
+    private boolean dirty = true;
+    private int collectX, collectY, collectZ, collectRadius;
+    private int sortX, sortY, sortZ;
+
+    /**
+     * Marks the candidates stale, e.g. after positions were stored or removed.
+     */
+    void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * Brings the ordering up to date for the given player block position.
+     */
+    void update(SectionIndex index, SectionColors sectionColors, int px, int py, int pz, int radius) {
+        if (dirty || index != this.index || radius != collectRadius
+                || Math.abs(px - collectX) > MARGIN || Math.abs(py - collectY) > MARGIN || Math.abs(pz - collectZ) > MARGIN) {
+            collect(index, sectionColors, px, py, pz, radius);
+            fullSort(px, py, pz);
+            return;
+        }
+
+        if (px == sortX && py == sortY && pz == sortZ) return;
+
+        boolean step = Math.abs(px - sortX) <= 1 && Math.abs(py - sortY) <= 1 && Math.abs(pz - sortZ) <= 1;
+        if (step) {
+            repairSort(px, py, pz);
+        } else {
+            fullSort(px, py, pz);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the {@code i}-th nearest position
+     */
+    long get(int i) {
+        return positions[order[i]];
+    }
+
+    /**
+     * @return the packed colour of the {@code i}-th nearest position, or {@link CategoryPalette#DEFAULT}
+     */
+    int colorAt(int i) {
+        return colors[order[i]];
+    }
+
+    /**
+     * @return the squared distance of the {@code i}-th nearest position to the player's block
+     */
+    int distSqAt(int i) {
+        return distSq[order[i]];
+    }
+
+    private void collect(SectionIndex index, SectionColors sectionColors, int px, int py, int pz, int radius) {
+        this.index = index;
+        this.dirty = false;
+        this.collectX = px;
+        this.collectY = py;
+        this.collectZ = pz;
+        this.collectRadius = radius;
+
+        size = 0;
+        index.forEachSectionNear(px, py, pz, radius + MARGIN, section -> {
+            ensureCapacity(size + section.size());
+            int[] sectionColor = sectionColors.get(section);
+            for (int i = 0; i < section.size(); i++) {
+                colors[size] = sectionColor != null ? sectionColor[i] : CategoryPalette.DEFAULT;
+                positions[size++] = section.get(i);
+            }
+        });
+    }
+
+    /**
+     * Sorts by packing each candidate's distance and index into one long, so a primitive sort does it.
+     */
+    private void fullSort(int px, int py, int pz) {
+        computeDistances(px, py, pz);
+
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) keys[i] = ((long) distSq[i] << 32) | i;
+        Arrays.sort(keys);
+        for (int i = 0; i < size; i++) order[i] = (int) keys[i];
+    }
+
+    private void repairSort(int px, int py, int pz) {
+        computeDistances(px, py, pz);
+
+        for (int i = 1; i < size; i++) {
+            int current = order[i];
+            int d = distSq[current];
+            int j = i - 1;
+            while (j >= 0 && distSq[order[j]] > d) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = current;
+        }
+    }
+
+    private void computeDistances(int px, int py, int pz) {
+        sortX = px;
+        sortY = py;
+        sortZ = pz;
+
+        for (int i = 0; i < size; i++) {
+            long pos = positions[i];
+            int dx = BlockPos.getX(pos) - px;
+            int dy = BlockPos.getY(pos) - py;
+            int dz = BlockPos.getZ(pos) - pz;
+            distSq[i] = dx * dx + dy * dy + dz * dz;
+        }
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= positions.length) return;
+
+        int capacity = Math.max(needed, positions.length * 2);
+        positions = Arrays.copyOf(positions, capacity);
+        colors = Arrays.copyOf(colors, capacity);
+        distSq = new int[capacity];
+        order = new int[capacity];
+    }
+}
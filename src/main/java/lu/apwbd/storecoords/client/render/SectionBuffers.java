@@ -0,0 +1,166 @@
+package lu.apwbd.storecoords.client.render;
+
+import com.mojang.blaze3d.vertex.BufferBuilder;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
+import com.mojang.blaze3d.vertex.PoseStack;
+import com.mojang.blaze3d.vertex.VertexBuffer;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import com.mojang.math.Matrix4f;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import lu.apwbd.storecoords.util.SectionIndex;
+import net.minecraft.client.renderer.LevelRenderer;
+import net.minecraft.client.renderer.ShaderInstance;
+import net.minecraft.core.BlockPos;
+
+import java.util.Iterator;
+
+/**
+ * GPU-side cache of highlight geometry, one {@link VertexBuffer} per chunk section.
+ * <p>
+ * A section's line boxes are emitted once, relative to the section origin, and uploaded. After that
+ * drawing the section is a single draw call with a translated model-view matrix. A buffer is only
+ * rebuilt when {@link #markDirty} is called for its section or when colour or alpha change.
+ * Buffers of sections that have not been in render range for a while are released.
+ * Render thread only.
+ */
+final class SectionBuffers {
+
+    private static final int EVICT_AFTER_FRAMES = 200;
+
+    private static final class Entry {
+        final VertexBuffer buffer = new VertexBuffer();
+        boolean dirty = true;
+        int lastSeenFrame;
+    }
+
+    private final Long2ObjectOpenHashMap<Entry> entries = new Long2ObjectOpenHashMap<>();
+    private BufferBuilder builder;
+    private final PoseStack local = new PoseStack();
+
+    private float r, g, b, alpha = -1.0F;
+    private int frame;
+
+    void markDirty(long sectionKey) {
+        Entry e = entries.get(sectionKey);
+        if (e != null) e.dirty = true;
+    }
+
+    /**
+     * Marks every cached section dirty, e.g. after the category colours changed.
+     */
+    void markAllDirty() {
+        for (Entry e : entries.values()) e.dirty = true;
+    }
+
+    /**
+     * Starts a frame. Colour or alpha changes invalidate every cached section.
+     */
+    void beginFrame(float r, float g, float b, float alpha) {
+        frame++;
+        if (r == this.r && g == this.g && b == this.b && alpha == this.alpha) return;
+
+        this.r = r;
+        this.g = g;
+        this.b = b;
+        this.alpha = alpha;
+        for (Entry e : entries.values()) e.dirty = true;
+    }
+
+    /**
+     * Keeps the section's buffer alive for this frame without drawing it, e.g. when it is in range
+     * but outside the view frustum.
+     */
+    void touch(long sectionKey) {
+        Entry e = entries.get(sectionKey);
+        if (e != null) e.lastSeenFrame = frame;
+    }
+
+    /**
+     * Draws a section, uploading its geometry first if it is new or dirty.
+     *
+     * @param colors     per-position colours as returned by {@link SectionColors#get}, or {@code null}
+     * @param poseStack  pose stack holding the camera rotation (no camera translation applied)
+     * @param projection projection matrix of the current frame
+     * @param shader     the line shader set up by {@code RenderType.lines()}
+     */
+    void draw(SectionIndex.Section section, int[] colors, PoseStack poseStack, Matrix4f projection, ShaderInstance shader,
+              double camX, double camY, double camZ) {
+        Entry e = entries.get(section.key());
+        if (e == null) {
+            e = new Entry();
+            entries.put(section.key(), e);
+        }
+        e.lastSeenFrame = frame;
+
+        if (e.dirty) {
+            upload(e.buffer, section, colors);
+            e.dirty = false;
+        }
+
+        poseStack.pushPose();
+        poseStack.translate(section.minX() - camX, section.minY() - camY, section.minZ() - camZ);
+        e.buffer.drawWithShader(poseStack.last().pose(), projection, shader);
+        poseStack.popPose();
+    }
+
+    /**
+     * Finishes a frame and periodically releases buffers of sections that were not seen recently.
+     */
+    void endFrame() {
+        VertexBuffer.unbind();
+        if (frame % EVICT_AFTER_FRAMES != 0) return;
+
+        Iterator<Long2ObjectMap.Entry<Entry>> it = entries.long2ObjectEntrySet().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next().getValue();
+            if (frame - e.lastSeenFrame >= EVICT_AFTER_FRAMES) {
+                e.buffer.close();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Releases every buffer, e.g. when highlighting is turned off or the position set is replaced.
+     */
+    void clear() {
+        for (Entry e : entries.values()) e.buffer.close();
+        entries.clear();
+    }
+
+    int bufferCount() {
+        return entries.size();
+    }
+
+    private void upload(VertexBuffer buffer, SectionIndex.Section section, int[] colors) {
+        int ox = section.minX();
+        int oy = section.minY();
+        int oz = section.minZ();
+
+        if (builder == null) builder = new BufferBuilder(4096);
+
+        builder.begin(VertexFormat.Mode.LINES, DefaultVertexFormat.POSITION_COLOR_NORMAL);
+        for (int i = 0; i < section.size(); i++) {
+            long pos = section.get(i);
+            double x = BlockPos.getX(pos) - ox;
+            double y = BlockPos.getY(pos) - oy;
+            double z = BlockPos.getZ(pos) - oz;
+
+            int color = colors != null ? colors[i] : CategoryPalette.DEFAULT;
+            if (color == CategoryPalette.DEFAULT) {
+                LevelRenderer.renderLineBox(local, builder,
+                        x - 0.002D, y - 0.002D, z - 0.002D,
+                        x + 1.002D, y + 1.002D, z + 1.002D,
+                        r, g, b, alpha);
+            } else {
+                LevelRenderer.renderLineBox(local, builder,
+                        x - 0.002D, y - 0.002D, z - 0.002D,
+                        x + 1.002D, y + 1.002D, z + 1.002D,
+                        (color >> 16 & 255) / 255.0F, (color >> 8 & 255) / 255.0F, (color & 255) / 255.0F, alpha);
+            }
+        }
+        builder.end();
+        buffer.upload(builder);
+    }
+}
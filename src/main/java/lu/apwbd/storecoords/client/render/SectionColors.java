@@ -0,0 +1,85 @@
+package lu.apwbd.storecoords.client.render;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import lu.apwbd.storecoords.io.CoordsMetadata;
+import lu.apwbd.storecoords.util.LongPosSet;
+import lu.apwbd.storecoords.util.SectionIndex;
+
+import java.util.Arrays;
+
+/**
+ * Per-section colour arrays, parallel to each section's positions, so drawing a box never looks up
+ * its category.
+ * <p>
+ * A section's array is built the first time the section is drawn and kept until {@link #markDirty} is
+ * called for it, which happens whenever positions in it are stored, removed, tagged or flagged as stale,
+ * since any of those may reorder or recolour it. Stale positions are red regardless of their category.
+ * Sections without a coloured position map to {@code null}, and if nothing has a colour at all nothing
+ * is cached. Render thread only.
+ */
+final class SectionColors {
+
+    /** The cache is dropped as a whole beyond this many sections, e.g. after travelling far. */
+    private static final int MAX_SECTIONS = 8192;
+
+    private static final int[] UNCOLORED = new int[0];
+
+    /** Colour of positions flagged as stale. */
+    private static final int STALE = 0xFF3030;
+
+    private final Long2ObjectOpenHashMap<int[]> colors = new Long2ObjectOpenHashMap<>();
+
+    private CoordsMetadata metadata;
+    private CategoryPalette palette;
+    private LongPosSet stale;
+
+    /**
+     * Sets the metadata, palette and stale flags that the following {@link #get} calls resolve against.
+     */
+    void begin(CoordsMetadata metadata, CategoryPalette palette, LongPosSet stale) {
+        this.metadata = metadata;
+        this.palette = palette;
+        this.stale = stale;
+    }
+
+    /**
+     * @return the packed colour of each of the section's positions, {@link CategoryPalette#DEFAULT}
+     *         for uncoloured ones, or {@code null} if the whole section uses the default colour
+     */
+    int[] get(SectionIndex.Section section) {
+        if (palette == null) return null;
+        if ((palette.isEmpty() || metadata.isEmpty()) && stale.isEmpty()) return null;
+
+        int[] cached = colors.get(section.key());
+        if (cached == null) {
+            if (colors.size() >= MAX_SECTIONS) colors.clear();
+            cached = build(section);
+            colors.put(section.key(), cached);
+        }
+        return cached == UNCOLORED ? null : cached;
+    }
+
+    void markDirty(long sectionKey) {
+        colors.remove(sectionKey);
+    }
+
+    void clear() {
+        colors.clear();
+    }
+
+    private int[] build(SectionIndex.Section section) {
+        int[] result = null;
+        for (int i = 0; i < section.size(); i++) {
+            long pos = section.get(i);
+            int color = stale.contains(pos) ? STALE : palette.color(metadata.categoryId(pos));
+            if (color == CategoryPalette.DEFAULT) continue;
+
+            if (result == null) {
+                result = new int[section.size()];
+                Arrays.fill(result, CategoryPalette.DEFAULT);
+            }
+            result[i] = color;
+        }
+        return result != null ? result : UNCOLORED;
+    }
+}
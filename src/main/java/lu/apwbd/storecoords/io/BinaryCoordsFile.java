@@ -0,0 +1,153 @@
+package lu.apwbd.storecoords.io;
+
+import lu.apwbd.storecoords.StoreCoords;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary snapshot of packed positions ({@code BlockPos.asLong()}).
+ * <p>
+ * Layout: {@code magic:int, count:int, first:long, (count - 1) unsigned varint deltas, crc:int}.
+ * Positions are sorted before writing, so consecutive deltas are small and most take one to three bytes.
+ * The CRC covers everything before it. Reading goes through a memory-mapped {@link FileChannel}
+ * and never materializes an intermediate object per entry.
+ */
+final class BinaryCoordsFile {
+
+    private static final int MAGIC = 0x53434231; // "SCB1"
+    private static final int HEADER_SIZE = 4 + 4;
+    private static final int CRC_SIZE = 4;
+
+    private BinaryCoordsFile() {}
+
+    /**
+     * Reads all packed positions from the given file in ascending order.
+     *
+     * @param file the snapshot to read; an empty file is treated as an empty snapshot
+     * @param sink receives each packed position
+     * @throws IOException if the file cannot be read, has an unknown header or fails its checksum
+     */
+    static void read(File file, LongConsumer sink) throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size == 0) return;
+            if (size < HEADER_SIZE + CRC_SIZE) throw new IOException(file.getName() + " is truncated");
+            if (size > Integer.MAX_VALUE) throw new IOException(file.getName() + " is too large");
+
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            try {
+                int end = (int) size - CRC_SIZE;
+
+                CRC32 crc = new CRC32();
+                crc.update(buf.duplicate().position(0).limit(end));
+                if ((int) crc.getValue() != buf.getInt(end)) {
+                    throw new IOException(file.getName() + " failed its checksum");
+                }
+
+                if (buf.getInt() != MAGIC) throw new IOException(file.getName() + " has an unknown header");
+                int count = buf.getInt();
+                if (count == 0) return;
+
+                buf.limit(end);
+                long value = buf.getLong();
+                sink.accept(value);
+
+                for (int i = 1; i < count; i++) {
+                    value += readVarLong(buf);
+                    sink.accept(value);
+                }
+            } catch (BufferUnderflowException e) {
+                throw new IOException(file.getName() + " ends before its last entry", e);
+            } finally {
+                unmap(buf);
+            }
+        }
+    }
+
+    /**
+     * Writes the first {@code count} entries of {@code packed} to the given file. The array is sorted
+     * in place.
+     *
+     * @param file   the target file, usually a temporary file that is moved into place afterwards
+     * @param packed packed positions; must not contain duplicates
+     * @param count  number of valid entries in {@code packed}
+     * @throws IOException if the file cannot be written
+     */
+    static void write(File file, long[] packed, int count) throws IOException {
+        Arrays.sort(packed, 0, count);
+
+        CRC32 crc = new CRC32();
+        try (FileOutputStream stream = new FileOutputStream(file)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(stream, 1 << 16), crc);
+            DataOutputStream out = new DataOutputStream(checked);
+
+            out.writeInt(MAGIC);
+            out.writeInt(count);
+
+            if (count > 0) {
+                out.writeLong(packed[0]);
+                for (int i = 1; i < count; i++) {
+                    writeVarLong(out, packed[i] - packed[i - 1]);
+                }
+            }
+
+            out.flush();
+            int checksum = (int) crc.getValue();
+            out.writeInt(checksum);
+            out.flush();
+            stream.getFD().sync();
+        }
+    }
+
+    /**
+     * Unsigned LEB128: seven bits per byte, high bit set on every byte except the last.
+     */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer buf) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buf.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IOException("Malformed varint in coords snapshot");
+    }
+
+    /**
+     * Releases the mapping right away instead of waiting for GC. Without this, Windows refuses to
+     * replace the snapshot file while an old mapping of it is still alive.
+     */
+    private static void unmap(MappedByteBuffer buf) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), buf);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            StoreCoords.LOGGER.debug("Could not unmap coords snapshot, leaving it to GC", e);
+        }
+    }
+}
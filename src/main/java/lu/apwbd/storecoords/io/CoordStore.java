@@ -0,0 +1,114 @@
+package lu.apwbd.storecoords.io;
+
+import lu.apwbd.storecoords.util.SectionIndex;
+
+import java.io.File;
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Persistence backend of one partition. Backends are picked by {@code storage.format} from
+ * {@link CoordStores}, where other backends can be registered as well.
+ * <p>
+ * {@link CoordsManager} keeps the working set in a {@link SectionIndex} and hands every change to the
+ * store as a {@link Change}, in the order it was applied in memory. A store decides how those batches
+ * end up on disk; the manager only decides when. A store that is {@linkplain #isRegionIndexed() region
+ * indexed} is never loaded as a whole: the manager keeps only the regions near the player in memory
+ * and {@linkplain #query queries} the others when it needs them. All methods are called while the
+ * manager holds its IO lock, so implementations need no locking of their own.
+ */
+public interface CoordStore {
+
+    /**
+     * Creates the store of one partition.
+     */
+    @FunctionalInterface
+    interface Factory {
+        /**
+         * @param dir      the partition's directory; may not exist yet
+         * @param settings the manager's settings, asked whenever one of them is used
+         */
+        CoordStore create(File dir, Supplier<CoordsManager.Settings> settings);
+    }
+
+    /**
+     * One batch of packed positions ({@code BlockPos.asLong()}) that were added or removed together.
+     */
+    record Change(boolean added, long[] positions) {}
+
+    /**
+     * @return the name shown to the player when this store fails, usually its main file
+     */
+    String getFileName();
+
+    /**
+     * @return {@code true} if the store has data on disk, i.e. a load may return positions
+     */
+    boolean exists();
+
+    /**
+     * Reads every stored position into {@code target}. Failures are logged.
+     *
+     * @param target a fresh index that is not visible to any other thread yet
+     * @return {@code true} if the data was read or there is none yet, {@code false} on failure
+     */
+    boolean load(SectionIndex target);
+
+    /**
+     * Reads the stored positions within {@code bounds}. Failures are logged.
+     *
+     * @param sink receives each position once
+     * @return {@code true} if the data was read, {@code false} on failure
+     */
+    boolean query(RegionBounds bounds, LongConsumer sink);
+
+    /**
+     * @return {@code true} if {@link #query} is answered from an index in about the time it takes to
+     *         read the matching positions, so that the manager does not need to keep everything in memory
+     */
+    default boolean isRegionIndexed() {
+        return false;
+    }
+
+    /**
+     * Persists the given batches. Either all of them are durable afterwards or the call fails; a failed
+     * batch is offered again later, together with newer ones.
+     *
+     * @param batch the changes, oldest first
+     * @return {@code true} if everything was written
+     */
+    boolean append(List<Change> batch);
+
+    /**
+     * @return {@code true} if appended changes should be folded into a fresh copy of the full set with
+     *         {@link #replaceAll(long[])}; called after every successful append
+     */
+    boolean needsCompaction();
+
+    /**
+     * Replaces everything stored with {@code packed}. Used for compaction and for migrating data
+     * from another store.
+     *
+     * @param packed the full set of packed positions; may be reordered
+     * @return {@code true} if the new data is durable
+     */
+    boolean replaceAll(long[] packed);
+
+    /**
+     * @return a stamp of the store's data that changes whenever something writes to it, used to tell
+     *         external edits from this store's own writes
+     */
+    long[] fileState();
+
+    /**
+     * Moves the store's files aside after its data was migrated into another store. They are kept as
+     * backups and never read again.
+     */
+    void retire();
+
+    /**
+     * Releases open files or connections. The store may be used again afterwards and reopens them.
+     */
+    void close();
+}
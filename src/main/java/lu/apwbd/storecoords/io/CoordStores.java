@@ -0,0 +1,51 @@
+package lu.apwbd.storecoords.io;
+
+import lu.apwbd.storecoords.client.config.ClientConfig;
+
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The storage backends, by the {@code storage.format} that selects them. Both snapshot formats are
+ * served by the same file store, which picks the format itself. Registration is meant for mod setup,
+ * before any partition is loaded.
+ */
+public final class CoordStores {
+
+    private static final CoordStore.Factory FILES = FileCoordStore::new;
+    private static final CoordStore.Factory DATABASE = (dir, settings) -> new DatabaseCoordStore(dir);
+
+    private static final Map<ClientConfig.StorageFormat, CoordStore.Factory> FACTORIES =
+            new EnumMap<>(ClientConfig.StorageFormat.class);
+
+    static {
+        register(ClientConfig.StorageFormat.YAML, FILES);
+        register(ClientConfig.StorageFormat.BINARY, FILES);
+        register(ClientConfig.StorageFormat.DATABASE, DATABASE);
+    }
+
+    private CoordStores() {}
+
+    /**
+     * Makes {@code factory} the backend of {@code format}. Formats that share one factory share one
+     * store per partition.
+     */
+    public static void register(ClientConfig.StorageFormat format, CoordStore.Factory factory) {
+        FACTORIES.put(format, factory);
+    }
+
+    static CoordStore.Factory factory(ClientConfig.StorageFormat format) {
+        CoordStore.Factory factory = FACTORIES.get(format);
+        if (factory == null) throw new IllegalStateException("No store registered for " + format);
+        return factory;
+    }
+
+    /**
+     * @return every registered factory once, in format order; the manager migrates from these
+     */
+    static Set<CoordStore.Factory> factories() {
+        return new LinkedHashSet<>(FACTORIES.values());
+    }
+}
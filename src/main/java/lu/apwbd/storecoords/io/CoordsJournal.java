@@ -0,0 +1,201 @@
+package lu.apwbd.storecoords.io;
+
+import lu.apwbd.storecoords.StoreCoords;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only change log that sits next to the YAML snapshot. Each record holds the positions
+ * added or removed by one {@code BatchResult}, so persisting a change costs O(changed positions)
+ * instead of O(stored positions).
+ * <p>
+ * Record layout: {@code op:byte, count:int, positions:long[count], crc:int}. The CRC covers op,
+ * count and positions. A record that is cut short or fails its CRC marks the end of the valid log;
+ * everything after it is discarded on replay.
+ */
+final class CoordsJournal {
+
+    static final byte OP_ADD = 1;
+    static final byte OP_REMOVE = 2;
+
+    private static final int MAGIC = 0x53434A31; // "SCJ1"
+    private static final int HEADER_SIZE = 4;
+    private static final int RECORD_OVERHEAD = 1 + 4 + 4;
+
+    private final File file;
+
+    CoordsJournal(File file) {
+        this.file = file;
+    }
+
+    String getFileName() {
+        return file.getName();
+    }
+
+    /**
+     * @return the current size of the journal in bytes, or 0 if it does not exist
+     */
+    long size() {
+        return file.exists() ? file.length() : 0L;
+    }
+
+    /**
+     * Appends the given entries and forces them to disk before returning.
+     *
+     * @param entries the batches to append, in the order they were applied in memory
+     * @return {@code true} if all entries were written and synced, {@code false} otherwise
+     */
+    boolean append(List<CoordStore.Change> entries) {
+        if (entries.isEmpty()) return true;
+
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            if (ch.size() == 0) writeHeader(ch);
+
+            for (CoordStore.Change e : entries) {
+                ByteBuffer buf = ByteBuffer.allocate(RECORD_OVERHEAD + e.positions().length * 8);
+                buf.put(e.added() ? OP_ADD : OP_REMOVE);
+                buf.putInt(e.positions().length);
+                for (long p : e.positions()) buf.putLong(p);
+
+                CRC32 crc = new CRC32();
+                crc.update(buf.array(), 0, buf.position());
+                buf.putInt((int) crc.getValue());
+
+                buf.flip();
+                while (buf.hasRemaining()) ch.write(buf);
+            }
+
+            ch.force(false);
+            return true;
+        } catch (IOException e) {
+            StoreCoords.LOGGER.error("Failed to append to " + file.getName(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Replays all valid records in order. A torn or corrupt tail (from a crash during
+     * {@link #append}) is truncated so that later appends continue after the last good record.
+     * A journal whose header is unknown is not replayed at all but moved aside as {@code .bad}, so
+     * records from a newer version or behind a damaged header are never destroyed.
+     *
+     * @param add    receives each journaled addition
+     * @param remove receives each journaled removal
+     * @return {@code true} if the journal was missing, replayed or moved aside, {@code false} if it
+     *         could not be read
+     */
+    boolean replay(LongConsumer add, LongConsumer remove) {
+        if (!file.exists()) return true;
+
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = ch.size();
+            if (size < HEADER_SIZE) {
+                // a crash while the header of a new journal was written
+                ch.truncate(0);
+                return true;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(ch, header, 0);
+            if (header.getInt(0) == MAGIC) {
+                replayRecords(ch, size, add, remove);
+                return true;
+            }
+        } catch (IOException e) {
+            StoreCoords.LOGGER.error("Failed to replay " + file.getName(), e);
+            return false;
+        }
+
+        // moved only after the channel is closed; Windows refuses to move an open file
+        return moveAside();
+    }
+
+    private void replayRecords(FileChannel ch, long size, LongConsumer add, LongConsumer remove) throws IOException {
+        long offset = HEADER_SIZE;
+        ByteBuffer head = ByteBuffer.allocate(5);
+
+        while (offset + RECORD_OVERHEAD <= size) {
+            head.clear();
+            readFully(ch, head, offset);
+            byte op = head.get(0);
+            int count = head.getInt(1);
+            if ((op != OP_ADD && op != OP_REMOVE) || count < 0) break;
+
+            long recordSize = RECORD_OVERHEAD + (long) count * 8;
+            if (offset + recordSize > size) break;
+
+            ByteBuffer record = ByteBuffer.allocate((int) recordSize);
+            readFully(ch, record, offset);
+
+            CRC32 crc = new CRC32();
+            crc.update(record.array(), 0, (int) recordSize - 4);
+            if ((int) crc.getValue() != record.getInt((int) recordSize - 4)) break;
+
+            for (int i = 0; i < count; i++) {
+                long p = record.getLong(5 + i * 8);
+                if (op == OP_ADD) add.accept(p);
+                else remove.accept(p);
+            }
+
+            offset += recordSize;
+        }
+
+        if (offset < size) {
+            StoreCoords.LOGGER.warn("Discarding {} bytes of torn journal tail in {}", size - offset, file.getName());
+            ch.truncate(offset);
+            ch.force(false);
+        }
+    }
+
+    private boolean moveAside() {
+        File bad = new File(file.getParentFile(), file.getName() + ".bad");
+        try {
+            Files.move(file.toPath(), bad.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            StoreCoords.LOGGER.warn("Moved {} with unknown header aside to {}", file.getName(), bad.getName());
+            return true;
+        } catch (IOException e) {
+            StoreCoords.LOGGER.error("Failed to move " + file.getName() + " with unknown header aside", e);
+            return false;
+        }
+    }
+
+    /**
+     * Empties the journal after its contents were folded into a new snapshot.
+     *
+     * @return {@code true} if the journal was reset, {@code false} otherwise
+     */
+    boolean reset() {
+        try (FileChannel ch = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(ch);
+            ch.force(false);
+            return true;
+        } catch (IOException e) {
+            StoreCoords.LOGGER.error("Failed to reset " + file.getName(), e);
+            return false;
+        }
+    }
+
+    private static void writeHeader(FileChannel ch) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).flip();
+        while (header.hasRemaining()) ch.write(header);
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, position + buf.position());
+            if (n < 0) throw new IOException("Unexpected end of journal");
+        }
+    }
+}
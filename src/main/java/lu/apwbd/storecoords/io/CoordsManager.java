@@ -1,17 +1,22 @@
 package lu.apwbd.storecoords.io;
 
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import lu.apwbd.storecoords.StoreCoords;
-import net.minecraft.client.player.LocalPlayer;
+import lu.apwbd.storecoords.client.config.ClientConfig;
+import lu.apwbd.storecoords.metrics.Metrics;
+import lu.apwbd.storecoords.util.LongPosSet;
+import lu.apwbd.storecoords.util.SectionIndex;
 import net.minecraft.core.BlockPos;
-import net.minecraftforge.fml.loading.FMLPaths;
-import org.yaml.snakeyaml.DumperOptions;
-import org.yaml.snakeyaml.Yaml;
+import net.minecraft.world.level.ChunkPos;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
 
 public final class CoordsManager {
 
@@ -23,92 +28,520 @@ public final class CoordsManager {
     }
 
     public static final class BatchResult {
+        private static final long[] NONE = new long[0];
+
         public final ActionResult status;
-        public final Set<BlockPos> changedPositions;
+        /** Packed positions ({@code BlockPos.asLong()}) that were actually added or removed. */
+        public final long[] changedPositions;
+        /** Metadata rows a removal dropped, or {@code null}; kept by the undo history. */
+        final CoordsMetadata droppedMetadata;
+
+        public BatchResult(ActionResult status, long[] changedPositions) {
+            this(status, changedPositions, null);
+        }
 
-        public BatchResult(ActionResult status, Set<BlockPos> changedPositions) {
+        BatchResult(ActionResult status, long[] changedPositions, CoordsMetadata droppedMetadata) {
             this.status = status;
             this.changedPositions = changedPositions;
+            this.droppedMetadata = droppedMetadata;
+        }
+
+        static BatchResult of(ActionResult status) {
+            return new BatchResult(status, NONE);
         }
 
         public int changedCount() {
-            return changedPositions.size();
+            return changedPositions.length;
+        }
+    }
+
+    /**
+     * The outcome of an undo or redo.
+     */
+    public static final class HistoryStep {
+        public final BatchResult result;
+        /** {@code true} if the step stored positions, {@code false} if it removed them. */
+        public final boolean stored;
+
+        HistoryStep(BatchResult result, boolean stored) {
+            this.result = result;
+            this.stored = stored;
         }
     }
 
-    private final File file;
-    private final Set<BlockPos> blocks = new HashSet<>();
+    /**
+     * What changed in the in-memory set without an edit of the player: an external edit that was
+     * reloaded, or regions of a region indexed store that came into or went out of memory.
+     */
+    public static final class ReloadDelta {
+        /** Packed positions that are in memory now and were not before. */
+        public final long[] added;
+        /** Packed positions that were in memory before and are not anymore. */
+        public final long[] removed;
+
+        ReloadDelta(long[] added, long[] removed) {
+            this.added = added;
+            this.removed = removed;
+        }
+
+        public boolean isEmpty() {
+            return added.length == 0 && removed.length == 0;
+        }
+    }
+
+    /**
+     * The configuration values the manager and its file store act on. The game reads them from
+     * {@link ClientConfig} on every use, so edits to the config apply right away; headless callers
+     * such as the benchmarks pass fixed values, since the config only exists in a running game.
+     *
+     * @param historyMaxBytes     memory the undo history may use
+     * @param journalCompactBytes journal size at which the file store folds it into a new snapshot
+     */
+    public record Settings(boolean writeBehind, int writeDelayMs, int historyMaxEntries, long historyMaxBytes,
+                           ClientConfig.StorageFormat storageFormat, long journalCompactBytes) {
+
+        /** The config's default values. */
+        public static final Settings DEFAULTS = new Settings(true, 1500, 64, 4096 * 1024L,
+                ClientConfig.StorageFormat.YAML, 512 * 1024L);
+
+        /**
+         * @return the values currently set in the client config
+         */
+        public static Settings fromConfig() {
+            return new Settings(ClientConfig.WRITE_BEHIND.get(), ClientConfig.WRITE_DELAY_MS.get(),
+                    ClientConfig.HISTORY_MAX_ENTRIES.get(), ClientConfig.HISTORY_MAX_KB.get() * 1024L,
+                    ClientConfig.STORAGE_FORMAT.get(), ClientConfig.JOURNAL_COMPACT_KB.get() * 1024L);
+        }
+    }
+
+    /**
+     * Single background thread shared by all managers. Journal appends in write-behind mode and
+     * snapshot compaction are scheduled on it so that neither happens on the client thread.
+     */
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "StoreCoords-Writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static final long FLUSH_TIMEOUT_SECONDS = 10;
+
+    /**
+     * Regions kept in memory on each side of the player's region when the store is region indexed.
+     * One region is 512 blocks, more than the farthest highlight distance.
+     */
+    private static final int WINDOW_RADIUS = 1;
+
+    private static final CompletableFuture<ReloadDelta> UNCHANGED = CompletableFuture.completedFuture(null);
+
+    static final String SNAPSHOT_YAML = "coords.yml";
+    static final String SNAPSHOT_BINARY = "coords.bin";
+    static final String JOURNAL = "coords.journal";
+    static final String METADATA = "coords.meta";
+
+    private final File dir;
+    private final Supplier<Settings> settings;
+    /**
+     * Serializes all disk IO so that a synchronous save, the writer thread and the shutdown hook
+     * never write concurrently.
+     */
+    private final Object ioLock = new Object();
+    /** The stores of this partition that were used so far, by factory. Guarded by {@code ioLock}. */
+    private final Map<CoordStore.Factory, CoordStore> stores = new LinkedHashMap<>();
+    /** Backend chosen at load time from {@code storage.format}; stays fixed until the next load. */
+    private volatile CoordStore store;
+    /**
+     * Guards {@code blocks} and the write-behind state below, because the writer thread takes
+     * snapshots while the client thread keeps mutating. Lock order: {@code ioLock} before {@code stateLock}.
+     */
+    private final Object stateLock = new Object();
+    /**
+     * In-memory source of truth. Replaced exactly once, on the client thread, when the background
+     * load completes. With a region indexed store it only holds the regions in {@code window}.
+     */
+    private volatile SectionIndex blocks = new SectionIndex();
+    /** Labels, categories and creation times; installed together with {@code blocks}. */
+    private volatile CoordsMetadata metadata = new CoordsMetadata();
     /**
      * Indicates whether the coordinate data has been successfully loaded from the file system.
      *
      * This flag is used internally*/
-    private boolean loaded = false;
+    private volatile boolean loaded = false;
+    /** The load in flight, if any. Client thread only. */
+    private CompletableFuture<Boolean> loading;
 
-    public CoordsManager() {
-        this.file = new File(
-                new File(FMLPaths.CONFIGDIR.get().toFile(), StoreCoords.MOD_ID),
-                "coords.yml"
-        );
+    // guarded by stateLock
+    private final List<CoordStore.Change> pending = new ArrayList<>();
+    private boolean saveScheduled = false;
+    private boolean compactionScheduled = false;
+    private boolean failureReported = false;
+    private boolean metadataDirty = false;
+    /**
+     * Bumped by every change to {@code blocks} made by an edit or by moving the window. A reload compares
+     * it to tell whether an edit was made, and possibly persisted, or the window moved between reading
+     * the store and applying the result.
+     */
+    private long editCount = 0;
+    /**
+     * Keys of the regions held in {@code blocks} when the store is {@linkplain CoordStore#isRegionIndexed()
+     * region indexed}: {@code blocks} holds everything stored in these regions and nothing else.
+     */
+    private final LongOpenHashSet window = new LongOpenHashSet();
+
+    /** The regions last asked for by {@link #follow}, or {@code null}. Client thread only. */
+    private RegionBounds windowBounds;
+    /**
+     * Positions of regions that edits read into memory, until {@link #follow} reports them.
+     * Client thread only.
+     */
+    private final LongPosSet loadedForEdits = new LongPosSet();
+
+    private volatile Runnable saveErrorListener = () -> {};
+
+    /** Undo/redo history of this partition's edits. Client thread only. */
+    private final EditHistory history = new EditHistory();
+
+    /**
+     * The store's {@link CoordStore#fileState() file state} right after this manager last read or
+     * wrote it. A watcher event for files that still match is one of our own writes.
+     * Guarded by {@code ioLock}.
+     */
+    private long[] ownFileState;
+
+    /**
+     * @param dir the directory holding this partition's snapshot and journal; created on first save
+     */
+    public CoordsManager(File dir) {
+        this(dir, Settings::fromConfig);
+    }
+
+    /**
+     * @param dir      the directory holding this partition's snapshot and journal; created on first save
+     * @param settings asked for the current settings whenever one of them is used
+     */
+    public CoordsManager(File dir, Supplier<Settings> settings) {
+        this.dir = dir;
+        this.settings = settings;
+        this.store = storeFor(CoordStores.factory(settings.get().storageFormat()));
     }
 
     public String getFileName() {
-        return file.getName();
+        return store.getFileName();
     }
 
     /**
-     * Ensures that the configuration file is loaded into memory. If the file is not already
-     * loaded, this method attempts to load it. The method returns the current status of
-     * whether the data is successfully loaded.
+     * Sets the callback invoked when a deferred (write-behind) save fails. The callback runs on the
+     * writer thread, so implementations have to hop back to the client thread themselves.
+     * It is called once per failure streak, not once per failed attempt.
      *
-     * @return {@code true} if the configuration file is successfully loaded into memory,
-     *         {@code false} otherwise.
+     * @param listener the callback to invoke, or {@code null} to clear it
      */
-    public boolean ensureLoaded() {
-        if (loaded) return true;
-        loaded = load();
+    public void setSaveErrorListener(Runnable listener) {
+        this.saveErrorListener = listener != null ? listener : () -> {};
+    }
+
+    public boolean isLoaded() {
         return loaded;
     }
 
     /**
-     * Provides a snapshot of the current set of block positions.
-     * The snapshot represents a copy of the internally stored blocks at the time
-     * this method is called, ensuring the original set remains unaffected by external modifications.
+     * Starts loading the stored coordinates on the writer thread, unless that already happened.
+     * Parsing builds a detached index off-thread; only installing it runs on {@code mainThread}.
+     * Callers that need the data chain onto the returned future instead of blocking on it; when the
+     * data is already loaded the future is complete and chained actions run immediately.
+     * A failed load can be retried by calling this again.
+     *
+     * @param mainThread executor of the client thread, which is the only thread that may install the result
+     * @return a future completing on {@code mainThread} with {@code true} once the data is loaded,
+     *         or {@code false} if loading failed
+     */
+    public CompletableFuture<Boolean> loadAsync(Executor mainThread) {
+        if (loaded) return CompletableFuture.completedFuture(true);
+        if (loading != null) return loading;
+
+        loading = CompletableFuture.supplyAsync(this::loadDetached, WRITER)
+                .handleAsync((result, error) -> {
+                    if (error != null) StoreCoords.LOGGER.error("Failed to load " + getFileName(), error);
+                    if (result == null) {
+                        loading = null;
+                        return false;
+                    }
+                    blocks = result.index();
+                    metadata = result.metadata();
+                    loaded = true;
+                    return true;
+                }, mainThread);
+        return loading;
+    }
+
+    private record Loaded(SectionIndex index, CoordsMetadata metadata) {}
+
+    private Loaded loadDetached() {
+        SectionIndex index = new SectionIndex();
+        synchronized (ioLock) {
+            long start = System.nanoTime();
+            if (!load(index)) return null;
+            CoordsMetadata meta = loadMetadata(index);
+            Metrics.LOAD.record(System.nanoTime() - start);
+            ownFileState = store.fileState();
+            return new Loaded(index, meta);
+        }
+    }
+
+    /**
+     * Re-reads the partition's files if something other than this manager changed them, e.g. a hand
+     * edit, a restored backup or a sync from another machine. The files are parsed on the writer thread
+     * into a fresh index; the difference to the in-memory set is then applied in place on
+     * {@code mainThread}, so the live index (and everything built from it) is only patched, not
+     * replaced. Changes made in memory that are not written yet win over the files. If an edit happens
+     * while the files are being read, the result is discarded and the files are read again, since that
+     * edit may already be on disk without being part of what was read.
      *
-     * @return a set containing the block positions currently stored in the manager
+     * @param mainThread executor of the client thread
+     * @return a future completing on {@code mainThread} with the applied delta, or with {@code null} if
+     *         the files were unchanged, the manager is not loaded, or reading them failed
      */
-    public Set<BlockPos> getBlocksSnapshot() {
-        return new HashSet<>(blocks);
+    public CompletableFuture<ReloadDelta> reloadIfChanged(Executor mainThread) {
+        if (!loaded) return CompletableFuture.completedFuture(null);
+        return reload(mainThread, false);
     }
 
+    private CompletableFuture<ReloadDelta> reload(Executor mainThread, boolean force) {
+        return CompletableFuture.supplyAsync(() -> reloadDetached(force), WRITER)
+                .thenComposeAsync(read -> {
+                    if (read == null) return CompletableFuture.completedFuture(null);
+
+                    ReloadDelta delta = applyReload(read);
+                    // the files stamped as our own may now hold an edit that the read missed
+                    return delta != null ? CompletableFuture.completedFuture(delta) : reload(mainThread, true);
+                }, mainThread);
+    }
+
+    /** A reload result together with the edit count it is consistent with. */
+    private record Reloaded(SectionIndex fresh, long editCount) {}
+
+    private Reloaded reloadDetached(boolean force) {
+        synchronized (ioLock) {
+            if (!force && Arrays.equals(store.fileState(), ownFileState)) return null;
+
+            SectionIndex fresh = new SectionIndex();
+            long start = System.nanoTime();
+            long[] regions = null;
+            if (store.isRegionIndexed()) {
+                synchronized (stateLock) {
+                    regions = window.toLongArray();
+                }
+                for (long region : regions) {
+                    if (!store.query(RegionBounds.of(region), fresh::add)) return null;
+                }
+            } else if (!store.load(fresh)) {
+                return null;
+            }
+            Metrics.LOAD.record(System.nanoTime() - start);
+            ownFileState = store.fileState();
+
+            // queued changes are newer than the files; they may be appended before the result is applied
+            synchronized (stateLock) {
+                for (CoordStore.Change c : pending) {
+                    for (long p : c.positions()) {
+                        if (regions != null && !window.contains(RegionBounds.regionKey(p))) continue;
+                        if (c.added()) fresh.add(p); else fresh.remove(p);
+                    }
+                }
+                return new Reloaded(fresh, editCount);
+            }
+        }
+    }
+
+    /**
+     * Patches the live index to match the files that were read, skipping positions that are still
+     * queued. Client thread only.
+     *
+     * @return the applied delta, or {@code null} if an edit happened since the files were read
+     */
+    private ReloadDelta applyReload(Reloaded read) {
+        synchronized (stateLock) {
+            if (read.editCount() != editCount) return null;
+
+            SectionIndex fresh = read.fresh();
+            LongPosSet queued = new LongPosSet();
+            for (CoordStore.Change c : pending) {
+                for (long p : c.positions()) queued.add(p);
+            }
+
+            LongPosSet current = blocks.positions();
+            LongPosSet added = new LongPosSet();
+            LongPosSet removed = new LongPosSet();
+
+            for (int s = fresh.positions().firstSlot(); s >= 0; s = fresh.positions().nextSlot(s)) {
+                long p = fresh.positions().keyAt(s);
+                if (!current.contains(p) && !queued.contains(p)) added.add(p);
+            }
+            for (int s = current.firstSlot(); s >= 0; s = current.nextSlot(s)) {
+                long p = current.keyAt(s);
+                if (!fresh.contains(p) && !queued.contains(p)) removed.add(p);
+            }
+
+            long[] addedArray = added.toArray();
+            long[] removedArray = removed.toArray();
+            for (long p : removedArray) blocks.remove(p);
+            for (long p : addedArray) blocks.add(p);
+            dropMetadata(removedArray);
+            return new ReloadDelta(addedArray, removedArray);
+        }
+    }
+
+    /**
+     * @return the directory holding this partition's files
+     */
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Provides the live, section-indexed set of stored positions, packed with {@code BlockPos.asLong()}.
+     * It is shared with the highlighter instead of being copied; callers must only read it, and only on
+     * the client thread, which is the only thread that mutates it. With a region indexed store it only
+     * holds the regions near the player; see {@link #follow}.
+     *
+     * @return the block positions currently stored in the manager
+     */
+    public SectionIndex getPositions() {
+        return blocks;
+    }
+
+    /**
+     * Provides the live labels, categories and creation times of stored positions. Like
+     * {@link #getPositions()}, it is shared rather than copied and must only be read on the client thread.
+     *
+     * @return the metadata of this partition
+     */
+    public CoordsMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Sets category and label of every given position that is stored. Positions without a row yet get
+     * the current time as creation time. Passing {@code null} for both clears their metadata. The
+     * metadata file is rewritten in the background.
+     *
+     * @param positions packed positions
+     * @param category  the category, or {@code null}
+     * @param label     the label, or {@code null}
+     * @return the number of stored positions that were tagged
+     */
+    public int tag(long[] positions, String category, String label) {
+        checkLoaded();
+        long now = System.currentTimeMillis();
+        int tagged = 0;
+
+        synchronized (stateLock) {
+            for (long p : positions) {
+                if (!blocks.contains(p)) continue;
+                metadata.set(p, category, label, now);
+                tagged++;
+            }
+            if (tagged > 0) {
+                metadataDirty = true;
+                scheduleSave();
+            }
+        }
+        return tagged;
+    }
+
+    /**
+     * Drops the metadata of removed positions. Must be called while holding {@code stateLock}.
+     *
+     * @return the dropped rows, or {@code null} if none of the positions had metadata
+     */
+    private CoordsMetadata dropMetadata(long[] removed) {
+        if (metadata.isEmpty()) return null;
+
+        CoordsMetadata dropped = metadata.extract(removed);
+        if (dropped == null) return null;
+
+        for (long p : removed) metadata.remove(p);
+        metadataDirty = true;
+        scheduleSave();
+        return dropped;
+    }
+
+    /**
+     * Puts back metadata rows that {@link #dropMetadata} returned, for the positions that are stored
+     * again. Must be called while holding {@code stateLock}.
+     */
+    private void restoreMetadata(CoordsMetadata dropped) {
+        if (dropped != null && metadata.putAll(dropped, blocks::contains)) {
+            metadataDirty = true;
+            scheduleSave();
+        }
+    }
+
+    private void checkLoaded() {
+        if (!loaded) throw new IllegalStateException("Coordinates are not loaded yet");
+    }
 
     /**
      * Stores all given block positions into the internal set of tracked coordinates associated with a player.
-     * Ensures that only positions not already present are added to the set. If the positions are successfully
-     * saved to persistent storage, they are retained; otherwise, the operation is rolled back.
+     * Ensures that only positions not already present are added to the set. Only the added positions are
+     * appended to the journal; in write-behind mode that append happens later on the writer thread, otherwise
+     * it happens right away and the operation is rolled back if it fails.
      *
      * @param positions A set of {@code BlockPos} instances representing the block positions to store.
      * @return A {@code BatchResult} containing the status of the store operation and the number of positions added:
      *         - {@code ActionResult.OK} if the positions were successfully added and saved.
      *         - {@code ActionResult.ALREADY_EXISTS} if all the given positions already exist.
-     *         - {@code ActionResult.IO_ERROR} if the save operation failed.
+     *         - {@code ActionResult.IO_ERROR} if the save operation failed (synchronous mode only).
      */
     public BatchResult storeAll(Set<BlockPos> positions) {
-        Set<BlockPos> added = new HashSet<>();
+        return storeAll(pack(positions));
+    }
+
+    /**
+     * Packed variant of {@link #storeAll(Set)}; the positions are {@code BlockPos.asLong()} values.
+     */
+    public BatchResult storeAll(LongPosSet positions) {
+        checkLoaded();
+        return record(add(positions), CoordsJournal.OP_ADD);
+    }
 
-        for (BlockPos p : positions) {
-            BlockPos im = p.immutable();
-            if (blocks.add(im)) {
-                added.add(im);
+    private BatchResult add(LongPosSet positions) {
+        if (!loadRegionsOf(positions)) return BatchResult.of(ActionResult.IO_ERROR);
+
+        long[] added;
+        CoordStore.Change entry;
+
+        synchronized (stateLock) {
+            long[] scratch = new long[positions.size()];
+            int n = 0;
+            for (int s = positions.firstSlot(); s >= 0; s = positions.nextSlot(s)) {
+                long p = positions.keyAt(s);
+                if (blocks.add(p)) {
+                    scratch[n++] = p;
+                }
+            }
+
+            if (n == 0) {
+                return BatchResult.of(ActionResult.ALREADY_EXISTS);
             }
-        }
 
-        if (added.isEmpty()) {
-            return new BatchResult(ActionResult.ALREADY_EXISTS, Collections.emptySet());
+            added = n == scratch.length ? scratch : Arrays.copyOf(scratch, n);
+            entry = new CoordStore.Change(true, added);
+            pending.add(entry);
+            editCount++;
+
+            if (settings.get().writeBehind()) {
+                scheduleSave();
+                return new BatchResult(ActionResult.OK, added);
+            }
         }
 
-        if (!save()) {
-            blocks.removeAll(added);
-            return new BatchResult(ActionResult.IO_ERROR, Collections.emptySet());
+        if (!persistNow(entry)) {
+            synchronized (stateLock) {
+                for (long p : added) blocks.remove(p);
+                editCount++;
+            }
+            return BatchResult.of(ActionResult.IO_ERROR);
         }
 
         return new BatchResult(ActionResult.OK, added);
@@ -117,141 +550,628 @@ public final class CoordsManager {
     /**
      * Removes all specified block positions from the manager's tracking storage.
      * If any positions in the provided set match the currently tracked blocks, they are removed.
-     * The operation attempts to persist changes to storage and will revert on failure to save.
+     * Only the removed positions are appended to the journal; in write-behind mode that happens later on
+     * the writer thread, otherwise right away, reverting the removal on failure to save.
      *
      * @param positions A set of {@code BlockPos} objects representing the block positions to be removed.
      * @return A {@code BatchResult} object containing the result status of the operation
      *         and the count of successfully removed positions. Returns
      *         {@code ActionResult.NOT_FOUND} if no matching positions were found,
-     *         {@code ActionResult.IO_ERROR} if a failure occurred during saving,
+     *         {@code ActionResult.IO_ERROR} if a failure occurred during saving (synchronous mode only),
      *         or {@code ActionResult.OK} on successful removal.
      */
     public BatchResult removeAll(Set<BlockPos> positions) {
-        Set<BlockPos> removed = new HashSet<>();
+        return removeAll(pack(positions));
+    }
+
+    /**
+     * Packed variant of {@link #removeAll(Set)}; the positions are {@code BlockPos.asLong()} values.
+     */
+    public BatchResult removeAll(LongPosSet positions) {
+        checkLoaded();
+        return record(remove(positions), CoordsJournal.OP_REMOVE);
+    }
 
-        for (BlockPos p : positions) {
-            BlockPos im = p.immutable();
-            if (blocks.remove(im)) {
-                removed.add(im);
+    private BatchResult remove(LongPosSet positions) {
+        if (!loadRegionsOf(positions)) return BatchResult.of(ActionResult.IO_ERROR);
+
+        long[] removed;
+        CoordStore.Change entry;
+
+        synchronized (stateLock) {
+            long[] scratch = new long[positions.size()];
+            int n = 0;
+            for (int s = positions.firstSlot(); s >= 0; s = positions.nextSlot(s)) {
+                long p = positions.keyAt(s);
+                if (blocks.remove(p)) {
+                    scratch[n++] = p;
+                }
             }
-        }
 
-        if (removed.isEmpty()) {
-            return new BatchResult(ActionResult.NOT_FOUND, Collections.emptySet());
+            if (n == 0) {
+                return BatchResult.of(ActionResult.NOT_FOUND);
+            }
+
+            removed = n == scratch.length ? scratch : Arrays.copyOf(scratch, n);
+            entry = new CoordStore.Change(false, removed);
+            pending.add(entry);
+            editCount++;
+
+            if (settings.get().writeBehind()) {
+                scheduleSave();
+                return new BatchResult(ActionResult.OK, removed, dropMetadata(removed));
+            }
         }
 
-        if (!save()) {
+        if (!persistNow(entry)) {
             // rollback
-            blocks.addAll(removed);
-            return new BatchResult(ActionResult.IO_ERROR, Collections.emptySet());
+            synchronized (stateLock) {
+                for (long p : removed) blocks.add(p);
+                editCount++;
+            }
+            return BatchResult.of(ActionResult.IO_ERROR);
         }
 
-        return new BatchResult(ActionResult.OK, removed);
+        CoordsMetadata dropped;
+        synchronized (stateLock) {
+            dropped = dropMetadata(removed);
+        }
+        return new BatchResult(ActionResult.OK, removed, dropped);
     }
 
-    // ---- YAML IO (Format bleibt: index -> {x,y,z}) ----
+    // ---- Region window ----
 
     /**
-     * Loads data from a YAML file and populates the internal blocks set with coordinates
-     * if the file exists and is successfully parsed. Ensures the file exists before attempting
-     * to load the data. Clears existing blocks before loading new data. If the file contains
-     * invalid or unexpected data, clears the blocks and considers the operation successful.
+     * Keeps the regions within {@link #WINDOW_RADIUS} of the given block column in memory when the store
+     * is region indexed: regions coming into range are queried on the writer thread, regions left behind
+     * are dropped from memory, but not from the store. Other stores are held in memory as a whole and
+     * this does nothing. Cheap enough to call every tick. Client thread only.
      *
-     * @return {@code true} if the data was successfully loaded and parsed, or if the file
-     *         contains no relevant data (such as being empty); {@code false} if an error
-     *         occurs during the loading process.
+     * @param mainThread executor of the client thread
+     * @return a future completing on {@code mainThread} with the positions that came into or went out of
+     *         memory, or with {@code null} if nothing changed or a query failed
      */
-    private boolean load() {
-        if (!ensureFileExists()) return false;
+    public CompletableFuture<ReloadDelta> follow(int blockX, int blockZ, Executor mainThread) {
+        if (!loaded || !store.isRegionIndexed()) return UNCHANGED;
 
-        Map<Object, Object> data;
-        try (FileInputStream inputStream = new FileInputStream(file)) {
-            Object root = new Yaml().load(inputStream);
+        if (!loadedForEdits.isEmpty()) {
+            long[] added = loadedForEdits.toArray();
+            loadedForEdits.clear();
+            return CompletableFuture.completedFuture(new ReloadDelta(added, BatchResult.NONE));
+        }
 
-            if (root == null) {
-                blocks.clear();
-                return true;
+        RegionBounds bounds = RegionBounds.around(blockX, blockZ, WINDOW_RADIUS);
+        if (bounds.equals(windowBounds)) return UNCHANGED;
+        windowBounds = bounds;
+
+        return CompletableFuture.supplyAsync(() -> readWindow(bounds), WRITER)
+                .thenApplyAsync(read -> read != null ? applyWindow(read) : null, mainThread);
+    }
+
+    /** Positions read for the regions of {@code bounds} that were not in the window yet. */
+    private record WindowRead(RegionBounds bounds, LongOpenHashSet regions, LongPosSet found) {}
+
+    private WindowRead readWindow(RegionBounds bounds) {
+        synchronized (ioLock) {
+            LongOpenHashSet regions = new LongOpenHashSet();
+            synchronized (stateLock) {
+                for (int z = bounds.minZ(); z <= bounds.maxZ(); z++) {
+                    for (int x = bounds.minX(); x <= bounds.maxX(); x++) {
+                        long region = ChunkPos.asLong(x, z);
+                        if (!window.contains(region)) regions.add(region);
+                    }
+                }
             }
 
-            if (!(root instanceof Map<?, ?> mapRoot)) {
-                blocks.clear();
-                return true;
+            LongPosSet found = new LongPosSet();
+            long start = System.nanoTime();
+            for (long region : regions.toLongArray()) {
+                if (!store.query(RegionBounds.of(region), found::add)) return null;
             }
+            Metrics.LOAD.record(System.nanoTime() - start);
 
-            data = (Map<Object, Object>) mapRoot;
+            synchronized (stateLock) {
+                overlayPending(regions, found);
+            }
+            return new WindowRead(bounds, regions, found);
+        }
+    }
 
-        } catch (IOException e) {
-            StoreCoords.LOGGER.error("Failed to load coords.yml", e);
+    /**
+     * Adds what was read for regions that are still missing and drops the regions outside the bounds.
+     * Client thread only.
+     *
+     * @return the change to the in-memory set, or {@code null} if the player has since moved on
+     */
+    private ReloadDelta applyWindow(WindowRead read) {
+        if (!read.bounds().equals(windowBounds)) return null;
+
+        RegionBounds bounds = read.bounds();
+        synchronized (stateLock) {
+            // an edit may have read some of the regions in the meantime
+            LongOpenHashSet fresh = new LongOpenHashSet();
+            for (long region : read.regions().toLongArray()) {
+                if (window.add(region)) fresh.add(region);
+            }
+
+            LongPosSet added = new LongPosSet();
+            LongPosSet found = read.found();
+            for (int s = found.firstSlot(); s >= 0; s = found.nextSlot(s)) {
+                long p = found.keyAt(s);
+                if (fresh.contains(RegionBounds.regionKey(p)) && blocks.add(p)) added.add(p);
+            }
+
+            LongPosSet removed = new LongPosSet();
+            LongPosSet current = blocks.positions();
+            for (int s = current.firstSlot(); s >= 0; s = current.nextSlot(s)) {
+                long p = current.keyAt(s);
+                if (!bounds.contains(p)) removed.add(p);
+            }
+            long[] removedArray = removed.toArray();
+            for (long p : removedArray) blocks.remove(p);
+            window.removeIf(region -> !bounds.containsRegion(region));
+
+            editCount++;
+            return new ReloadDelta(added.toArray(), removedArray);
+        }
+    }
+
+    /**
+     * Makes sure the regions of {@code positions} are in memory before they are edited, so that an edit
+     * far from the player, e.g. an import or an undo after travelling, sees what is stored there. Only
+     * region indexed stores have regions missing; reading them blocks the calling thread.
+     *
+     * @return {@code false} if a region could not be read
+     */
+    private boolean loadRegionsOf(LongPosSet positions) {
+        if (!store.isRegionIndexed()) return true;
+
+        LongOpenHashSet missing = new LongOpenHashSet();
+        synchronized (stateLock) {
+            for (int s = positions.firstSlot(); s >= 0; s = positions.nextSlot(s)) {
+                long region = RegionBounds.regionKey(positions.keyAt(s));
+                if (!window.contains(region)) missing.add(region);
+            }
+        }
+        if (missing.isEmpty()) return true;
+
+        synchronized (ioLock) {
+            LongPosSet found = new LongPosSet();
+            for (long region : missing.toLongArray()) {
+                if (!store.query(RegionBounds.of(region), found::add)) return false;
+            }
+
+            synchronized (stateLock) {
+                overlayPending(missing, found);
+                for (int s = found.firstSlot(); s >= 0; s = found.nextSlot(s)) {
+                    long p = found.keyAt(s);
+                    if (blocks.add(p)) loadedForEdits.add(p);
+                }
+                window.addAll(missing);
+                editCount++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies the queued changes within {@code regions} to positions just read from the store, since
+     * the store does not have them yet. Must be called while holding {@code stateLock}.
+     */
+    private void overlayPending(LongOpenHashSet regions, LongPosSet found) {
+        for (CoordStore.Change c : pending) {
+            for (long p : c.positions()) {
+                if (!regions.contains(RegionBounds.regionKey(p))) continue;
+                if (c.added()) found.add(p); else found.remove(p);
+            }
+        }
+    }
+
+    // ---- Undo / redo ----
+
+    /**
+     * Reverts the most recent edit that is still in effect, as one batch and therefore one persisted write.
+     *
+     * @return what was changed, or {@code null} if there is nothing to undo
+     */
+    public HistoryStep undo() {
+        checkLoaded();
+        int slot = history.undoSlot();
+        if (slot < 0) return null;
+
+        boolean store = history.op(slot) == CoordsJournal.OP_REMOVE;
+        BatchResult r = replay(slot, store);
+        if (r.status != ActionResult.IO_ERROR) history.undone();
+        return new HistoryStep(r, store);
+    }
+
+    /**
+     * Re-applies the most recently undone edit, as one batch.
+     *
+     * @return what was changed, or {@code null} if there is nothing to redo
+     */
+    public HistoryStep redo() {
+        checkLoaded();
+        int slot = history.redoSlot();
+        if (slot < 0) return null;
+
+        boolean store = history.op(slot) == CoordsJournal.OP_ADD;
+        BatchResult r = replay(slot, store);
+        if (r.status != ActionResult.IO_ERROR) history.redone();
+        return new HistoryStep(r, store);
+    }
+
+    private BatchResult record(BatchResult r, byte op) {
+        if (r.status == ActionResult.OK) {
+            Settings s = settings.get();
+            history.record(op, r.changedPositions, r.droppedMetadata, s.historyMaxEntries(), s.historyMaxBytes());
+        }
+        return r;
+    }
+
+    /**
+     * Applies a history entry's positions as one batch. Metadata the entry's positions lose is kept in
+     * the entry, and restored once they are stored again.
+     */
+    private BatchResult replay(int slot, boolean store) {
+        long[] positions = history.positions(slot);
+        LongPosSet set = new LongPosSet(positions.length);
+        for (long p : positions) set.add(p);
+
+        if (!store) {
+            BatchResult r = remove(set);
+            if (r.status == ActionResult.OK) history.setMetadata(slot, r.droppedMetadata);
+            return r;
+        }
+
+        BatchResult r = add(set);
+        if (r.status == ActionResult.OK) {
+            synchronized (stateLock) {
+                restoreMetadata(history.metadata(slot));
+            }
+        }
+        return r;
+    }
+
+    private static LongPosSet pack(Set<BlockPos> positions) {
+        LongPosSet packed = new LongPosSet(positions.size());
+        for (BlockPos p : positions) packed.add(p.asLong());
+        return packed;
+    }
+
+    // ---- Persistence: batches handed to the store + background compaction ----
+
+    /**
+     * Writes any pending changes and waits for the writer thread to finish. Used on world unload
+     * and shutdown so that nothing buffered in memory is lost.
+     *
+     * @return {@code true} if there was nothing to write or the write succeeded, {@code false} otherwise
+     */
+    public boolean flush() {
+        Future<Boolean> result = flushAsync();
+        try {
+            return result.get(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            StoreCoords.LOGGER.error("Failed to flush " + getFileName(), e);
             return false;
         }
+    }
+
+    /**
+     * Writes any pending changes on the writer thread without waiting for it.
+     *
+     * @return a future completing on the writer thread with the result {@link #flush()} would return
+     */
+    public CompletableFuture<Boolean> flushAsync() {
+        return CompletableFuture.supplyAsync(this::flushPending, WRITER);
+    }
+
+    /**
+     * Appends pending changes on the calling thread without waiting for the writer. Only meant for
+     * the JVM shutdown hook, when the writer thread may no longer run queued tasks.
+     */
+    void flushOnShutdown() {
+        appendPending();
+        writeMetadataIfDirty();
+        close();
+    }
+
+    /**
+     * Releases the store's open files or connections. Call after {@link #flush()} when the partition
+     * is dropped; the manager reopens them if it is used again.
+     */
+    void close() {
+        synchronized (ioLock) {
+            for (CoordStore s : stores.values()) s.close();
+        }
+    }
+
+    /**
+     * Synchronous-mode persistence: appends everything pending (including {@code entry}) on the
+     * calling thread. On failure {@code entry} is dropped from the queue so that the caller can
+     * roll back its in-memory change; older entries stay queued for the next attempt.
+     */
+    private boolean persistNow(CoordStore.Change entry) {
+        if (appendPending()) {
+            scheduleCompactionIfNeeded();
+            return true;
+        }
+
+        synchronized (stateLock) {
+            pending.removeIf(e -> e == entry);
+        }
+        return false;
+    }
+
+    /**
+     * Schedules a deferred journal append unless one is already pending. Every mutation that happens
+     * before the scheduled append runs is merged into that single write. Must be called while holding
+     * {@code stateLock}.
+     */
+    private void scheduleSave() {
+        if (saveScheduled) return;
+        saveScheduled = true;
+        WRITER.schedule(this::flushPending, settings.get().writeDelayMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writer-thread entry point: hands pending changes to the store, rewrites the metadata file if
+     * it changed, and compacts the store if it asks for it.
+     * <p>
+     * A failed deferred write never rolls back the in-memory set: the player already saw the change
+     * and the highlight already shows it, so memory stays the source of truth and the changes stay
+     * queued. The write is retried by the next mutation or flush, and the player is told once per
+     * failure streak.
+     *
+     * @return {@code true} if the files are up to date afterwards, {@code false} if a write failed
+     */
+    private boolean flushPending() {
+        boolean ok = appendPending();
+        ok &= writeMetadataIfDirty();
+        boolean notify = false;
+
+        synchronized (stateLock) {
+            if (ok) {
+                failureReported = false;
+            } else if (!failureReported) {
+                failureReported = true;
+                notify = true;
+            }
+        }
+
+        if (notify) saveErrorListener.run();
+        if (ok) compactIfNeeded();
+        return ok;
+    }
+
+    /**
+     * Drains the pending queue into the store. Entries are put back at the head of the queue if
+     * the append fails, so their order relative to newer changes is preserved.
+     *
+     * @return {@code true} if nothing was pending or the append succeeded
+     */
+    private boolean appendPending() {
+        synchronized (ioLock) {
+            List<CoordStore.Change> batch;
+            synchronized (stateLock) {
+                saveScheduled = false;
+                if (pending.isEmpty()) return true;
+                batch = new ArrayList<>(pending);
+                pending.clear();
+            }
 
-        blocks.clear();
+            long start = System.nanoTime();
+            boolean ok = store.append(batch);
+            Metrics.SAVE.record(System.nanoTime() - start);
+            if (ok) {
+                ownFileState = store.fileState();
+                return true;
+            }
+            return requeue(batch);
+        }
+    }
 
-        for (Object value : data.values()) {
-            if (!(value instanceof Map<?, ?> coords)) continue;
+    private boolean requeue(List<CoordStore.Change> batch) {
+        synchronized (stateLock) {
+            pending.addAll(0, batch);
+        }
+        return false;
+    }
 
-            Object xObj = coords.get("x");
-            Object yObj = coords.get("y");
-            Object zObj = coords.get("z");
+    private void scheduleCompactionIfNeeded() {
+        if (!needsCompaction()) return;
 
-            if (!(xObj instanceof Number x && yObj instanceof Number y && zObj instanceof Number z)) continue;
+        synchronized (stateLock) {
+            if (compactionScheduled) return;
+            compactionScheduled = true;
+        }
+        WRITER.execute(this::compactIfNeeded);
+    }
 
-            blocks.add(new BlockPos(x.intValue(), y.intValue(), z.intValue()));
+    private void compactIfNeeded() {
+        synchronized (stateLock) {
+            compactionScheduled = false;
         }
+        if (!needsCompaction()) return;
+        compact();
+    }
 
-        return true;
+    /**
+     * A region indexed store is never compacted from memory, since memory only holds part of it.
+     */
+    private boolean needsCompaction() {
+        return !store.isRegionIndexed() && store.needsCompaction();
+    }
+
+    /**
+     * Replaces the store's data with a snapshot of the in-memory set. For the file store this folds the
+     * journal into a fresh snapshot.
+     * <p>
+     * The snapshot must contain exactly what the store already holds: if it also held queued changes,
+     * a crash between writing it and resetting the journal would replay the old journal over changes
+     * that were never journaled. So the queue is drained first, and compaction is skipped if an edit
+     * was queued in the meantime; the write for that edit compacts afterwards.
+     */
+    private void compact() {
+        synchronized (ioLock) {
+            if (!appendPending()) return;
+
+            long[] snapshot;
+            synchronized (stateLock) {
+                if (!pending.isEmpty()) return;
+                snapshot = blocks.positions().toArray();
+            }
+
+            if (!store.replaceAll(snapshot)) return;
+            ownFileState = store.fileState();
+        }
     }
 
+    // ---- Metadata IO ----
+
     /**
-     * Saves the current state of block positions to the associated YAML file.
-     * The method ensures that the file exists and writes the block data in
-     * YAML format, with each block position represented as a map containing
-     * its x, y, and z coordinates.
+     * Reads the metadata file, dropping rows of positions that are not in {@code index}. With a region
+     * indexed store, whose regions are read later, all rows are kept. A missing or unreadable file
+     * yields empty metadata; the positions themselves do not depend on it. Must be called while holding
+     * {@code ioLock}.
+     */
+    private CoordsMetadata loadMetadata(SectionIndex index) {
+        CoordsMetadata meta = new CoordsMetadata();
+        File file = new File(getDirectory(), METADATA);
+        if (!file.exists()) return meta;
+
+        try {
+            MetadataFile.read(file, meta);
+        } catch (IOException e) {
+            StoreCoords.LOGGER.error("Failed to load " + file.getName() + ", labels and categories are reset", e);
+            return new CoordsMetadata();
+        }
+        if (!store.isRegionIndexed()) meta.retainAll(index::contains);
+        return meta;
+    }
+
+    /**
+     * Rewrites the metadata file if the metadata changed since it was last written. The whole file is
+     * written at once; it only holds positions that were given metadata.
      *
-     * @return true if the save operation was successful, false otherwise
+     * @return {@code true} if nothing had to be written or the write succeeded
      */
-    private boolean save() {
-        if (!ensureFileExists()) return false;
+    private boolean writeMetadataIfDirty() {
+        synchronized (ioLock) {
+            CoordsMetadata copy;
+            synchronized (stateLock) {
+                if (!metadataDirty) return true;
+                metadataDirty = false;
+                copy = metadata.copy();
+            }
+
+            if (!writeMetadata(copy)) {
+                synchronized (stateLock) {
+                    metadataDirty = true;
+                }
+                return false;
+            }
+            return true;
+        }
+    }
 
-        Map<Integer, Object> out = new LinkedHashMap<>();
-        int index = 1;
+    private boolean writeMetadata(CoordsMetadata copy) {
+        if (!ensureDirectoryExists()) return false;
 
-        for (BlockPos b : blocks) {
-            Map<String, Object> coords = new LinkedHashMap<>(3);
-            coords.put("x", b.getX());
-            coords.put("y", b.getY());
-            coords.put("z", b.getZ());
-            out.put(index++, coords);
+        File target = new File(getDirectory(), METADATA);
+        if (copy.isEmpty()) {
+            try {
+                Files.deleteIfExists(target.toPath());
+                return true;
+            } catch (IOException e) {
+                StoreCoords.LOGGER.error("Failed to delete " + target.getName(), e);
+                return false;
+            }
         }
 
-        try (FileWriter writer = new FileWriter(file)) {
-            DumperOptions options = new DumperOptions();
-            options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
-            new Yaml(options).dump(out, writer);
+        File tmp = new File(target.getParentFile(), target.getName() + ".tmp");
+        try {
+            MetadataFile.write(tmp, copy);
+            moveIntoPlace(tmp, target);
+            Metrics.recordBytesWritten(target.length());
             return true;
         } catch (IOException e) {
-            StoreCoords.LOGGER.error("Failed to save coords.yml", e);
+            StoreCoords.LOGGER.error("Failed to save " + target.getName(), e);
             return false;
         }
     }
 
+    // ---- Store selection ----
+
     /**
-     * Ensures that the specified file exists. If the file does not exist, it attempts to create the
-     * parent directories (if necessary) and the file.
+     * Loads the stored positions from the store that {@code storage.format} selects in {@link CoordStores}.
+     * When the configuration switched stores and only another store has data, that data is carried over
+     * once: read, written to the configured store, and the other store's files are moved aside as
+     * backups. A region indexed store is not read here at all; {@link #follow} reads its regions.
      *
-     * @return true if the file exists or was successfully created; false if an IOException occurs
-     *         during the process.
+     * @param target a fresh index that is not visible to any other thread yet
+     * @return {@code true} if the data was loaded or there is none yet, {@code false} on failure.
+     *         Must be called while holding {@code ioLock}.
      */
-    @SuppressWarnings("ResultOfMethodCallIgnored")
-    private boolean ensureFileExists() {
-        if (file.exists()) return true;
+    private boolean load(SectionIndex target) {
+        CoordStore configured = storeFor(CoordStores.factory(settings.get().storageFormat()));
+        store = configured;
+
+        CoordStore other = null;
+        if (!configured.exists()) {
+            for (CoordStore.Factory factory : CoordStores.factories()) {
+                CoordStore candidate = storeFor(factory);
+                if (candidate != configured && candidate.exists()) {
+                    other = candidate;
+                    break;
+                }
+            }
+        }
+        if (other == null) return configured.isRegionIndexed() || configured.load(target);
+
+        // loading the empty configured store first sets it up, e.g. picks the snapshot format
+        SectionIndex migrated = configured.isRegionIndexed() ? new SectionIndex() : target;
+        if (!configured.load(migrated) || !other.load(migrated)) return false;
+        if (!configured.replaceAll(migrated.positions().toArray())) return false;
+
+        other.retire();
+        StoreCoords.LOGGER.info("Migrated {} stored positions from {} to {}",
+                migrated.size(), other.getFileName(), configured.getFileName());
+        return true;
+    }
+
+    /**
+     * @return this partition's store of {@code factory}, created on first use. Must be called while
+     *         holding {@code ioLock}, or from the constructor.
+     */
+    private CoordStore storeFor(CoordStore.Factory factory) {
+        return stores.computeIfAbsent(factory, f -> f.create(dir, settings));
+    }
+
+    static void moveIntoPlace(File tmp, File target) throws IOException {
+        try {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Ensures that the storage directory exists, creating it (and any missing parents) if necessary.
+     *
+     * @return true if the directory exists or was successfully created; false otherwise
+     */
+    private boolean ensureDirectoryExists() {
+        if (dir.isDirectory()) return true;
 
         try {
-            File parent = file.getParentFile();
-            if (parent != null && !parent.exists()) parent.mkdirs();
-            return file.createNewFile();
+            Files.createDirectories(dir.toPath());
+            return true;
         } catch (IOException e) {
-            StoreCoords.LOGGER.error("Failed to create coords.yml", e);
+            StoreCoords.LOGGER.error("Failed to create " + dir.getName(), e);
             return false;
         }
     }
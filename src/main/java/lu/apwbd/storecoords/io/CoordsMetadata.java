@@ -0,0 +1,257 @@
+package lu.apwbd.storecoords.io;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import lu.apwbd.storecoords.util.StringPool;
+
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+/**
+ * Optional label, category and creation time of stored positions.
+ * <p>
+ * Only positions that were given metadata have a row. Rows are kept column by column in primitive
+ * arrays, and labels and categories are interned into {@link StringPool}s, so a million rows cost a few
+ * arrays and one hash map from position to row rather than a million {@code String}s and maps. Removing
+ * a row moves the last row into its place.
+ * <p>
+ * Mutated on the client thread while holding the owning manager's state lock; the writer thread only
+ * reads a {@link #copy()} taken under that lock.
+ */
+public final class CoordsMetadata {
+
+    /** Category or label id meaning "none". */
+    public static final int NONE = StringPool.NONE;
+
+    private final StringPool categories;
+    private final StringPool labels;
+    private final Long2IntOpenHashMap rows;
+
+    private long[] positions;
+    private int[] categoryIds;
+    private int[] labelIds;
+    private long[] created;
+    private int size;
+
+    public CoordsMetadata() {
+        this(new StringPool(), new StringPool(), 16);
+    }
+
+    private CoordsMetadata(StringPool categories, StringPool labels, int capacity) {
+        this.categories = categories;
+        this.labels = labels;
+        this.rows = new Long2IntOpenHashMap(capacity);
+        this.rows.defaultReturnValue(-1);
+        this.positions = new long[capacity];
+        this.categoryIds = new int[capacity];
+        this.labelIds = new int[capacity];
+        this.created = new long[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the category id of {@code pos}, or {@link #NONE}
+     */
+    public int categoryId(long pos) {
+        int row = rows.get(pos);
+        return row < 0 ? NONE : categoryIds[row];
+    }
+
+    /**
+     * @return the category of {@code pos}, or {@code null}
+     */
+    public String category(long pos) {
+        return categories.get(categoryId(pos));
+    }
+
+    /**
+     * @return the label of {@code pos}, or {@code null}
+     */
+    public String label(long pos) {
+        int row = rows.get(pos);
+        return row < 0 ? null : labels.get(labelIds[row]);
+    }
+
+    /**
+     * @return when {@code pos} was stored or first tagged, in epoch milliseconds, or {@code 0} if unknown
+     */
+    public long created(long pos) {
+        int row = rows.get(pos);
+        return row < 0 ? 0 : created[row];
+    }
+
+    /**
+     * @return the name of the category with the given id, or {@code null} for {@link #NONE}
+     */
+    public String categoryName(int id) {
+        return categories.get(id);
+    }
+
+    /**
+     * @return one more than the highest category id in use; ids grow monotonically, so a change means
+     *         a category was added
+     */
+    public int categoryIdLimit() {
+        return categories.size();
+    }
+
+    /**
+     * Sets category and label of {@code pos}. The creation time of an existing row is kept.
+     *
+     * @param category the category, or {@code null} for none
+     * @param label    the label, or {@code null} for none
+     * @param now      creation time to record if the position has no row yet
+     */
+    public void set(long pos, String category, String label, long now) {
+        int categoryId = categories.intern(category);
+        int labelId = labels.intern(label);
+
+        int row = rows.get(pos);
+        if (row < 0) {
+            if (categoryId == NONE && labelId == NONE) return;
+            row = addRow(pos, now);
+        } else if (categoryId == NONE && labelId == NONE) {
+            remove(pos);
+            return;
+        }
+        categoryIds[row] = categoryId;
+        labelIds[row] = labelId;
+    }
+
+    /**
+     * @return {@code true} if {@code pos} had a row
+     */
+    public boolean remove(long pos) {
+        int row = rows.remove(pos);
+        if (row < 0) return false;
+
+        int last = --size;
+        if (row != last) {
+            positions[row] = positions[last];
+            categoryIds[row] = categoryIds[last];
+            labelIds[row] = labelIds[last];
+            created[row] = created[last];
+            rows.put(positions[row], row);
+        }
+        return true;
+    }
+
+    /**
+     * Drops every row whose position is not stored any more, e.g. after loading metadata written
+     * before the snapshot changed behind the mod's back.
+     */
+    void retainAll(LongPredicate stored) {
+        for (int row = size - 1; row >= 0; row--) {
+            if (!stored.test(positions[row])) remove(positions[row]);
+        }
+    }
+
+    /**
+     * @return a detached copy with trimmed columns and only the strings still in use, for writing
+     */
+    CoordsMetadata copy() {
+        CoordsMetadata copy = new CoordsMetadata(new StringPool(), new StringPool(), Math.max(size, 1));
+        for (int row = 0; row < size; row++) {
+            copy.addRow(positions[row], created[row]);
+            copy.categoryIds[row] = copy.categories.intern(categories.get(categoryIds[row]));
+            copy.labelIds[row] = copy.labels.intern(labels.get(labelIds[row]));
+        }
+        return copy;
+    }
+
+    /**
+     * @return a detached copy of the rows of the given positions, or {@code null} if none of them has one
+     */
+    CoordsMetadata extract(long[] positions) {
+        CoordsMetadata extracted = null;
+        for (long p : positions) {
+            int row = rows.get(p);
+            if (row < 0) continue;
+            if (extracted == null) extracted = new CoordsMetadata(new StringPool(), new StringPool(), 16);
+            extracted.put(p, extracted.categories.intern(categories.get(categoryIds[row])),
+                    extracted.labels.intern(labels.get(labelIds[row])), created[row]);
+        }
+        return extracted;
+    }
+
+    /**
+     * Adds the rows of {@code other} whose position passes {@code filter} and has no row here yet,
+     * keeping their creation times.
+     *
+     * @return {@code true} if a row was added
+     */
+    boolean putAll(CoordsMetadata other, LongPredicate filter) {
+        boolean added = false;
+        for (int row = 0; row < other.size; row++) {
+            long p = other.positions[row];
+            if (rows.containsKey(p) || !filter.test(p)) continue;
+            put(p, categories.intern(other.categories.get(other.categoryIds[row])),
+                    labels.intern(other.labels.get(other.labelIds[row])), other.created[row]);
+            added = true;
+        }
+        return added;
+    }
+
+    public long estimateBytes() {
+        long bytes = 64 + (long) positions.length * (8 + 4 + 4 + 8);
+        bytes += (long) rows.size() * 24;
+        return bytes + categories.estimateBytes() + labels.estimateBytes();
+    }
+
+    // ---- column access for MetadataFile ----
+
+    StringPool categories() {
+        return categories;
+    }
+
+    StringPool labels() {
+        return labels;
+    }
+
+    long positionAt(int row) {
+        return positions[row];
+    }
+
+    int categoryAt(int row) {
+        return categoryIds[row];
+    }
+
+    int labelAt(int row) {
+        return labelIds[row];
+    }
+
+    long createdAt(int row) {
+        return created[row];
+    }
+
+    /**
+     * Appends a row with pool ids that are already interned in this instance. Used when reading.
+     */
+    void put(long pos, int categoryId, int labelId, long time) {
+        if (rows.containsKey(pos) || (categoryId == NONE && labelId == NONE)) return;
+        int row = addRow(pos, time);
+        categoryIds[row] = categoryId;
+        labelIds[row] = labelId;
+    }
+
+    private int addRow(long pos, long time) {
+        if (size == positions.length) {
+            int capacity = Math.max(16, size * 2);
+            positions = Arrays.copyOf(positions, capacity);
+            categoryIds = Arrays.copyOf(categoryIds, capacity);
+            labelIds = Arrays.copyOf(labelIds, capacity);
+            created = Arrays.copyOf(created, capacity);
+        }
+        int row = size++;
+        positions[row] = pos;
+        created[row] = time;
+        rows.put(pos, row);
+        return row;
+    }
+}
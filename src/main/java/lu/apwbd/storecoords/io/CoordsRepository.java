@@ -0,0 +1,166 @@
+package lu.apwbd.storecoords.io;
+
+import lu.apwbd.storecoords.StoreCoords;
+import lu.apwbd.storecoords.client.config.ClientConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Owns one {@link CoordsManager} per partition, i.e. per world (server or singleplayer save) and
+ * dimension. Partitions live in {@code config/storecoords/worlds/<world>/<dimension>/}.
+ * <p>
+ * Managers are created lazily when a partition is requested and kept in access order. Once more than
+ * {@code storage.maxLoadedPartitions} are in memory, the least recently used inactive ones are flushed
+ * on the writer thread and dropped once that finished. Client thread only, except for the shutdown
+ * hook, which only reads {@link #managers}.
+ */
+public final class CoordsRepository {
+
+    private static final String WORLDS_DIR = "worlds";
+
+    private final File root;
+    private final LinkedHashMap<String, CoordsManager> loaded = new LinkedHashMap<>(8, 0.75F, true);
+    /**
+     * The managers of {@link #loaded}, for the shutdown hook: the map's order changes on every lookup,
+     * so it cannot be read from another thread.
+     */
+    private final List<CoordsManager> managers = new CopyOnWriteArrayList<>();
+    /** Managers whose eviction flush is still running; a lookup in the meantime cancels the eviction. */
+    private final Set<CoordsManager> evicting = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Consumer<CoordsManager> onCreate;
+    private final Executor mainThread;
+
+    /**
+     * @param root       the mod's config directory; legacy single-file data found here is adopted once
+     * @param onCreate   called for every newly created manager, e.g. to install a save error listener
+     * @param mainThread executor of the client thread, where evictions are completed
+     */
+    public CoordsRepository(File root, Consumer<CoordsManager> onCreate, Executor mainThread) {
+        this.root = root;
+        this.onCreate = onCreate;
+        this.mainThread = mainThread;
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushOnShutdown, "StoreCoords-ShutdownFlush"));
+    }
+
+    /**
+     * Returns the manager for the given partition, creating it if necessary, and marks it as most
+     * recently used. The manager is not loaded yet; callers decide when to load it.
+     *
+     * @param worldId     identifies the server or singleplayer save
+     * @param dimensionId identifies the dimension, e.g. {@code minecraft:overworld}
+     * @param adoptLegacy whether data from the old global {@code coords.yml} may be moved into this
+     *                    partition if it is new
+     * @return the partition's manager
+     */
+    public CoordsManager get(String worldId, String dimensionId, boolean adoptLegacy) {
+        String key = sanitize(worldId) + "/" + sanitize(dimensionId);
+
+        CoordsManager manager = loaded.get(key);
+        if (manager == null) {
+            File dir = new File(new File(root, WORLDS_DIR), key);
+            if (adoptLegacy && !dir.exists()) adoptLegacy(dir);
+
+            manager = new CoordsManager(dir);
+            onCreate.accept(manager);
+            loaded.put(key, manager);
+            managers.add(manager);
+        }
+        evicting.remove(manager);
+
+        evict(manager);
+        return manager;
+    }
+
+    /**
+     * Flushes every loaded partition and waits for the writes to finish.
+     */
+    public void flushAll() {
+        for (CoordsManager manager : loaded.values()) manager.flush();
+    }
+
+    /**
+     * Starts dropping least recently used partitions beyond the configured cap. Each is flushed on the
+     * writer thread and only removed once the flush succeeded, so switching dimensions never waits for
+     * disk IO. The partition that was just requested is never dropped.
+     */
+    private void evict(CoordsManager keep) {
+        int cap = ClientConfig.MAX_LOADED_PARTITIONS.get();
+        Iterator<Map.Entry<String, CoordsManager>> it = loaded.entrySet().iterator();
+
+        while (loaded.size() - evicting.size() > cap && it.hasNext()) {
+            Map.Entry<String, CoordsManager> eldest = it.next();
+            CoordsManager manager = eldest.getValue();
+            if (manager == keep || evicting.contains(manager)) continue;
+
+            String key = eldest.getKey();
+            evicting.add(manager);
+            manager.flushAsync().thenAcceptAsync(ok -> finishEviction(key, manager, ok), mainThread);
+        }
+    }
+
+    private void finishEviction(String key, CoordsManager manager, boolean flushed) {
+        // requested again while flushing
+        if (!evicting.remove(manager)) return;
+
+        if (!flushed) {
+            // keep it in memory rather than lose unsaved changes
+            StoreCoords.LOGGER.warn("Not evicting partition {}: pending changes could not be saved", key);
+            return;
+        }
+
+        loaded.remove(key, manager);
+        managers.remove(manager);
+        manager.close();
+        StoreCoords.LOGGER.debug("Evicted coords partition {}", key);
+    }
+
+    /**
+     * Moves the pre-partitioning files from the config root into the given partition directory.
+     * Happens at most once, since afterwards the root no longer contains them.
+     */
+    private void adoptLegacy(File dir) {
+        List<File> legacy = new ArrayList<>();
+        for (String name : new String[]{CoordsManager.SNAPSHOT_YAML, CoordsManager.SNAPSHOT_BINARY, CoordsManager.JOURNAL}) {
+            File f = new File(root, name);
+            if (f.isFile()) legacy.add(f);
+        }
+        if (legacy.isEmpty()) return;
+
+        try {
+            Files.createDirectories(dir.toPath());
+            for (File f : legacy) {
+                Files.move(f.toPath(), new File(dir, f.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            StoreCoords.LOGGER.info("Moved legacy coordinates into partition {}", dir.getPath());
+        } catch (IOException e) {
+            StoreCoords.LOGGER.error("Failed to move legacy coordinates into " + dir.getPath(), e);
+        }
+    }
+
+    private void flushOnShutdown() {
+        for (CoordsManager manager : managers) manager.flushOnShutdown();
+    }
+
+    /**
+     * Turns a server address, save name or resource location into a safe directory name.
+     */
+    static String sanitize(String id) {
+        String s = id.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9._-]", "_");
+        return s.isEmpty() || s.equals(".") || s.equals("..") ? "_" : s;
+    }
+}
@@ -0,0 +1,480 @@
+package lu.apwbd.storecoords.io;
+
+import lu.apwbd.storecoords.util.LongPosSet;
+import lu.apwbd.storecoords.util.SectionIndex;
+import net.minecraft.core.BlockPos;
+import net.minecraft.nbt.Tag;
+import net.minecraft.nbt.TagTypes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Bulk import and export of stored positions as CSV ({@code x,y,z} per line), JSON lines
+ * ({@code {"x":..,"y":..,"z":..}} per line) or NBT (a compound holding a long array {@code positions}
+ * of packed positions).
+ * <p>
+ * Text imports are split into byte ranges at line boundaries and the ranges are parsed in parallel, each
+ * into its own set. The sets are merged once at the end, so duplicates within the file collapse before
+ * the manager sees them and the existing positions are checked by the single {@code storeAll} that
+ * follows. Exports are written step by step from a {@link SectionIndex.Cursor} and never copy the
+ * stored positions, so memory use stays flat however many positions are exported.
+ */
+public final class CoordsTransfer {
+
+    public enum Format {
+        CSV("csv"),
+        JSONL("jsonl"),
+        NBT("nbt");
+
+        public final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        /**
+         * @return the format matching the file's extension, or {@code null} if there is none;
+         *         {@code .json} is read as JSON lines
+         */
+        public static Format byFileName(String name) {
+            String lower = name.toLowerCase(Locale.ROOT);
+            if (lower.endsWith(".json")) return JSONL;
+            for (Format format : values()) {
+                if (lower.endsWith("." + format.extension)) return format;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The positions read from an import file.
+     */
+    public static final class ImportResult {
+        /** Every distinct position in the file, packed with {@code BlockPos.asLong()}. */
+        public final LongPosSet positions;
+        /** Lines that could not be read as a position. */
+        public final int skipped;
+
+        ImportResult(LongPosSet positions, int skipped) {
+            this.positions = positions;
+            this.skipped = skipped;
+        }
+    }
+
+    /** Ranges smaller than this are not worth a task of their own. */
+    private static final long MIN_RANGE_BYTES = 1 << 20;
+    private static final int READ_BUFFER = 1 << 16;
+    /** Longer lines cannot hold a position and are skipped without being buffered. */
+    private static final int MAX_LINE = 1024;
+
+    // the bit widths BlockPos.asLong packs each coordinate into
+    private static final int MAX_HORIZONTAL = (1 << 25) - 1;
+    private static final int MAX_VERTICAL = (1 << 11) - 1;
+
+    private static final String NBT_POSITIONS = "positions";
+    /** Offset of the long array's length: root type, empty root name, array type, array name. */
+    private static final int NBT_COUNT_OFFSET = 1 + 2 + 1 + 2 + NBT_POSITIONS.length();
+
+    private CoordsTransfer() {}
+
+    /**
+     * Reads every position from an import file. Blank lines and lines starting with a letter or
+     * {@code #} (headers, comments) are ignored; other lines that do not hold three integer coordinates
+     * are counted as skipped. Blocks the calling thread until all ranges are parsed.
+     *
+     * @param file the file to read; its extension selects the format
+     * @return the distinct positions of the file
+     * @throws IOException if the file cannot be read, has an unknown extension or is not valid NBT
+     */
+    public static ImportResult read(File file) throws IOException {
+        Format format = Format.byFileName(file.getName());
+        if (format == null) throw new IOException("Unknown import format: " + file.getName());
+        return format == Format.NBT ? readNbt(file) : readText(file, format == Format.JSONL);
+    }
+
+    private static ImportResult readText(File file, boolean json) throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            int ranges = (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), size / MIN_RANGE_BYTES));
+
+            Range[] parsed;
+            try {
+                parsed = IntStream.range(0, ranges).parallel()
+                        .mapToObj(i -> parseRange(ch, size * i / ranges, size * (i + 1) / ranges, json))
+                        .toArray(Range[]::new);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            // merge into the largest set so most positions are inserted only once
+            Range largest = parsed[0];
+            for (Range r : parsed) {
+                if (r.positions.size() > largest.positions.size()) largest = r;
+            }
+
+            LongPosSet merged = largest.positions;
+            int skipped = 0;
+            for (Range r : parsed) {
+                skipped += r.skipped;
+                if (r != largest) r.positions.forEach(merged::add);
+            }
+            return new ImportResult(merged, skipped);
+        }
+    }
+
+    /**
+     * Parses the lines that start within {@code [start, end)}. A line that started in the previous range
+     * is left to that range, and the last line is read past {@code end} if necessary.
+     */
+    private static Range parseRange(FileChannel ch, long start, long end, boolean json) {
+        Range range = new Range(json);
+        ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER);
+        byte[] line = new byte[MAX_LINE];
+        int length = 0;
+        boolean overlong = false;
+
+        try {
+            boolean discard = start > 0 && !startsLine(ch, start);
+            long filePos = start;
+
+            while (true) {
+                buf.clear();
+                int n = ch.read(buf, filePos);
+                if (n <= 0) break;
+
+                for (int i = 0; i < n; i++) {
+                    byte b = buf.get(i);
+                    if (b == '\n') {
+                        if (!discard) range.line(line, length, overlong);
+                        discard = false;
+                        length = 0;
+                        overlong = false;
+                        if (filePos + i + 1 >= end) return range;
+                    } else if (!discard) {
+                        if (length < line.length) line[length++] = b;
+                        else overlong = true;
+                    }
+                }
+                filePos += n;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // the file's last line, if it has no trailing newline
+        if (length > 0 || overlong) range.line(line, length, overlong);
+        return range;
+    }
+
+    private static boolean startsLine(FileChannel ch, long pos) throws IOException {
+        ByteBuffer one = ByteBuffer.allocate(1);
+        return ch.read(one, pos - 1) == 1 && one.get(0) == '\n';
+    }
+
+    /**
+     * Parse state and result of one byte range.
+     */
+    private static final class Range {
+        final LongPosSet positions = new LongPosSet();
+        final boolean json;
+        int skipped;
+
+        private final int[] xyz = new int[3];
+        /** Value of the last {@link #number}; its return value is the index after it. */
+        private int value;
+
+        Range(boolean json) {
+            this.json = json;
+        }
+
+        void line(byte[] line, int length, boolean overlong) {
+            if (overlong) {
+                skipped++;
+                return;
+            }
+
+            int i = skipBlank(line, 0, length);
+            if (i == length) return;
+
+            byte first = line[i];
+            if (json ? first == '[' || first == ']' : first == '#' || Character.isLetter(first)) return;
+
+            boolean ok = json ? parseJson(line, i, length) : parseCsv(line, i, length);
+            if (ok && inRange(xyz[0], xyz[1], xyz[2])) {
+                positions.add(BlockPos.asLong(xyz[0], xyz[1], xyz[2]));
+            } else {
+                skipped++;
+            }
+        }
+
+        /**
+         * Reads the first three fields, separated by commas, semicolons or whitespace. Further columns are
+         * ignored.
+         */
+        private boolean parseCsv(byte[] line, int i, int length) {
+            for (int field = 0; field < 3; field++) {
+                if (field > 0) {
+                    i = skipBlank(line, i, length);
+                    if (i < length && (line[i] == ',' || line[i] == ';')) i++;
+                    i = skipBlank(line, i, length);
+                }
+                i = number(line, i, length);
+                if (i < 0) return false;
+                xyz[field] = value;
+            }
+            return i == length || isSeparator(line[i]);
+        }
+
+        /**
+         * Picks the {@code x}, {@code y} and {@code z} members out of one flat JSON object. Other members
+         * are skipped; string values are never mistaken for keys since a key is followed by a colon.
+         */
+        private boolean parseJson(byte[] line, int i, int length) {
+            int found = 0;
+            while (i < length) {
+                if (line[i++] != '"') continue;
+
+                int keyStart = i;
+                while (i < length && line[i] != '"') {
+                    if (line[i] == '\\') i++;
+                    i++;
+                }
+                int keyLength = i - keyStart;
+                i = skipBlank(line, i + 1, length);
+                if (i >= length || line[i] != ':') continue;
+
+                int axis = keyLength == 1 ? line[keyStart] - 'x' : -1;
+                if (axis < 0 || axis > 2) continue;
+
+                i = number(line, skipBlank(line, i + 1, length), length);
+                if (i < 0) return false;
+                xyz[axis] = value;
+                found |= 1 << axis;
+            }
+            return found == 0b111;
+        }
+
+        /**
+         * Parses an optionally signed integer into {@link #value}. A fraction of zeros ({@code 12.0}) is
+         * accepted, since some tools write every number as a double.
+         *
+         * @return the index after the number, or {@code -1} if there is none or it overflows
+         */
+        private int number(byte[] line, int i, int length) {
+            boolean negative = i < length && line[i] == '-';
+            if (negative) i++;
+
+            int start = i;
+            long v = 0;
+            while (i < length && line[i] >= '0' && line[i] <= '9') {
+                v = v * 10 + (line[i++] - '0');
+                if (v > Integer.MAX_VALUE) return -1;
+            }
+            if (i == start) return -1;
+
+            if (i < length && line[i] == '.') {
+                i++;
+                while (i < length && line[i] == '0') i++;
+                if (i < length && line[i] >= '1' && line[i] <= '9') return -1;
+            }
+
+            value = (int) (negative ? -v : v);
+            return i;
+        }
+
+        private static boolean isSeparator(byte b) {
+            return b == ',' || b == ';' || b == ' ' || b == '\t' || b == '\r';
+        }
+
+        private static int skipBlank(byte[] line, int i, int length) {
+            while (i < length && (line[i] == ' ' || line[i] == '\t' || line[i] == '\r')) i++;
+            return i;
+        }
+    }
+
+    private static boolean inRange(int x, int y, int z) {
+        return Math.abs(x) <= MAX_HORIZONTAL && Math.abs(y) <= MAX_VERTICAL && Math.abs(z) <= MAX_HORIZONTAL;
+    }
+
+    /**
+     * Streams the long array out of an NBT file, compressed or not, without building the tag tree. Other
+     * tags in the root compound are skipped.
+     */
+    private static ImportResult readNbt(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(openMaybeCompressed(file))) {
+            if (in.readByte() != Tag.TAG_COMPOUND) throw new IOException(file.getName() + " is not an NBT compound");
+            in.readUTF();
+
+            LongPosSet positions = new LongPosSet();
+            while (true) {
+                byte type = in.readByte();
+                if (type == Tag.TAG_END) break;
+
+                String name = in.readUTF();
+                if (type == Tag.TAG_LONG_ARRAY && name.equals(NBT_POSITIONS)) {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) positions.add(in.readLong());
+                } else {
+                    TagTypes.getType(type).skip(in);
+                }
+            }
+            return new ImportResult(positions, 0);
+        } catch (EOFException e) {
+            throw new IOException(file.getName() + " ends before its last tag", e);
+        }
+    }
+
+    private static InputStream openMaybeCompressed(File file) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(new FileInputStream(file), READ_BUFFER);
+        in.mark(2);
+        boolean gzip = in.read() == 0x1F && in.read() == 0x8B;
+        in.reset();
+        return gzip ? new BufferedInputStream(new GZIPInputStream(in, READ_BUFFER), READ_BUFFER) : in;
+    }
+
+    /**
+     * Starts an export to {@code target}. The data goes to a temporary file that replaces the target only
+     * once {@link Exporter#finish()} succeeds.
+     *
+     * @param target the file to write
+     * @param format the format to write
+     * @return the open exporter
+     * @throws IOException if the temporary file cannot be created
+     */
+    public static Exporter export(File target, Format format) throws IOException {
+        Files.createDirectories(target.getAbsoluteFile().getParentFile().toPath());
+        return new Exporter(target, format);
+    }
+
+    /**
+     * An export in progress. Positions are written in listing order; since a {@link SectionIndex.Cursor}
+     * must not outlive a modification of the index, callers open a fresh cursor after {@link #last()} for
+     * every step.
+     */
+    public static final class Exporter {
+        private final File target;
+        private final File tmp;
+        private final Format format;
+        private final DataOutputStream out;
+        private final StringBuilder text = new StringBuilder(48);
+
+        private long last = SectionIndex.START;
+        private int written;
+
+        private Exporter(File target, Format format) throws IOException {
+            this.target = target;
+            this.tmp = new File(target.getPath() + ".tmp");
+            this.format = format;
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), READ_BUFFER));
+
+            try {
+                switch (format) {
+                    case CSV -> out.writeBytes("x,y,z\n");
+                    case NBT -> {
+                        out.writeByte(Tag.TAG_COMPOUND);
+                        out.writeUTF("");
+                        out.writeByte(Tag.TAG_LONG_ARRAY);
+                        out.writeUTF(NBT_POSITIONS);
+                        out.writeInt(0); // patched in finish()
+                    }
+                    default -> {}
+                }
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+        }
+
+        /**
+         * @return the last position written, or {@link SectionIndex#START} before the first
+         */
+        public long last() {
+            return last;
+        }
+
+        public int written() {
+            return written;
+        }
+
+        /**
+         * Writes up to {@code max} positions from {@code cursor}.
+         *
+         * @return {@code true} if the cursor is exhausted
+         */
+        public boolean write(SectionIndex.Cursor cursor, int max) throws IOException {
+            for (int i = 0; i < max && cursor.hasNext(); i++) {
+                long pos = cursor.next();
+                if (format == Format.NBT) {
+                    out.writeLong(pos);
+                } else {
+                    writeText(pos);
+                }
+                last = pos;
+                written++;
+            }
+            return !cursor.hasNext();
+        }
+
+        private void writeText(long pos) throws IOException {
+            text.setLength(0);
+            int x = BlockPos.getX(pos);
+            int y = BlockPos.getY(pos);
+            int z = BlockPos.getZ(pos);
+            if (format == Format.CSV) {
+                text.append(x).append(',').append(y).append(',').append(z).append('\n');
+            } else {
+                text.append("{\"x\":").append(x).append(",\"y\":").append(y).append(",\"z\":").append(z).append("}\n");
+            }
+            out.writeBytes(text.toString());
+        }
+
+        /**
+         * Completes the file and moves it into place.
+         */
+        public void finish() throws IOException {
+            try {
+                if (format == Format.NBT) out.writeByte(Tag.TAG_END);
+                out.close();
+
+                if (format == Format.NBT) {
+                    try (FileChannel ch = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+                        ch.write(ByteBuffer.allocate(4).putInt(0, written), NBT_COUNT_OFFSET);
+                    }
+                }
+                CoordsManager.moveIntoPlace(tmp, target);
+            } catch (IOException e) {
+                abort();
+                throw e;
+            }
+        }
+
+        /**
+         * Discards the export; the target is left as it was.
+         */
+        public void abort() {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // the file is deleted anyway
+            }
+            if (!tmp.delete() && tmp.exists()) tmp.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package lu.apwbd.storecoords.io;
+
+import lu.apwbd.storecoords.StoreCoords;
+import lu.apwbd.storecoords.metrics.Metrics;
+import lu.apwbd.storecoords.util.SectionIndex;
+import net.minecraft.world.level.ChunkPos;
+import org.h2.Driver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.LongConsumer;
+
+/**
+ * Stores positions in an embedded H2 database ({@code coords.mv.db}), one row per position, keyed by
+ * region (512x512 blocks, like vanilla region files) and packed position.
+ * <p>
+ * Every append is one transaction, so there is no journal to replay and nothing to compact, and a
+ * change never costs more than its own rows. The region leads the primary key, so the rows of one
+ * region are stored together and a {@link #query} is a range scan of the key: the store is
+ * {@linkplain #isRegionIndexed() region indexed}, and the manager only keeps the regions near the
+ * player in memory.
+ */
+final class DatabaseCoordStore implements CoordStore {
+
+    /** H2 adds {@code .mv.db} to this. */
+    private static final String DATABASE = "coords";
+    static final String DATABASE_FILE = DATABASE + ".mv.db";
+
+    /** Rows per JDBC batch. */
+    private static final int BATCH_ROWS = 4096;
+
+    private final File dir;
+    private final File file;
+
+    private Connection connection;
+
+    DatabaseCoordStore(File dir) {
+        this.dir = dir;
+        this.file = new File(dir, DATABASE_FILE);
+    }
+
+    @Override
+    public String getFileName() {
+        return file.getName();
+    }
+
+    @Override
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Opens the database on first use and creates the table if it is new. The driver is instantiated
+     * directly: mod jars are not visible to {@code DriverManager}.
+     */
+    private Connection connection() throws SQLException {
+        if (connection != null) return connection;
+
+        try {
+            Files.createDirectories(dir.toPath());
+        } catch (IOException e) {
+            throw new SQLException("Cannot create " + dir.getPath(), e);
+        }
+
+        // the repository closes the database from its own shutdown hook, after the last flush
+        String url = "jdbc:h2:file:" + new File(dir, DATABASE).getAbsolutePath() + ";DB_CLOSE_ON_EXIT=FALSE";
+        Connection c = new Driver().connect(url, new Properties());
+        try {
+            c.setAutoCommit(false);
+            try (Statement s = c.createStatement()) {
+                s.execute("CREATE TABLE IF NOT EXISTS positions ("
+                        + "region BIGINT NOT NULL, pos BIGINT NOT NULL, PRIMARY KEY (region, pos))");
+                s.execute("CREATE TABLE IF NOT EXISTS stamp (id INT PRIMARY KEY, generation BIGINT NOT NULL)");
+                s.execute("INSERT INTO stamp SELECT 0, 0 WHERE NOT EXISTS (SELECT 1 FROM stamp)");
+            }
+            c.commit();
+        } catch (SQLException e) {
+            c.close();
+            throw e;
+        }
+
+        connection = c;
+        return c;
+    }
+
+    @Override
+    public boolean load(SectionIndex target) {
+        try (Statement s = connection().createStatement()) {
+            s.setFetchSize(BATCH_ROWS);
+            try (ResultSet rows = s.executeQuery("SELECT pos FROM positions")) {
+                while (rows.next()) target.add(rows.getLong(1));
+            }
+            return true;
+        } catch (SQLException e) {
+            StoreCoords.LOGGER.error("Failed to load " + getFileName(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads the regions of {@code bounds} row by row. The keys of one row of regions form one range,
+     * except that the x coordinate is packed unsigned, so the regions west of x = 0 form a second one.
+     */
+    @Override
+    public boolean query(RegionBounds bounds, LongConsumer sink) {
+        try (PreparedStatement s = connection().prepareStatement(
+                "SELECT pos FROM positions WHERE region BETWEEN ? AND ?")) {
+            s.setFetchSize(BATCH_ROWS);
+            for (int z = bounds.minZ(); z <= bounds.maxZ(); z++) {
+                if (bounds.minX() < 0) {
+                    int to = Math.min(bounds.maxX(), -1);
+                    queryRange(s, ChunkPos.asLong(bounds.minX(), z), ChunkPos.asLong(to, z), sink);
+                }
+                if (bounds.maxX() >= 0) {
+                    int from = Math.max(bounds.minX(), 0);
+                    queryRange(s, ChunkPos.asLong(from, z), ChunkPos.asLong(bounds.maxX(), z), sink);
+                }
+            }
+            return true;
+        } catch (SQLException e) {
+            StoreCoords.LOGGER.error("Failed to query " + getFileName(), e);
+            return false;
+        }
+    }
+
+    private static void queryRange(PreparedStatement s, long from, long to, LongConsumer sink) throws SQLException {
+        s.setLong(1, from);
+        s.setLong(2, to);
+        try (ResultSet rows = s.executeQuery()) {
+            while (rows.next()) sink.accept(rows.getLong(1));
+        }
+    }
+
+    @Override
+    public boolean isRegionIndexed() {
+        return true;
+    }
+
+    /**
+     * Applies the batches in one transaction. Adds and removes go through separate statements, so the
+     * pending rows of one are executed before the other is used; otherwise a position added and removed
+     * within the same batch could end up in the wrong state.
+     */
+    @Override
+    public boolean append(List<CoordStore.Change> batch) {
+        long sizeBefore = file.length();
+        try {
+            Connection c = connection();
+            try (PreparedStatement add = c.prepareStatement("MERGE INTO positions KEY (region, pos) VALUES (?, ?)");
+                 PreparedStatement remove = c.prepareStatement("DELETE FROM positions WHERE region = ? AND pos = ?")) {
+                PreparedStatement current = null;
+                int rows = 0;
+
+                for (CoordStore.Change e : batch) {
+                    PreparedStatement next = e.added() ? add : remove;
+                    if (next != current && rows > 0) {
+                        current.executeBatch();
+                        rows = 0;
+                    }
+                    current = next;
+
+                    for (long p : e.positions()) {
+                        current.setLong(1, RegionBounds.regionKey(p));
+                        current.setLong(2, p);
+                        current.addBatch();
+                        if (++rows == BATCH_ROWS) {
+                            current.executeBatch();
+                            rows = 0;
+                        }
+                    }
+                }
+                if (rows > 0) current.executeBatch();
+                bumpGeneration(c);
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            StoreCoords.LOGGER.error("Failed to save " + getFileName(), e);
+            return false;
+        }
+
+        Metrics.recordBytesWritten(Math.max(0, file.length() - sizeBefore));
+        return true;
+    }
+
+    @Override
+    public boolean needsCompaction() {
+        return false;
+    }
+
+    @Override
+    public boolean replaceAll(long[] packed) {
+        long start = System.nanoTime();
+        try {
+            Connection c = connection();
+            try (Statement clear = c.createStatement();
+                 PreparedStatement insert = c.prepareStatement("INSERT INTO positions (region, pos) VALUES (?, ?)")) {
+                clear.executeUpdate("DELETE FROM positions");
+
+                for (int i = 0; i < packed.length; i++) {
+                    insert.setLong(1, RegionBounds.regionKey(packed[i]));
+                    insert.setLong(2, packed[i]);
+                    insert.addBatch();
+                    if ((i + 1) % BATCH_ROWS == 0) insert.executeBatch();
+                }
+                insert.executeBatch();
+                bumpGeneration(c);
+                c.commit();
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            StoreCoords.LOGGER.error("Failed to save " + getFileName(), e);
+            return false;
+        }
+
+        Metrics.SAVE.record(System.nanoTime() - start);
+        return true;
+    }
+
+    /**
+     * Counts every write in the same transaction, so the count changes exactly when the data does.
+     */
+    private static void bumpGeneration(Connection c) throws SQLException {
+        try (Statement s = c.createStatement()) {
+            s.executeUpdate("UPDATE stamp SET generation = generation + 1 WHERE id = 0");
+        }
+    }
+
+    /**
+     * Stamps the data with the write count kept in the database rather than with the file: H2 keeps
+     * writing its file after a commit, so a file stamp would never match this store's own writes.
+     * If the count cannot be read, the stamp matches nothing.
+     */
+    @Override
+    public long[] fileState() {
+        try (Statement s = connection().createStatement();
+             ResultSet rows = s.executeQuery("SELECT generation FROM stamp WHERE id = 0")) {
+            if (rows.next()) return new long[]{rows.getLong(1)};
+        } catch (SQLException e) {
+            StoreCoords.LOGGER.warn("Failed to read the write count of " + getFileName(), e);
+        }
+        return new long[]{-1L, System.nanoTime()};
+    }
+
+    @Override
+    public void retire() {
+        close();
+        try {
+            Files.move(file.toPath(), new File(dir, file.getName() + ".bak").toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            StoreCoords.LOGGER.error("Failed to move " + file.getName() + " aside after migration", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (connection == null) return;
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            StoreCoords.LOGGER.warn("Failed to close " + getFileName(), e);
+        }
+        connection = null;
+    }
+}
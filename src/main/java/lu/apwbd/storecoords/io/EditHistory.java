@@ -0,0 +1,153 @@
+package lu.apwbd.storecoords.io;
+
+/**
+ * Bounded undo/redo history of one partition's batch edits.
+ * <p>
+ * Each entry is the journal op of an edit and the packed positions it actually changed, exactly as
+ * {@link CoordsManager.BatchResult#changedPositions} reported them, so an entry costs eight bytes per
+ * position and nothing per entry beyond its array. An entry also keeps the metadata rows its positions
+ * had when they were last removed, counted against the byte budget, so that bringing them back by undo
+ * or redo restores their labels and categories. Entries live in a ring: once the entry count or the
+ * byte budget is exceeded, the oldest entries are forgotten. An edit too large for the byte budget on its
+ * own clears the history instead, so that an undo never silently skips over an edit.
+ * <p>
+ * Entries {@code [0, applied)} are in effect and can be undone; the ones after them can be redone until
+ * a new edit is recorded. Client thread only.
+ */
+final class EditHistory {
+
+    private byte[] ops;
+    private long[][] deltas;
+    private CoordsMetadata[] metadata;
+    /** Ring slot of the oldest entry. */
+    private int head;
+    private int size;
+    private int applied;
+    private long bytes;
+
+    /**
+     * Records a new edit, discarding everything that could still be redone.
+     *
+     * @param op         {@link CoordsJournal#OP_ADD} or {@link CoordsJournal#OP_REMOVE}
+     * @param positions  the positions the edit changed; kept as is and never modified
+     * @param dropped    metadata rows a removal dropped, or {@code null}
+     * @param maxEntries entry limit; {@code 0} disables the history
+     * @param maxBytes   byte limit for all entries together
+     */
+    void record(byte op, long[] positions, CoordsMetadata dropped, int maxEntries, long maxBytes) {
+        while (size > applied) forget(slot(--size));
+
+        long entryBytes = sizeOf(positions) + sizeOf(dropped);
+        if (maxEntries <= 0 || entryBytes > maxBytes) {
+            clear();
+            return;
+        }
+
+        if (deltas == null || deltas.length != maxEntries) resize(maxEntries);
+        while (size > 0 && (size == deltas.length || bytes + entryBytes > maxBytes)) dropOldest();
+
+        int s = slot(size++);
+        ops[s] = op;
+        deltas[s] = positions;
+        metadata[s] = dropped;
+        applied = size;
+        bytes += entryBytes;
+    }
+
+    /**
+     * @return the ring slot of the entry an undo would revert, or {@code -1} if there is none
+     */
+    int undoSlot() {
+        return applied > 0 ? slot(applied - 1) : -1;
+    }
+
+    /**
+     * @return the ring slot of the entry a redo would re-apply, or {@code -1} if there is none
+     */
+    int redoSlot() {
+        return applied < size ? slot(applied) : -1;
+    }
+
+    byte op(int slot) {
+        return ops[slot];
+    }
+
+    long[] positions(int slot) {
+        return deltas[slot];
+    }
+
+    /**
+     * @return the metadata rows the entry's positions had when they were last removed, or {@code null}
+     */
+    CoordsMetadata metadata(int slot) {
+        return metadata[slot];
+    }
+
+    /**
+     * Replaces the metadata kept for an entry after an undo or redo removed its positions again.
+     */
+    void setMetadata(int slot, CoordsMetadata dropped) {
+        bytes += sizeOf(dropped) - sizeOf(metadata[slot]);
+        metadata[slot] = dropped;
+    }
+
+    void undone() {
+        applied--;
+    }
+
+    void redone() {
+        applied++;
+    }
+
+    void clear() {
+        ops = null;
+        deltas = null;
+        metadata = null;
+        head = 0;
+        size = 0;
+        applied = 0;
+        bytes = 0;
+    }
+
+    private void resize(int capacity) {
+        while (size > capacity) dropOldest();
+
+        byte[] newOps = new byte[capacity];
+        long[][] newDeltas = new long[capacity][];
+        CoordsMetadata[] newMetadata = new CoordsMetadata[capacity];
+        for (int i = 0; i < size; i++) {
+            newOps[i] = ops[slot(i)];
+            newDeltas[i] = deltas[slot(i)];
+            newMetadata[i] = metadata[slot(i)];
+        }
+        ops = newOps;
+        deltas = newDeltas;
+        metadata = newMetadata;
+        head = 0;
+    }
+
+    private void dropOldest() {
+        forget(head);
+        head = (head + 1) % deltas.length;
+        size--;
+        if (applied > 0) applied--;
+    }
+
+    private void forget(int slot) {
+        bytes -= sizeOf(deltas[slot]) + sizeOf(metadata[slot]);
+        deltas[slot] = null;
+        metadata[slot] = null;
+    }
+
+    private int slot(int i) {
+        return (head + i) % deltas.length;
+    }
+
+    private static long sizeOf(long[] positions) {
+        return 16 + (long) positions.length * Long.BYTES;
+    }
+
+    private static long sizeOf(CoordsMetadata rows) {
+        return rows == null ? 0 : rows.estimateBytes();
+    }
+}
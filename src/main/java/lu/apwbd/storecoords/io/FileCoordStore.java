@@ -0,0 +1,235 @@
+package lu.apwbd.storecoords.io;
+
+import lu.apwbd.storecoords.StoreCoords;
+import lu.apwbd.storecoords.client.config.ClientConfig;
+import lu.apwbd.storecoords.metrics.Metrics;
+import lu.apwbd.storecoords.util.LongPosSet;
+import lu.apwbd.storecoords.util.SectionIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * The default store: a snapshot ({@code coords.yml} or {@code coords.bin}) plus an append-only change
+ * journal. Appends cost O(changed positions); once the journal outgrows
+ * {@code storage.journalCompactKb} it is folded into a fresh snapshot.
+ */
+final class FileCoordStore implements CoordStore {
+
+    private final File dir;
+    private final File yamlFile;
+    private final File binaryFile;
+    private final CoordsJournal journal;
+    private final Supplier<CoordsManager.Settings> settings;
+
+    /** Snapshot format chosen at load time; stays fixed until the next load. */
+    private ClientConfig.StorageFormat format = ClientConfig.StorageFormat.YAML;
+
+    FileCoordStore(File dir, Supplier<CoordsManager.Settings> settings) {
+        this.dir = dir;
+        this.settings = settings;
+        this.yamlFile = new File(dir, CoordsManager.SNAPSHOT_YAML);
+        this.binaryFile = new File(dir, CoordsManager.SNAPSHOT_BINARY);
+        this.journal = new CoordsJournal(new File(dir, CoordsManager.JOURNAL));
+    }
+
+    @Override
+    public String getFileName() {
+        return snapshotFile(format).getName();
+    }
+
+    @Override
+    public boolean exists() {
+        return yamlFile.exists() || binaryFile.exists() || journal.size() > 0;
+    }
+
+    /**
+     * Loads the snapshot in the configured format and replays the change journal on top of it.
+     * If only the other format's snapshot exists, it is migrated: read, written in the configured
+     * format, and renamed to {@code *.bak}. A missing snapshot counts as an empty set. When the
+     * database is configured, this store is only read to migrate from, in whichever format exists.
+     */
+    @Override
+    public boolean load(SectionIndex target) {
+        if (!ensureDirectoryExists()) return false;
+
+        ClientConfig.StorageFormat configured = settings.get().storageFormat();
+        if (configured == ClientConfig.StorageFormat.DATABASE) {
+            configured = binaryFile.exists() ? ClientConfig.StorageFormat.BINARY : ClientConfig.StorageFormat.YAML;
+        }
+        ClientConfig.StorageFormat other = configured == ClientConfig.StorageFormat.YAML
+                ? ClientConfig.StorageFormat.BINARY
+                : ClientConfig.StorageFormat.YAML;
+        format = configured;
+
+        File source = snapshotFile(configured);
+        boolean migrate = !source.exists() && snapshotFile(other).exists();
+        if (migrate) source = snapshotFile(other);
+
+        try {
+            readSnapshot(target, source, migrate ? other : configured);
+        } catch (IOException e) {
+            StoreCoords.LOGGER.error("Failed to load " + source.getName(), e);
+            return false;
+        }
+
+        if (!journal.replay(target::add, target::remove)) return false;
+
+        if (migrate) migrateFrom(target, source);
+        return true;
+    }
+
+    /**
+     * Writes the just loaded set in the configured format and moves the old snapshot aside. The old
+     * file is kept as a backup; if anything fails, it stays in place and is migrated again next time.
+     */
+    private void migrateFrom(SectionIndex index, File oldSnapshot) {
+        if (!replaceAll(index.positions().toArray())) return;
+
+        File backup = new File(oldSnapshot.getParentFile(), oldSnapshot.getName() + ".bak");
+        try {
+            Files.move(oldSnapshot.toPath(), backup.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            StoreCoords.LOGGER.info("Migrated {} stored positions from {} to {}",
+                    index.size(), oldSnapshot.getName(), getFileName());
+        } catch (IOException e) {
+            StoreCoords.LOGGER.error("Failed to move " + oldSnapshot.getName() + " aside after migration", e);
+        }
+    }
+
+    private static void readSnapshot(SectionIndex target, File source, ClientConfig.StorageFormat sourceFormat)
+            throws IOException {
+        if (!source.exists()) return;
+
+        switch (sourceFormat) {
+            case YAML -> YamlCoordsFile.read(source, target::add);
+            case BINARY -> BinaryCoordsFile.read(source, target::add);
+            default -> throw new IllegalArgumentException("Not a snapshot format: " + sourceFormat);
+        }
+    }
+
+    /**
+     * The files have no index, so this reads them as a whole, like {@link #load}, and keeps what lies
+     * within {@code bounds}.
+     */
+    @Override
+    public boolean query(RegionBounds bounds, LongConsumer sink) {
+        SectionIndex all = new SectionIndex();
+        if (!load(all)) return false;
+
+        LongPosSet positions = all.positions();
+        for (int s = positions.firstSlot(); s >= 0; s = positions.nextSlot(s)) {
+            long p = positions.keyAt(s);
+            if (bounds.contains(p)) sink.accept(p);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean append(List<CoordStore.Change> batch) {
+        if (!ensureDirectoryExists()) return false;
+
+        long sizeBefore = journal.size();
+        if (!journal.append(batch)) return false;
+        Metrics.recordBytesWritten(journal.size() - sizeBefore);
+        return true;
+    }
+
+    @Override
+    public boolean needsCompaction() {
+        return journal.size() >= settings.get().journalCompactBytes();
+    }
+
+    /**
+     * Writes {@code packed} as the new snapshot and empties the journal. The snapshot is written to a
+     * temporary file first and then moved into place, so a crash mid-write never leaves a torn snapshot
+     * behind. The manager only compacts with an empty write queue, so the snapshot holds exactly the old
+     * snapshot plus the journal; a crash between the move and the journal reset leaves a journal that is
+     * already contained in the snapshot, and replaying it again is harmless.
+     */
+    @Override
+    public boolean replaceAll(long[] packed) {
+        return writeSnapshot(packed) && journal.reset();
+    }
+
+    private boolean writeSnapshot(long[] packed) {
+        if (!ensureDirectoryExists()) return false;
+
+        File target = snapshotFile(format);
+        File tmp = new File(target.getParentFile(), target.getName() + ".tmp");
+        long start = System.nanoTime();
+
+        try {
+            switch (format) {
+                case YAML -> YamlCoordsFile.write(tmp, packed, packed.length);
+                case BINARY -> BinaryCoordsFile.write(tmp, packed, packed.length);
+                default -> throw new IllegalStateException("Not a snapshot format: " + format);
+            }
+        } catch (IOException e) {
+            StoreCoords.LOGGER.error("Failed to save " + target.getName(), e);
+            return false;
+        }
+
+        try {
+            CoordsManager.moveIntoPlace(tmp, target);
+            Metrics.SAVE.record(System.nanoTime() - start);
+            Metrics.recordBytesWritten(target.length());
+            return true;
+        } catch (IOException e) {
+            StoreCoords.LOGGER.error("Failed to replace " + target.getName(), e);
+            return false;
+        }
+    }
+
+    @Override
+    public long[] fileState() {
+        File journalFile = new File(dir, CoordsManager.JOURNAL);
+        return new long[]{
+                yamlFile.lastModified(), yamlFile.length(),
+                binaryFile.lastModified(), binaryFile.length(),
+                journalFile.lastModified(), journalFile.length()
+        };
+    }
+
+    @Override
+    public void retire() {
+        for (File f : new File[]{yamlFile, binaryFile, new File(dir, CoordsManager.JOURNAL)}) {
+            if (!f.exists()) continue;
+            try {
+                Files.move(f.toPath(), new File(dir, f.getName() + ".bak").toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                StoreCoords.LOGGER.error("Failed to move " + f.getName() + " aside after migration", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        // every write opens and closes its own file
+    }
+
+    private File snapshotFile(ClientConfig.StorageFormat format) {
+        return format == ClientConfig.StorageFormat.BINARY ? binaryFile : yamlFile;
+    }
+
+    /**
+     * Ensures that the storage directory exists, creating it (and any missing parents) if necessary.
+     *
+     * @return true if the directory exists or was successfully created; false otherwise
+     */
+    private boolean ensureDirectoryExists() {
+        if (dir.isDirectory()) return true;
+
+        try {
+            Files.createDirectories(dir.toPath());
+            return true;
+        } catch (IOException e) {
+            StoreCoords.LOGGER.error("Failed to create " + dir.getName(), e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package lu.apwbd.storecoords.io;
+
+import lu.apwbd.storecoords.util.StringPool;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary file holding a partition's {@link CoordsMetadata}, laid out column by column like the
+ * in-memory store.
+ * <p>
+ * Layout: {@code magic:int, rows:int, categories:int, (categories - 1) UTF strings, labels:int,
+ * (labels - 1) UTF strings, rows positions:long, rows category ids:int, rows label ids:int,
+ * rows creation times:long, crc:int}. String tables start at id 1; id 0 means none. The CRC covers
+ * everything before it.
+ */
+final class MetadataFile {
+
+    private static final int MAGIC = 0x53434d31; // "SCM1"
+    /** Bytes per row: position, category id, label id and creation time. */
+    private static final int ROW_BYTES = 8 + 4 + 4 + 8;
+
+    private MetadataFile() {}
+
+    /**
+     * Reads the file into {@code target}, which must be empty.
+     *
+     * @throws IOException if the file cannot be read, has an unknown header, counts that do not fit its
+     *                     length or fails its checksum
+     */
+    static void read(File file, CoordsMetadata target) throws IOException {
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file), 1 << 16), crc))) {
+            if (in.readInt() != MAGIC) throw new IOException(file.getName() + " has an unknown header");
+            int rows = in.readInt();
+            // checked before allocating, so a corrupt count fails the load instead of exhausting the heap
+            if (rows < 0 || rows > file.length() / ROW_BYTES) {
+                throw new IOException(file.getName() + " claims " + rows + " rows");
+            }
+
+            int[] categoryIds = readPool(in, target.categories(), file);
+            int[] labelIds = readPool(in, target.labels(), file);
+
+            long[] positions = new long[rows];
+            for (int i = 0; i < rows; i++) positions[i] = in.readLong();
+            int[] categories = new int[rows];
+            for (int i = 0; i < rows; i++) categories[i] = remap(categoryIds, in.readInt(), file);
+            int[] labels = new int[rows];
+            for (int i = 0; i < rows; i++) labels[i] = remap(labelIds, in.readInt(), file);
+
+            for (int i = 0; i < rows; i++) target.put(positions[i], categories[i], labels[i], in.readLong());
+
+            int expected = (int) crc.getValue();
+            if (in.readInt() != expected) throw new IOException(file.getName() + " failed its checksum");
+        } catch (EOFException e) {
+            throw new IOException(file.getName() + " ends before its last entry", e);
+        }
+    }
+
+    /**
+     * Writes {@code metadata}, which should be a detached {@link CoordsMetadata#copy()}.
+     */
+    static void write(File file, CoordsMetadata metadata) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileOutputStream stream = new FileOutputStream(file)) {
+            DataOutputStream out = new DataOutputStream(
+                    new CheckedOutputStream(new BufferedOutputStream(stream, 1 << 16), crc));
+
+            int rows = metadata.size();
+            out.writeInt(MAGIC);
+            out.writeInt(rows);
+
+            writePool(out, metadata.categories());
+            writePool(out, metadata.labels());
+
+            for (int i = 0; i < rows; i++) out.writeLong(metadata.positionAt(i));
+            for (int i = 0; i < rows; i++) out.writeInt(metadata.categoryAt(i));
+            for (int i = 0; i < rows; i++) out.writeInt(metadata.labelAt(i));
+            for (int i = 0; i < rows; i++) out.writeLong(metadata.createdAt(i));
+
+            out.flush();
+            int checksum = (int) crc.getValue();
+            out.writeInt(checksum);
+            out.flush();
+            stream.getFD().sync();
+        }
+    }
+
+    private static void writePool(DataOutputStream out, StringPool pool) throws IOException {
+        out.writeInt(pool.size());
+        for (int id = 1; id < pool.size(); id++) out.writeUTF(pool.get(id));
+    }
+
+    /**
+     * Interns the file's string table into {@code pool}.
+     *
+     * @return the pool id for each file id
+     */
+    private static int[] readPool(DataInputStream in, StringPool pool, File file) throws IOException {
+        int count = in.readInt();
+        // every string takes at least its two length bytes
+        if (count < 1 || count > file.length() / 2) {
+            throw new IOException("Malformed string table in " + file.getName());
+        }
+
+        int[] ids = new int[count];
+        for (int id = 1; id < count; id++) ids[id] = pool.intern(in.readUTF());
+        return ids;
+    }
+
+    private static int remap(int[] ids, int fileId, File file) throws IOException {
+        if (fileId < 0 || fileId >= ids.length) throw new IOException(file.getName() + " refers to an unknown string");
+        return ids[fileId];
+    }
+}
@@ -0,0 +1,55 @@
+package lu.apwbd.storecoords.io;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.ChunkPos;
+
+/**
+ * A rectangle of regions, inclusive on both ends. A region is a 512x512 block column, like a vanilla
+ * region file, and is identified by {@link #regionKey}. Stores that keep their positions by region
+ * answer {@link CoordStore#query} for such a rectangle from an index.
+ */
+public record RegionBounds(int minX, int minZ, int maxX, int maxZ) {
+
+    /** Blocks to region coordinates. */
+    public static final int SHIFT = 9;
+
+    /**
+     * @param pos a packed position ({@code BlockPos.asLong()})
+     * @return the key of the region holding {@code pos}, packed like {@link ChunkPos#asLong(int, int)}
+     */
+    public static long regionKey(long pos) {
+        return ChunkPos.asLong(BlockPos.getX(pos) >> SHIFT, BlockPos.getZ(pos) >> SHIFT);
+    }
+
+    /**
+     * @return the single region with the given {@link #regionKey key}
+     */
+    public static RegionBounds of(long regionKey) {
+        int x = ChunkPos.getX(regionKey);
+        int z = ChunkPos.getZ(regionKey);
+        return new RegionBounds(x, z, x, z);
+    }
+
+    /**
+     * @param radius regions on each side of the centre region
+     * @return the regions within {@code radius} of the region holding the given block column
+     */
+    public static RegionBounds around(int blockX, int blockZ, int radius) {
+        int x = blockX >> SHIFT;
+        int z = blockZ >> SHIFT;
+        return new RegionBounds(x - radius, z - radius, x + radius, z + radius);
+    }
+
+    public boolean containsRegion(long regionKey) {
+        int x = ChunkPos.getX(regionKey);
+        int z = ChunkPos.getZ(regionKey);
+        return x >= minX && x <= maxX && z >= minZ && z <= maxZ;
+    }
+
+    /**
+     * @param pos a packed position ({@code BlockPos.asLong()})
+     */
+    public boolean contains(long pos) {
+        return containsRegion(regionKey(pos));
+    }
+}
@@ -0,0 +1,124 @@
+package lu.apwbd.storecoords.io;
+
+import lu.apwbd.storecoords.StoreCoords;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches one partition directory for changes to its snapshot and journal files and reports them,
+ * debounced, so that a burst of writes (an editor saving, a sync tool copying) causes one reload.
+ * <p>
+ * The watcher cannot tell the mod's own writes from external ones; {@link CoordsManager#reloadIfChanged}
+ * filters those out by comparing file states. Temporary files written during a save are ignored here.
+ * Runs on its own daemon thread; the callback is invoked on that thread.
+ */
+public final class StorageWatcher {
+
+    private static final Set<String> WATCHED = Set.of(
+            CoordsManager.SNAPSHOT_YAML, CoordsManager.SNAPSHOT_BINARY, CoordsManager.JOURNAL);
+
+    /** Quiet period after the last event before the change is reported. */
+    private static final long DEBOUNCE_MILLIS = 500;
+
+    private WatchService service;
+
+    private volatile WatchKey key;
+    private volatile Runnable onChange;
+
+    /**
+     * Starts watching {@code dir}, replacing the previously watched directory. The directory is created
+     * if it does not exist yet.
+     *
+     * @param dir      the partition directory
+     * @param onChange called on the watcher thread after files in {@code dir} changed
+     */
+    public synchronized void watch(File dir, Runnable onChange) {
+        stopWatching();
+
+        try {
+            if (service == null) start();
+            Files.createDirectories(dir.toPath());
+            this.onChange = onChange;
+            this.key = dir.toPath().register(service,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            StoreCoords.LOGGER.warn("Cannot watch {} for external changes", dir.getPath(), e);
+        }
+    }
+
+    /**
+     * Stops watching the current directory, if any.
+     */
+    public synchronized void stopWatching() {
+        WatchKey current = key;
+        key = null;
+        onChange = null;
+        if (current != null) current.cancel();
+    }
+
+    private void start() throws IOException {
+        service = FileSystems.getDefault().newWatchService();
+        Thread thread = new Thread(this::run, "StoreCoords-Watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey k = service.take();
+                boolean relevant = drain(k);
+
+                // collect the rest of the burst before reporting it once
+                while (relevant) {
+                    WatchKey next = service.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+                    if (next == null) break;
+                    drain(next);
+                }
+
+                Runnable callback = onChange;
+                if (relevant && callback != null) {
+                    try {
+                        callback.run();
+                    } catch (RuntimeException e) {
+                        StoreCoords.LOGGER.error("Handling an external coords change failed", e);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // shutting down
+        }
+    }
+
+    /**
+     * Consumes the key's events and re-arms it.
+     *
+     * @return {@code true} if any event concerns a watched file of the current directory
+     */
+    private boolean drain(WatchKey k) {
+        boolean relevant = false;
+        for (WatchEvent<?> event : k.pollEvents()) {
+            if (k != key) continue;
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                relevant = true;
+            } else if (event.context() instanceof Path name && WATCHED.contains(name.toString())) {
+                relevant = true;
+            }
+        }
+        k.reset();
+        return relevant;
+    }
+}
@@ -0,0 +1,179 @@
+package lu.apwbd.storecoords.io;
+
+import net.minecraft.core.BlockPos;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.ScalarEvent;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * The original human-readable snapshot format ({@code index -> {x,y,z}}). Still the default and
+ * the format used to migrate into and out of the binary snapshot.
+ */
+final class YamlCoordsFile {
+
+    private YamlCoordsFile() {}
+
+    /**
+     * Reads all positions from the given YAML file. Entries that are not a map with numeric
+     * {@code x}, {@code y} and {@code z} values are skipped, as is a document that is empty or
+     * not a map at all.
+     * <p>
+     * The file is consumed as a stream of parser events rather than composed into a node tree, so
+     * memory use does not grow with the number of entries beyond what {@code sink} keeps.
+     *
+     * @param file the file to read
+     * @param sink receives each position, packed with {@code BlockPos.asLong()}
+     * @throws IOException if the file cannot be read or is not valid YAML
+     */
+    static void read(File file, LongConsumer sink) throws IOException {
+        try (Reader reader = new InputStreamReader(
+                new BufferedInputStream(new FileInputStream(file)), StandardCharsets.UTF_8)) {
+            Iterator<Event> events = new Yaml().parse(reader).iterator();
+
+            Event root = nextNode(events);
+            if (root == null || !root.is(Event.ID.MappingStart)) return;
+
+            while (events.hasNext()) {
+                Event key = events.next();
+                if (key.is(Event.ID.MappingEnd)) return;
+                skip(key, events);
+
+                Event value = events.next();
+                if (value.is(Event.ID.MappingStart)) {
+                    readEntry(events, sink);
+                } else {
+                    skip(value, events);
+                }
+            }
+        } catch (YAMLException e) {
+            throw new IOException("Malformed YAML in " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Reads one {@code {x, y, z}} map whose start event has already been consumed, up to and including
+     * its end event.
+     */
+    private static void readEntry(Iterator<Event> events, LongConsumer sink) {
+        Number x = null, y = null, z = null;
+
+        while (true) {
+            Event key = events.next();
+            if (key.is(Event.ID.MappingEnd)) break;
+
+            String name = key instanceof ScalarEvent scalar ? scalar.getValue() : null;
+            skip(key, events);
+
+            Event value = events.next();
+            if (!(value instanceof ScalarEvent scalar) || name == null) {
+                skip(value, events);
+                continue;
+            }
+
+            switch (name) {
+                case "x" -> x = number(scalar);
+                case "y" -> y = number(scalar);
+                case "z" -> z = number(scalar);
+                default -> {}
+            }
+        }
+
+        if (x == null || y == null || z == null) return;
+        sink.accept(BlockPos.asLong(x.intValue(), y.intValue(), z.intValue()));
+    }
+
+    /**
+     * @return the first node event of the first document, or {@code null} if the stream holds none
+     */
+    private static Event nextNode(Iterator<Event> events) {
+        while (events.hasNext()) {
+            Event e = events.next();
+            if (e.is(Event.ID.StreamStart) || e.is(Event.ID.DocumentStart)) continue;
+            if (e.is(Event.ID.DocumentEnd) || e.is(Event.ID.StreamEnd)) return null;
+            return e;
+        }
+        return null;
+    }
+
+    /**
+     * Consumes the rest of the node that starts with {@code start}; a no-op for scalars and aliases.
+     */
+    private static void skip(Event start, Iterator<Event> events) {
+        if (!start.is(Event.ID.MappingStart) && !start.is(Event.ID.SequenceStart)) return;
+
+        int depth = 1;
+        while (depth > 0) {
+            Event e = events.next();
+            if (e.is(Event.ID.MappingStart) || e.is(Event.ID.SequenceStart)) depth++;
+            else if (e.is(Event.ID.MappingEnd) || e.is(Event.ID.SequenceEnd)) depth--;
+        }
+    }
+
+    /**
+     * Resolves a scalar the way SnakeYAML's default constructor would for {@code int} and {@code float}
+     * values. Quoted scalars are strings and therefore not numbers.
+     */
+    private static Number number(ScalarEvent scalar) {
+        if (scalar.getScalarStyle() != DumperOptions.ScalarStyle.PLAIN) return null;
+
+        String value = scalar.getValue().replace("_", "");
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            double d = Double.parseDouble(value);
+            return Double.isFinite(d) ? d : null;
+        } catch (NumberFormatException ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the given positions to the file, each as a map containing its x, y and z coordinates.
+     *
+     * @param file      the target file, usually a temporary file that is moved into place afterwards
+     * @param packed    packed positions ({@code BlockPos.asLong()})
+     * @param count     number of valid entries in {@code packed}
+     * @throws IOException if the file cannot be written
+     */
+    static void write(File file, long[] packed, int count) throws IOException {
+        Map<Integer, Object> out = new LinkedHashMap<>();
+        int index = 1;
+
+        for (int i = 0; i < count; i++) {
+            long p = packed[i];
+            Map<String, Object> coords = new LinkedHashMap<>(3);
+            coords.put("x", BlockPos.getX(p));
+            coords.put("y", BlockPos.getY(p));
+            coords.put("z", BlockPos.getZ(p));
+            out.put(index++, coords);
+        }
+
+        try (FileOutputStream stream = new FileOutputStream(file);
+             Writer writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8)) {
+            DumperOptions options = new DumperOptions();
+            options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+            new Yaml(options).dump(out, writer);
+            writer.flush();
+            stream.getFD().sync();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package lu.apwbd.storecoords.metrics;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Fixed-size latency histogram with power-of-two buckets, so recording is O(1) and allocation free
+ * and percentiles are exact to within a factor of two. Bucket {@code i} holds durations in
+ * {@code [2^i, 2^(i+1))} nanoseconds. Thread-safe.
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 40;
+
+    private final long[] buckets = new long[BUCKETS];
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+    private long lastNanos;
+
+    public synchronized void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        int bucket = Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(Math.max(1L, nanos)));
+        buckets[bucket]++;
+        count++;
+        totalNanos += nanos;
+        lastNanos = nanos;
+        if (nanos > maxNanos) maxNanos = nanos;
+    }
+
+    public synchronized long count() {
+        return count;
+    }
+
+    public synchronized long lastNanos() {
+        return lastNanos;
+    }
+
+    public synchronized long maxNanos() {
+        return maxNanos;
+    }
+
+    public synchronized long meanNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. {@code 0.99}
+     * @return the upper bound of the bucket holding the given quantile, capped at the maximum seen
+     */
+    public synchronized long percentileNanos(double quantile) {
+        if (count == 0) return 0;
+
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= rank) return Math.min(maxNanos, (1L << (i + 1)) - 1);
+        }
+        return maxNanos;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(buckets, 0);
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+        lastNanos = 0;
+    }
+
+    /**
+     * @return e.g. {@code "avg 0.12 p99 0.51 max 3.20 ms (n=1234)"}
+     */
+    public synchronized String summary() {
+        return String.format(Locale.ROOT, "avg %.2f p99 %.2f max %.2f ms (n=%d)",
+                millis(meanNanos()), millis(percentileNanos(0.99)), millis(maxNanos), count);
+    }
+
+    static double millis(long nanos) {
+        return nanos / 1_000_000.0D;
+    }
+}
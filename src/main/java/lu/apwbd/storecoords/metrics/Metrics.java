@@ -0,0 +1,79 @@
+package lu.apwbd.storecoords.metrics;
+
+import lu.apwbd.storecoords.StoreCoords;
+import lu.apwbd.storecoords.util.SectionIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide counters and latency histograms of the mod, shown on the F3 screen and dumped by
+ * {@code /storecoords metrics}. Recording is cheap enough to stay enabled all the time.
+ */
+public final class Metrics {
+
+    /** Full load of a partition: snapshot read plus journal replay. */
+    public static final LatencyHistogram LOAD = new LatencyHistogram();
+    /** Every persisted write: journal appends, snapshot rewrites and compactions. */
+    public static final LatencyHistogram SAVE = new LatencyHistogram();
+    /** CPU time of {@code BlockHighlighter.onRenderStage} per frame it actually renders in. */
+    public static final LatencyHistogram FRAME = new LatencyHistogram();
+
+    private static final AtomicLong BYTES_WRITTEN = new AtomicLong();
+
+    // last rendered frame; written and read on the render thread
+    private static int boxesConsidered;
+    private static int boxesDrawn;
+
+    private Metrics() {}
+
+    public static void recordBytesWritten(long bytes) {
+        if (bytes > 0) BYTES_WRITTEN.addAndGet(bytes);
+    }
+
+    public static long bytesWritten() {
+        return BYTES_WRITTEN.get();
+    }
+
+    /**
+     * @param nanos      time spent in the render handler
+     * @param considered positions inside the sections that were looked at
+     * @param drawn      boxes actually emitted or drawn from a cached buffer
+     */
+    public static void recordFrame(long nanos, int considered, int drawn) {
+        FRAME.record(nanos);
+        boxesConsidered = considered;
+        boxesDrawn = drawn;
+    }
+
+    /**
+     * Formats the current numbers, one line per topic.
+     *
+     * @param index         the active partition's positions, or {@code null} outside a world
+     * @param indexBytes    memory estimate of {@code index}, computed by the caller since it is not free
+     * @param cachedBuffers number of section vertex buffers the highlighter holds
+     */
+    public static List<String> report(SectionIndex index, long indexBytes, int cachedBuffers) {
+        List<String> lines = new ArrayList<>(4);
+        if (index != null) {
+            lines.add(String.format(Locale.ROOT, "StoreCoords: %d stored in %d sections, ~%.1f MiB",
+                    index.size(), index.sectionCount(), indexBytes / (1024.0D * 1024.0D)));
+        }
+        lines.add(String.format(Locale.ROOT, "SC load: last %.2f ms, %s",
+                LatencyHistogram.millis(LOAD.lastNanos()), LOAD.summary()));
+        lines.add(String.format(Locale.ROOT, "SC save: %s, %.1f KiB written",
+                SAVE.summary(), BYTES_WRITTEN.get() / 1024.0D));
+        lines.add(String.format(Locale.ROOT, "SC frame: %s, boxes %d/%d, buffers %d",
+                FRAME.summary(), boxesDrawn, boxesConsidered, cachedBuffers));
+        return lines;
+    }
+
+    /**
+     * Writes the current numbers to the log.
+     */
+    public static void dump(SectionIndex index, long indexBytes, int cachedBuffers) {
+        for (String line : report(index, indexBytes, cachedBuffers)) StoreCoords.LOGGER.info(line);
+    }
+}
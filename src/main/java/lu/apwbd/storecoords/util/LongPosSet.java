@@ -0,0 +1,232 @@
+package lu.apwbd.storecoords.util;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Open-addressing hash set of packed block positions ({@code BlockPos.asLong()}).
+ * <p>
+ * Keys live in a single {@code long[]} with linear probing and backward-shift deletion, so there
+ * is no per-entry object and {@link #add}, {@link #remove} and {@link #contains} never allocate
+ * (apart from growing the table). {@code 0} is used as the empty-slot marker; the position it
+ * encodes ({@code 0, 0, 0}) is tracked with a separate flag.
+ * <p>
+ * Allocation-free iteration goes through slots:
+ * <pre>{@code
+ * for (int s = set.firstSlot(); s >= 0; s = set.nextSlot(s)) {
+ *     long packed = set.keyAt(s);
+ * }
+ * }</pre>
+ * Slots are invalidated by any modification. Not thread-safe.
+ */
+public final class LongPosSet {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75F;
+
+    private long[] keys;
+    private int mask;
+    private int size;
+    private int maxFill;
+    private boolean containsZero;
+
+    public LongPosSet() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongPosSet(int expected) {
+        allocate(tableSizeFor(expected));
+    }
+
+    public LongPosSet(LongPosSet other) {
+        this.keys = other.keys.clone();
+        this.mask = other.mask;
+        this.size = other.size;
+        this.maxFill = other.maxFill;
+        this.containsZero = other.containsZero;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(long key) {
+        if (key == 0) return containsZero;
+
+        int i = slotFor(key);
+        long k;
+        while ((k = keys[i]) != 0) {
+            if (k == key) return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return {@code true} if the key was not present before
+     */
+    public boolean add(long key) {
+        if (key == 0) {
+            if (containsZero) return false;
+            containsZero = true;
+            size++;
+            return true;
+        }
+
+        int i = slotFor(key);
+        long k;
+        while ((k = keys[i]) != 0) {
+            if (k == key) return false;
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        if (++size > maxFill) rehash(keys.length * 2);
+        return true;
+    }
+
+    /**
+     * @return {@code true} if the key was present
+     */
+    public boolean remove(long key) {
+        if (key == 0) {
+            if (!containsZero) return false;
+            containsZero = false;
+            size--;
+            return true;
+        }
+
+        int i = slotFor(key);
+        long k;
+        while ((k = keys[i]) != 0) {
+            if (k == key) {
+                size--;
+                shiftKeys(i);
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public void clear() {
+        if (size == 0) return;
+        Arrays.fill(keys, 0L);
+        containsZero = false;
+        size = 0;
+    }
+
+    /**
+     * @return the first occupied slot, or {@code -1} if the set is empty
+     */
+    public int firstSlot() {
+        return nextSlot(-1);
+    }
+
+    /**
+     * @return the next occupied slot after {@code slot}, or {@code -1} if there is none
+     */
+    public int nextSlot(int slot) {
+        for (int i = slot + 1; i < keys.length; i++) {
+            if (keys[i] != 0) return i;
+        }
+        // the zero key is reported as one virtual slot past the end of the table
+        if (slot < keys.length && containsZero) return keys.length;
+        return -1;
+    }
+
+    public long keyAt(int slot) {
+        return slot == keys.length ? 0L : keys[slot];
+    }
+
+    public void forEach(LongConsumer action) {
+        if (containsZero) action.accept(0L);
+        for (long k : keys) {
+            if (k != 0) action.accept(k);
+        }
+    }
+
+    /**
+     * Copies all keys into {@code dest} starting at index 0.
+     *
+     * @param dest array with room for at least {@link #size()} entries
+     * @return the number of keys written
+     */
+    public int copyTo(long[] dest) {
+        int n = 0;
+        if (containsZero) dest[n++] = 0L;
+        for (long k : keys) {
+            if (k != 0) dest[n++] = k;
+        }
+        return n;
+    }
+
+    public long[] toArray() {
+        long[] out = new long[size];
+        copyTo(out);
+        return out;
+    }
+
+    /**
+     * @return approximate retained heap size in bytes, not counting the object header
+     */
+    public long estimateBytes() {
+        return 16L + (long) keys.length * Long.BYTES;
+    }
+
+    private int slotFor(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return (int) (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Backward-shift deletion: moves later entries of the probe chain into the freed slot so lookups
+     * never need tombstones.
+     */
+    private void shiftKeys(int pos) {
+        int last;
+        long k;
+        while (true) {
+            last = pos;
+            pos = (pos + 1) & mask;
+            while (true) {
+                if ((k = keys[pos]) == 0) {
+                    keys[last] = 0;
+                    return;
+                }
+                int slot = slotFor(k);
+                if (last <= pos ? (last >= slot || slot > pos) : (last >= slot && slot > pos)) break;
+                pos = (pos + 1) & mask;
+            }
+            keys[last] = k;
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] old = keys;
+        allocate(newCapacity);
+        for (long k : old) {
+            if (k == 0) continue;
+            int i = slotFor(k);
+            while (keys[i] != 0) i = (i + 1) & mask;
+            keys[i] = k;
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        mask = capacity - 1;
+        maxFill = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int expected) {
+        int needed = (int) Math.ceil(Math.max(expected, 1) / LOAD_FACTOR);
+        int capacity = Integer.highestOneBit(Math.max(needed, MIN_CAPACITY) - 1) << 1;
+        return Math.max(capacity, MIN_CAPACITY);
+    }
+}
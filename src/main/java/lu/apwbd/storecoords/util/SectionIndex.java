@@ -0,0 +1,607 @@
+package lu.apwbd.storecoords.util;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import it.unimi.dsi.fastutil.longs.LongBidirectionalIterator;
+import it.unimi.dsi.fastutil.longs.LongRBTreeSet;
+import it.unimi.dsi.fastutil.objects.ObjectCollection;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Stored positions indexed by chunk section (16x16x16 blocks).
+ * <p>
+ * Keeps a flat {@link LongPosSet} for O(1) membership and whole-set iteration, plus one bucket per
+ * non-empty section so that spatial passes (rendering, queries) only touch the sections near a point
+ * instead of every stored position. Positions are packed with {@code BlockPos.asLong()}, section keys
+ * with {@code SectionPos.asLong()}. Not thread-safe.
+ */
+public final class SectionIndex {
+
+    /**
+     * The positions stored in one chunk section, in no particular order.
+     */
+    public static final class Section {
+        private final long key;
+        private long[] positions = new long[4];
+        private int size;
+
+        private Section(long key) {
+            this.key = key;
+        }
+
+        public long key() {
+            return key;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long get(int i) {
+            return positions[i];
+        }
+
+        public int minX() {
+            return SectionPos.sectionToBlockCoord(SectionPos.x(key));
+        }
+
+        public int minY() {
+            return SectionPos.sectionToBlockCoord(SectionPos.y(key));
+        }
+
+        public int minZ() {
+            return SectionPos.sectionToBlockCoord(SectionPos.z(key));
+        }
+
+        /**
+         * @return squared distance from the given block position to the closest point of this section
+         */
+        public long distSqr(int x, int y, int z) {
+            long dx = axisDistance(x, minX());
+            long dy = axisDistance(y, minY());
+            long dz = axisDistance(z, minZ());
+            return dx * dx + dy * dy + dz * dz;
+        }
+
+        private static long axisDistance(int v, int min) {
+            if (v < min) return min - v;
+            if (v > min + 15) return v - (min + 15);
+            return 0;
+        }
+
+        private void add(long pos) {
+            if (size == positions.length) positions = Arrays.copyOf(positions, size * 2);
+            positions[size++] = pos;
+        }
+
+        private void remove(long pos) {
+            for (int i = 0; i < size; i++) {
+                if (positions[i] == pos) {
+                    positions[i] = positions[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Passed to {@link #listing(long)} to start at the first position. */
+    public static final long START = Long.MIN_VALUE;
+
+    private final LongPosSet all = new LongPosSet();
+    private final Long2ObjectOpenHashMap<Section> sections = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * Section keys in listing order, kept in step with {@link #sections}. It only changes when a section
+     * gains its first or loses its last position, so keeping it costs O(log sections) per new section.
+     */
+    private final LongRBTreeSet order = new LongRBTreeSet(SectionIndex::compareSections);
+
+    public static long sectionKey(long pos) {
+        return SectionPos.asLong(
+                SectionPos.blockToSectionCoord(BlockPos.getX(pos)),
+                SectionPos.blockToSectionCoord(BlockPos.getY(pos)),
+                SectionPos.blockToSectionCoord(BlockPos.getZ(pos)));
+    }
+
+    public int size() {
+        return all.size();
+    }
+
+    public boolean isEmpty() {
+        return all.isEmpty();
+    }
+
+    public boolean contains(long pos) {
+        return all.contains(pos);
+    }
+
+    /**
+     * @return {@code true} if the position was not present before
+     */
+    public boolean add(long pos) {
+        if (!all.add(pos)) return false;
+
+        long key = sectionKey(pos);
+        Section section = sections.get(key);
+        if (section == null) {
+            section = new Section(key);
+            sections.put(key, section);
+            order.add(key);
+        }
+        section.add(pos);
+        return true;
+    }
+
+    /**
+     * @return {@code true} if the position was present
+     */
+    public boolean remove(long pos) {
+        if (!all.remove(pos)) return false;
+
+        long key = sectionKey(pos);
+        Section section = sections.get(key);
+        if (section != null) {
+            section.remove(pos);
+            if (section.size == 0) {
+                sections.remove(key);
+                order.remove(key);
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        all.clear();
+        sections.clear();
+        order.clear();
+    }
+
+    /**
+     * @return the flat set of all positions; read-only for callers
+     */
+    public LongPosSet positions() {
+        return all;
+    }
+
+    public int sectionCount() {
+        return sections.size();
+    }
+
+    /**
+     * @return the section with the given {@code SectionPos.asLong()} key, or {@code null} if it holds no positions
+     */
+    public Section section(long key) {
+        return sections.get(key);
+    }
+
+    public ObjectCollection<Section> sections() {
+        return sections.values();
+    }
+
+    /**
+     * Returns a cursor over the stored positions in listing order: by region (32x32 chunks, x then z),
+     * then by section within the region (x, z, then y), then by block coordinate (x, y, then z). The order
+     * depends only on the positions, so a listing can be resumed from the last position it returned even
+     * if entries were added or removed in between.
+     * <p>
+     * Nothing is copied or sorted up front: sections are reached through the ordered key set that
+     * {@link #add} and {@link #remove} keep up to date, and only the section currently being read is
+     * sorted. Opening a cursor costs O(log sections), so the first page costs the same however many
+     * positions are stored. The cursor reads the live index and must not be used across modifications.
+     *
+     * @param after the last position of the previous page, or {@link #START}
+     * @return a cursor positioned just after {@code after}
+     */
+    public Cursor listing(long after) {
+        return new Cursor(after);
+    }
+
+    /**
+     * Forward-only, read-only iteration over the index in listing order. See {@link #listing(long)}.
+     */
+    public final class Cursor {
+        private final LongBidirectionalIterator keys;
+        private long[] current = new long[16];
+        private int currentSize;
+        private int next;
+
+        private Cursor(long after) {
+            if (after == START) {
+                keys = order.iterator();
+                return;
+            }
+
+            long key = sectionKey(after);
+            keys = order.iterator(key);
+            Section section = sections.get(key);
+            if (section != null) {
+                load(section);
+                while (next < currentSize && comparePositions(current[next], after) <= 0) next++;
+            }
+        }
+
+        public boolean hasNext() {
+            while (next == currentSize) {
+                if (!keys.hasNext()) return false;
+                load(sections.get(keys.nextLong()));
+            }
+            return true;
+        }
+
+        public long next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return current[next++];
+        }
+
+        /**
+         * Skips up to {@code n} positions. Whole sections are skipped by their size without being sorted.
+         *
+         * @return the number of positions actually skipped
+         */
+        public int skip(int n) {
+            int skipped = 0;
+            while (skipped < n) {
+                int left = currentSize - next;
+                if (left > 0) {
+                    int k = Math.min(left, n - skipped);
+                    next += k;
+                    skipped += k;
+                    continue;
+                }
+                if (!keys.hasNext()) break;
+
+                Section section = sections.get(keys.nextLong());
+                if (section.size <= n - skipped) {
+                    skipped += section.size;
+                } else {
+                    load(section);
+                }
+            }
+            return skipped;
+        }
+
+        private void load(Section section) {
+            if (current.length < section.size) current = new long[section.size];
+            System.arraycopy(section.positions, 0, current, 0, section.size);
+            LongArrays.quickSort(current, 0, section.size, SectionIndex::comparePositions);
+            currentSize = section.size;
+            next = 0;
+        }
+    }
+
+    private static int compareSections(long a, long b) {
+        int ax = SectionPos.x(a);
+        int az = SectionPos.z(a);
+        int bx = SectionPos.x(b);
+        int bz = SectionPos.z(b);
+        int c = Integer.compare(ax >> 5, bx >> 5);
+        if (c == 0) c = Integer.compare(az >> 5, bz >> 5);
+        if (c == 0) c = Integer.compare(ax, bx);
+        if (c == 0) c = Integer.compare(az, bz);
+        if (c == 0) c = Integer.compare(SectionPos.y(a), SectionPos.y(b));
+        return c;
+    }
+
+    private static int comparePositions(long a, long b) {
+        int c = Integer.compare(BlockPos.getX(a), BlockPos.getX(b));
+        if (c == 0) c = Integer.compare(BlockPos.getY(a), BlockPos.getY(b));
+        if (c == 0) c = Integer.compare(BlockPos.getZ(a), BlockPos.getZ(b));
+        return c;
+    }
+
+    /**
+     * Visits every non-empty section that has at least one block within {@code radius} of the given
+     * position. Chooses between probing the cube of candidate section keys and scanning the bucket map,
+     * whichever touches fewer entries, so the cost tracks what is nearby rather than what is stored.
+     *
+     * @param x       block x of the centre
+     * @param y       block y of the centre
+     * @param z       block z of the centre
+     * @param radius  radius in blocks
+     * @param visitor receives each matching section
+     */
+    public void forEachSectionNear(int x, int y, int z, int radius, Consumer<Section> visitor) {
+        if (sections.isEmpty()) return;
+
+        long radiusSq = (long) radius * radius;
+        int minSx = SectionPos.blockToSectionCoord(x - radius);
+        int maxSx = SectionPos.blockToSectionCoord(x + radius);
+        int minSy = SectionPos.blockToSectionCoord(y - radius);
+        int maxSy = SectionPos.blockToSectionCoord(y + radius);
+        int minSz = SectionPos.blockToSectionCoord(z - radius);
+        int maxSz = SectionPos.blockToSectionCoord(z + radius);
+
+        long cube = (long) (maxSx - minSx + 1) * (maxSy - minSy + 1) * (maxSz - minSz + 1);
+
+        if (cube < sections.size()) {
+            for (int sx = minSx; sx <= maxSx; sx++) {
+                for (int sz = minSz; sz <= maxSz; sz++) {
+                    for (int sy = minSy; sy <= maxSy; sy++) {
+                        Section section = sections.get(SectionPos.asLong(sx, sy, sz));
+                        if (section != null && section.distSqr(x, y, z) <= radiusSq) visitor.accept(section);
+                    }
+                }
+            }
+            return;
+        }
+
+        for (Long2ObjectMap.Entry<Section> e : sections.long2ObjectEntrySet()) {
+            Section section = e.getValue();
+            if (section.distSqr(x, y, z) <= radiusSq) visitor.accept(section);
+        }
+    }
+
+    /**
+     * Visits every non-empty section that intersects the given cuboid. Like {@link #forEachSectionNear},
+     * probes candidate keys or scans the bucket map, whichever touches fewer entries. Sections on the
+     * boundary are passed whole; callers filter their positions if they need exact bounds.
+     *
+     * @param minX    inclusive minimum block x
+     * @param minY    inclusive minimum block y
+     * @param minZ    inclusive minimum block z
+     * @param maxX    inclusive maximum block x
+     * @param maxY    inclusive maximum block y
+     * @param maxZ    inclusive maximum block z
+     * @param visitor receives each matching section
+     */
+    public void forEachSectionIn(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Consumer<Section> visitor) {
+        if (sections.isEmpty()) return;
+
+        int minSx = SectionPos.blockToSectionCoord(minX);
+        int maxSx = SectionPos.blockToSectionCoord(maxX);
+        int minSy = SectionPos.blockToSectionCoord(minY);
+        int maxSy = SectionPos.blockToSectionCoord(maxY);
+        int minSz = SectionPos.blockToSectionCoord(minZ);
+        int maxSz = SectionPos.blockToSectionCoord(maxZ);
+
+        long cube = (long) (maxSx - minSx + 1) * (maxSy - minSy + 1) * (maxSz - minSz + 1);
+
+        if (cube < sections.size()) {
+            for (int sx = minSx; sx <= maxSx; sx++) {
+                for (int sz = minSz; sz <= maxSz; sz++) {
+                    for (int sy = minSy; sy <= maxSy; sy++) {
+                        Section section = sections.get(SectionPos.asLong(sx, sy, sz));
+                        if (section != null) visitor.accept(section);
+                    }
+                }
+            }
+            return;
+        }
+
+        for (Section section : sections.values()) {
+            long key = section.key;
+            int sx = SectionPos.x(key);
+            int sy = SectionPos.y(key);
+            int sz = SectionPos.z(key);
+            if (sx >= minSx && sx <= maxSx && sy >= minSy && sy <= maxSy && sz >= minSz && sz <= maxSz) {
+                visitor.accept(section);
+            }
+        }
+    }
+
+    /**
+     * Finds the {@code k} stored positions nearest to the given block, nearest first.
+     * <p>
+     * Sections are visited in growing cubic shells around the centre's section, and the search stops
+     * as soon as no unvisited shell can hold anything closer than the current k-th best. If the shells
+     * would touch more keys than there are sections, the remaining sections are scanned directly instead,
+     * so sparse data far away costs no more than one pass over the section map.
+     *
+     * @param x         block x of the centre
+     * @param y         block y of the centre
+     * @param z         block z of the centre
+     * @param k         how many positions to return at most
+     * @param maxRadius ignore positions farther than this many blocks
+     * @return up to {@code k} packed positions, sorted by distance
+     */
+    public long[] nearest(int x, int y, int z, int k, int maxRadius) {
+        if (k <= 0 || sections.isEmpty()) return new long[0];
+
+        NearestHeap heap = new NearestHeap(k, (long) maxRadius * maxRadius);
+        int cx = SectionPos.blockToSectionCoord(x);
+        int cy = SectionPos.blockToSectionCoord(y);
+        int cz = SectionPos.blockToSectionCoord(z);
+        int maxShell = SectionPos.blockToSectionCoord(maxRadius) + 1;
+
+        long probes = 0;
+        for (int r = 0; r <= maxShell; r++) {
+            // every section in shell r is at least this far away on some axis
+            long minDist = r == 0 ? 0 : (long) (r - 1) * 16 + 1;
+            if (minDist * minDist > heap.bound()) break;
+
+            long shellKeys = r == 0 ? 1 : (long) (2 * r + 1) * (2 * r + 1) * (2 * r + 1) - (long) (2 * r - 1) * (2 * r - 1) * (2 * r - 1);
+            if (probes + shellKeys > sections.size()) {
+                for (Section section : sections.values()) {
+                    if (chebyshev(section.key, cx, cy, cz) >= r) heap.offer(section, x, y, z);
+                }
+                break;
+            }
+            probes += shellKeys;
+
+            for (int dx = -r; dx <= r; dx++) {
+                for (int dz = -r; dz <= r; dz++) {
+                    boolean side = Math.abs(dx) == r || Math.abs(dz) == r;
+                    for (int dy = -r; dy <= r; dy += side || r == 0 ? 1 : 2 * r) {
+                        Section section = sections.get(SectionPos.asLong(cx + dx, cy + dy, cz + dz));
+                        if (section != null) heap.offer(section, x, y, z);
+                    }
+                }
+            }
+        }
+
+        return heap.sorted();
+    }
+
+    /**
+     * @return the stored position nearest to the given block within {@code maxRadius}, or {@code null}
+     *         if there is none
+     */
+    public BlockPos nearest(int x, int y, int z, int maxRadius) {
+        long[] found = nearest(x, y, z, 1, maxRadius);
+        return found.length == 0 ? null : BlockPos.of(found[0]);
+    }
+
+    /**
+     * Visits every stored position within {@code radius} blocks of the given block.
+     */
+    public void forEachWithin(int x, int y, int z, int radius, LongConsumer visitor) {
+        long radiusSq = (long) radius * radius;
+        forEachSectionNear(x, y, z, radius, section -> {
+            for (int i = 0; i < section.size; i++) {
+                long pos = section.positions[i];
+                if (distSqr(pos, x, y, z) <= radiusSq) visitor.accept(pos);
+            }
+        });
+    }
+
+    /**
+     * @return the number of stored positions within {@code radius} blocks of the given block
+     */
+    public int countWithin(int x, int y, int z, int radius) {
+        int[] count = new int[1];
+        forEachWithin(x, y, z, radius, pos -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * Visits every stored position inside the cuboid, bounds inclusive.
+     */
+    public void forEachInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, LongConsumer visitor) {
+        forEachSectionIn(minX, minY, minZ, maxX, maxY, maxZ, section -> {
+            for (int i = 0; i < section.size; i++) {
+                long pos = section.positions[i];
+                int px = BlockPos.getX(pos);
+                int py = BlockPos.getY(pos);
+                int pz = BlockPos.getZ(pos);
+                if (px >= minX && px <= maxX && py >= minY && py <= maxY && pz >= minZ && pz <= maxZ) {
+                    visitor.accept(pos);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the number of stored positions inside the cuboid, bounds inclusive
+     */
+    public int countInBox(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        int[] count = new int[1];
+        forEachInBox(minX, minY, minZ, maxX, maxY, maxZ, pos -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * @return squared distance between a packed position and a block
+     */
+    public static long distSqr(long pos, int x, int y, int z) {
+        long dx = BlockPos.getX(pos) - x;
+        long dy = BlockPos.getY(pos) - y;
+        long dz = BlockPos.getZ(pos) - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static int chebyshev(long sectionKey, int cx, int cy, int cz) {
+        return Math.max(Math.abs(SectionPos.x(sectionKey) - cx),
+                Math.max(Math.abs(SectionPos.y(sectionKey) - cy), Math.abs(SectionPos.z(sectionKey) - cz)));
+    }
+
+    /**
+     * Bounded max-heap of the k best (distance, position) pairs seen so far.
+     */
+    private static final class NearestHeap {
+        private final long[] dist;
+        private final long[] pos;
+        private final long maxDistSq;
+        private int size;
+
+        NearestHeap(int k, long maxDistSq) {
+            this.dist = new long[k];
+            this.pos = new long[k];
+            this.maxDistSq = maxDistSq;
+        }
+
+        /**
+         * @return the squared distance a candidate must beat to be kept
+         */
+        long bound() {
+            return size < dist.length ? maxDistSq : dist[0];
+        }
+
+        void offer(Section section, int x, int y, int z) {
+            if (section.distSqr(x, y, z) > bound()) return;
+            for (int i = 0; i < section.size; i++) {
+                long p = section.positions[i];
+                long d = distSqr(p, x, y, z);
+                if (d > bound() || (d == bound() && size == dist.length)) continue;
+
+                if (size < dist.length) {
+                    dist[size] = d;
+                    pos[size] = p;
+                    siftUp(size++);
+                } else {
+                    dist[0] = d;
+                    pos[0] = p;
+                    siftDown(0);
+                }
+            }
+        }
+
+        long[] sorted() {
+            long[] out = new long[size];
+            for (int i = size - 1; i >= 0; i--) {
+                out[i] = pos[0];
+                size--;
+                dist[0] = dist[size];
+                pos[0] = pos[size];
+                siftDown(0);
+            }
+            return out;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (dist[parent] >= dist[i]) return;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) return;
+                int largest = left + 1 < size && dist[left + 1] > dist[left] ? left + 1 : left;
+                if (dist[i] >= dist[largest]) return;
+                swap(i, largest);
+                i = largest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            long d = dist[a];
+            dist[a] = dist[b];
+            dist[b] = d;
+            long p = pos[a];
+            pos[a] = pos[b];
+            pos[b] = p;
+        }
+    }
+
+    /**
+     * @return approximate retained heap size in bytes
+     */
+    public long estimateBytes() {
+        long bytes = all.estimateBytes();
+        bytes += (long) sections.size() * (16 + 8 + 8);
+        for (Section s : sections.values()) bytes += 32 + 16 + (long) s.positions.length * Long.BYTES;
+        bytes += 16 + (long) order.size() * 40;
+        return bytes;
+    }
+}
@@ -0,0 +1,66 @@
+package lu.apwbd.storecoords.util;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Interns strings to small int ids so that columns can store an {@code int} per row instead of a
+ * reference to a per-row {@code String}. Id {@code 0} is reserved for "no value"; real ids start at 1
+ * and are never reused. Not thread-safe.
+ */
+public final class StringPool {
+
+    public static final int NONE = 0;
+
+    private final List<String> values = new ArrayList<>();
+    private final Object2IntOpenHashMap<String> ids = new Object2IntOpenHashMap<>();
+
+    public StringPool() {
+        values.add(null);
+        ids.defaultReturnValue(NONE);
+    }
+
+    /**
+     * @return the id of {@code value}, assigning a new one if it is not pooled yet; {@link #NONE} for {@code null}
+     */
+    public int intern(String value) {
+        if (value == null) return NONE;
+
+        int id = ids.getInt(value);
+        if (id != NONE) return id;
+
+        id = values.size();
+        values.add(value);
+        ids.put(value, id);
+        return id;
+    }
+
+    /**
+     * @return the id of {@code value}, or {@link #NONE} if it was never pooled
+     */
+    public int find(String value) {
+        return value == null ? NONE : ids.getInt(value);
+    }
+
+    /**
+     * @return the string with the given id, or {@code null} for {@link #NONE}
+     */
+    public String get(int id) {
+        return values.get(id);
+    }
+
+    /**
+     * @return one more than the highest id handed out so far
+     */
+    public int size() {
+        return values.size();
+    }
+
+    public long estimateBytes() {
+        long bytes = 64 + (long) values.size() * (8 + 16);
+        for (int i = 1; i < values.size(); i++) bytes += 40 + values.get(i).length();
+        return bytes;
+    }
+}
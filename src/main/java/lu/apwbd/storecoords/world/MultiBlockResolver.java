@@ -1,66 +1,262 @@
 package lu.apwbd.storecoords.world;
 
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import lu.apwbd.storecoords.StoreCoords;
+import lu.apwbd.storecoords.util.LongPosSet;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.level.BlockGetter;
+import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.BedBlock;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.ChestBlock;
 import net.minecraft.world.level.block.DoorBlock;
 import net.minecraft.world.level.block.DoublePlantBlock;
 import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.block.state.properties.BedPart;
+import net.minecraft.world.level.block.state.properties.BlockStateProperties;
 import net.minecraft.world.level.block.state.properties.ChestType;
 import net.minecraft.world.level.block.state.properties.DoubleBlockHalf;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraftforge.registries.ForgeRegistries;
 
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
 
+/**
+ * Resolves which blocks are stored or removed together with a targeted block.
+ * <p>
+ * Multi-block structures are described by {@link PartnerResolver}s registered per block or per block
+ * class. Doors, double plants, beds and double chests are built in; other mods can add their own
+ * structures through {@link #register(Block, PartnerResolver)} and {@link #register(Class, PartnerResolver)}
+ * during mod setup. Once registries are frozen, the registrations are flattened into one lookup table
+ * keyed by {@code Block}, so resolving a block is a single map lookup and a block without a resolver
+ * costs nothing beyond that.
+ */
 public final class MultiBlockResolver {
 
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /** Registered per block; take precedence over class rules. Guarded by the class monitor. */
+    private static final Map<Block, PartnerResolver> BY_BLOCK = new LinkedHashMap<>();
+    /** Registered per block class, in registration order; later rules win. Guarded by the class monitor. */
+    private static final List<Map.Entry<Class<? extends Block>, PartnerResolver>> BY_CLASS = new ArrayList<>();
+
+    /** The flattened lookup table, or {@code null} until built or after a late registration. */
+    private static volatile Reference2ObjectOpenHashMap<Block, PartnerResolver> table;
+
+    static {
+        register(DoorBlock.class, MultiBlockResolver::doubleHalf);
+        register(DoublePlantBlock.class, MultiBlockResolver::doubleHalf);
+        register(BedBlock.class, MultiBlockResolver::bed);
+        register(ChestBlock.class, MultiBlockResolver::chest);
+    }
+
     private MultiBlockResolver() {}
 
     /**
-     * Identifies and resolves all connected block positions based on the type of block present at the specified position.
-     * This method handles specific multi-block structures such as doors, double plants, beds, and chests,
-     * ensuring related block positions are included in the resulting*/
-    public static Set<BlockPos> resolve(Level level, BlockPos pos) {
-        Set<BlockPos> out = new LinkedHashSet<>();
-        out.add(pos);
+     * Registers a resolver for one block. Replaces any resolver previously registered for it.
+     *
+     * @param block    the block
+     * @param resolver finds the block's partners
+     */
+    public static synchronized void register(Block block, PartnerResolver resolver) {
+        BY_BLOCK.put(block, resolver);
+        table = null;
+    }
+
+    /**
+     * Registers a resolver for every block that is an instance of {@code type}, including blocks of
+     * subclasses. If several class rules match a block, the one registered last is used.
+     *
+     * @param type     the block class
+     * @param resolver finds the partners of blocks of that class
+     */
+    public static synchronized void register(Class<? extends Block> type, PartnerResolver resolver) {
+        BY_CLASS.add(Map.entry(type, resolver));
+        table = null;
+    }
+
+    /**
+     * Flattens all registrations into the per-block lookup table. Called once registries are frozen;
+     * a registration after that simply causes the table to be rebuilt on next use.
+     */
+    public static void freeze() {
+        lookup();
+    }
+
+    /**
+     * Adds the targeted block and the other blocks of its structure to {@code out}. Allocates nothing
+     * for blocks without a registered resolver.
+     *
+     * @param level the level to read from
+     * @param pos   the targeted block
+     * @param out   receives the packed positions ({@code BlockPos.asLong()})
+     */
+    public static void resolve(Level level, BlockPos pos, LongPosSet out) {
+        out.add(pos.asLong());
 
         BlockState state = level.getBlockState(pos);
+        PartnerResolver resolver = lookup().get(state.getBlock());
+        if (resolver != null) resolver.resolve(level, pos, state, out::add);
+    }
 
-        if (state.getBlock() instanceof DoorBlock && state.hasProperty(DoorBlock.HALF)) {
-            DoubleBlockHalf half = state.getValue(DoorBlock.HALF);
-            out.add(half == DoubleBlockHalf.LOWER ? pos.above() : pos.below());
-            return out;
-        }
+    private static Reference2ObjectOpenHashMap<Block, PartnerResolver> lookup() {
+        Reference2ObjectOpenHashMap<Block, PartnerResolver> t = table;
+        return t != null ? t : build();
+    }
 
-        if (state.getBlock() instanceof DoublePlantBlock && state.hasProperty(DoublePlantBlock.HALF)) {
-            DoubleBlockHalf half = state.getValue(DoublePlantBlock.HALF);
-            out.add(half == DoubleBlockHalf.LOWER ? pos.above() : pos.below());
-            return out;
+    private static synchronized Reference2ObjectOpenHashMap<Block, PartnerResolver> build() {
+        if (table != null) return table;
+
+        Reference2ObjectOpenHashMap<Block, PartnerResolver> t = new Reference2ObjectOpenHashMap<>();
+        for (Block block : ForgeRegistries.BLOCKS.getValues()) {
+            PartnerResolver resolver = BY_BLOCK.get(block);
+            if (resolver == null) resolver = byClass(block);
+            if (resolver == null && block.defaultBlockState().hasProperty(BlockStateProperties.DOUBLE_BLOCK_HALF)) {
+                // covers modded tall plants and doors that do not extend the vanilla classes
+                resolver = MultiBlockResolver::doubleHalf;
+            }
+            if (resolver != null) t.put(block, resolver);
         }
 
-        if (state.getBlock() instanceof BedBlock && state.hasProperty(BedBlock.PART)) {
-            BedPart part = state.getValue(BedBlock.PART);
-            BlockPos other = (part == BedPart.FOOT)
-                    ? pos.relative(state.getValue(BedBlock.FACING))
-                    : pos.relative(state.getValue(BedBlock.FACING).getOpposite());
-            out.add(other);
-            return out;
+        StoreCoords.LOGGER.debug("Built multi-block resolver table for {} blocks", t.size());
+        table = t;
+        return t;
+    }
+
+    private static PartnerResolver byClass(Block block) {
+        for (int i = BY_CLASS.size() - 1; i >= 0; i--) {
+            Map.Entry<Class<? extends Block>, PartnerResolver> rule = BY_CLASS.get(i);
+            if (rule.getKey().isInstance(block)) return rule.getValue();
         }
+        return null;
+    }
+
+    private static void doubleHalf(BlockGetter level, BlockPos pos, BlockState state,
+                                   LongConsumer partners) {
+        if (!state.hasProperty(BlockStateProperties.DOUBLE_BLOCK_HALF)) return;
+
+        DoubleBlockHalf half = state.getValue(BlockStateProperties.DOUBLE_BLOCK_HALF);
+        partners.accept(BlockPos.offset(pos.asLong(), half == DoubleBlockHalf.LOWER ? Direction.UP : Direction.DOWN));
+    }
+
+    private static void bed(BlockGetter level, BlockPos pos, BlockState state,
+                            LongConsumer partners) {
+        if (!state.hasProperty(BedBlock.PART)) return;
 
-        if (state.getBlock() instanceof ChestBlock && state.hasProperty(ChestBlock.TYPE)) {
-            ChestType type = state.getValue(ChestBlock.TYPE);
-            if (type != ChestType.SINGLE) {
-                BlockPos other = pos.relative(
-                        type == ChestType.LEFT
-                                ? state.getValue(ChestBlock.FACING).getClockWise()
-                                : state.getValue(ChestBlock.FACING).getCounterClockWise()
-                );
-                out.add(other);
+        Direction facing = state.getValue(BedBlock.FACING);
+        partners.accept(BlockPos.offset(pos.asLong(),
+                state.getValue(BedBlock.PART) == BedPart.FOOT ? facing : facing.getOpposite()));
+    }
+
+    private static void chest(BlockGetter level, BlockPos pos, BlockState state,
+                              LongConsumer partners) {
+        if (!state.hasProperty(ChestBlock.TYPE)) return;
+
+        ChestType type = state.getValue(ChestBlock.TYPE);
+        if (type == ChestType.SINGLE) return;
+
+        Direction facing = state.getValue(ChestBlock.FACING);
+        partners.accept(BlockPos.offset(pos.asLong(),
+                type == ChestType.LEFT ? facing.getClockWise() : facing.getCounterClockWise()));
+    }
+
+    /**
+     * Collects the blocks connected to {@code pos} through shared faces, breadth first, so the nearest
+     * blocks are captured first when the cap is hit. A neighbour is connected if it is the same block as
+     * the start, or, when {@code tag} is given and the start block is in it, if it is in the tag too.
+     * Air never connects, and blocks in chunks that are not loaded count as not connected.
+     *
+     * @param level the level to read from
+     * @param pos   the start position; always part of the result unless it is air
+     * @param tag   optional tag widening what counts as the same block, or {@code null}
+     * @param max   maximum number of positions to collect
+     * @return the connected positions, packed with {@code BlockPos.asLong()}; holds exactly {@code max}
+     *         entries if the structure was cut off at the cap
+     */
+    public static LongPosSet resolveConnected(Level level, BlockPos pos, TagKey<Block> tag, int max) {
+        LongPosSet found = new LongPosSet(Math.min(max, 1024));
+
+        BlockState origin = level.getBlockState(pos);
+        if (origin.isAir() || max <= 0) return found;
+
+        Block block = origin.getBlock();
+        TagKey<Block> match = tag != null && origin.is(tag) ? tag : null;
+
+        ChunkReader reader = new ChunkReader(level);
+        long[] queue = new long[64];
+        int head = 0;
+        int tail = 0;
+
+        long start = pos.asLong();
+        found.add(start);
+        queue[tail++] = start;
+
+        while (head < tail && found.size() < max) {
+            long current = queue[head++];
+
+            for (Direction direction : DIRECTIONS) {
+                long next = BlockPos.offset(current, direction);
+                if (found.contains(next)) continue;
+
+                BlockState state = reader.getBlockState(next);
+                if (state.isAir()) continue;
+                if (match != null ? !state.is(match) : !state.is(block)) continue;
+
+                found.add(next);
+                if (found.size() >= max) break;
+
+                if (tail == queue.length) {
+                    // reclaim the consumed head before growing
+                    System.arraycopy(queue, head, queue, 0, tail - head);
+                    tail -= head;
+                    head = 0;
+                    if (tail == queue.length) queue = Arrays.copyOf(queue, queue.length * 2);
+                }
+                queue[tail++] = next;
             }
         }
 
-        return out;
+        return found;
+    }
+
+    /**
+     * Reads block states directly from chunk sections and keeps the last chunk, since a flood fill
+     * mostly steps to neighbours in the same chunk.
+     */
+    private static final class ChunkReader {
+        private final Level level;
+        private LevelChunk chunk;
+        private long chunkKey = Long.MIN_VALUE;
+
+        ChunkReader(Level level) {
+            this.level = level;
+        }
+
+        BlockState getBlockState(long pos) {
+            int x = BlockPos.getX(pos);
+            int y = BlockPos.getY(pos);
+            int z = BlockPos.getZ(pos);
+            if (level.isOutsideBuildHeight(y)) return Blocks.AIR.defaultBlockState();
+
+            long key = ChunkPos.asLong(x >> 4, z >> 4);
+            if (key != chunkKey) {
+                chunk = level.getChunkSource().getChunk(x >> 4, z >> 4, false);
+                chunkKey = key;
+            }
+            if (chunk == null) return Blocks.AIR.defaultBlockState();
+
+            LevelChunkSection section = chunk.getSection(chunk.getSectionIndex(y));
+            return section.getBlockState(x & 15, y & 15, z & 15);
+        }
     }
 }
@@ -0,0 +1,28 @@
+package lu.apwbd.storecoords.world;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.BlockGetter;
+import net.minecraft.world.level.block.state.BlockState;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Finds the other blocks that belong to the same structure as a given block, e.g. the second half of
+ * a door. Implementations are registered with {@link MultiBlockResolver} for a block or a block class
+ * and are only called for blocks they were registered for.
+ * <p>
+ * Called on the client thread whenever a block is stored or removed, so implementations should not
+ * allocate more than they have to; emitting packed positions lets them avoid {@code BlockPos} instances.
+ */
+@FunctionalInterface
+public interface PartnerResolver {
+
+    /**
+     * @param level    the level the block is in
+     * @param pos      the position of the block
+     * @param state    the block's current state
+     * @param partners receives the packed positions ({@code BlockPos.asLong()}) of the other blocks of
+     *                 the structure; {@code pos} itself need not be emitted
+     */
+    void resolve(BlockGetter level, BlockPos pos, BlockState state, LongConsumer partners);
+}
@@ -0,0 +1,132 @@
+package lu.apwbd.storecoords.world;
+
+import lu.apwbd.storecoords.util.LongPosSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+
+/**
+ * Collects every non-air block of a cuboid, a bounded number of blocks per call, so that large regions
+ * can be scanned across several ticks without stalling the client.
+ * <p>
+ * The region is walked one chunk column at a time and, within a column, one horizontal layer at a
+ * time. Block states are read straight from the chunk section, and layers whose section holds only
+ * air are skipped without looking at individual blocks. Columns that are not loaded on the client are
+ * skipped and counted. Client thread only.
+ */
+public final class RegionScan {
+
+    private final Level level;
+    private final int minX, minY, minZ, maxX, maxY, maxZ;
+    private final int minChunkX, minChunkZ, columnsX, columnCount;
+
+    private final LongPosSet found = new LongPosSet();
+    private int column;
+    private int y;
+    private int unloadedColumns;
+
+    /**
+     * @param level the level to scan
+     * @param a     one corner of the cuboid, inclusive
+     * @param b     the opposite corner, inclusive
+     */
+    public RegionScan(Level level, BlockPos a, BlockPos b) {
+        this.level = level;
+        this.minX = Math.min(a.getX(), b.getX());
+        this.minZ = Math.min(a.getZ(), b.getZ());
+        this.maxX = Math.max(a.getX(), b.getX());
+        this.maxZ = Math.max(a.getZ(), b.getZ());
+        this.minY = Math.max(Math.min(a.getY(), b.getY()), level.getMinBuildHeight());
+        this.maxY = Math.min(Math.max(a.getY(), b.getY()), level.getMaxBuildHeight() - 1);
+
+        this.minChunkX = minX >> 4;
+        this.minChunkZ = minZ >> 4;
+        this.columnsX = (maxX >> 4) - minChunkX + 1;
+        this.columnCount = columnsX * ((maxZ >> 4) - minChunkZ + 1);
+        this.y = minY;
+    }
+
+    /**
+     * @return the number of blocks in the cuboid spanned by the two corners
+     */
+    public static long volume(BlockPos a, BlockPos b) {
+        return (long) (Math.abs(a.getX() - b.getX()) + 1)
+                * (Math.abs(a.getY() - b.getY()) + 1)
+                * (Math.abs(a.getZ() - b.getZ()) + 1);
+    }
+
+    public Level level() {
+        return level;
+    }
+
+    /**
+     * Scans until roughly {@code budget} blocks have been inspected or the region is done. A layer is
+     * never split, so one call may slightly overshoot the budget.
+     *
+     * @param budget number of blocks to inspect in this call
+     * @return {@code true} once the whole region has been scanned
+     */
+    public boolean step(int budget) {
+        int scanned = 0;
+
+        while (column < columnCount && scanned < budget) {
+            int chunkX = minChunkX + column % columnsX;
+            int chunkZ = minChunkZ + column / columnsX;
+
+            LevelChunk chunk = level.getChunkSource().getChunk(chunkX, chunkZ, false);
+            if (chunk == null || minY > maxY) {
+                if (chunk == null) unloadedColumns++;
+                nextColumn();
+                continue;
+            }
+
+            int x0 = Math.max(minX, chunkX << 4);
+            int x1 = Math.min(maxX, (chunkX << 4) + 15);
+            int z0 = Math.max(minZ, chunkZ << 4);
+            int z1 = Math.min(maxZ, (chunkZ << 4) + 15);
+
+            while (y <= maxY && scanned < budget) {
+                LevelChunkSection section = chunk.getSection(chunk.getSectionIndex(y));
+                if (!section.hasOnlyAir()) {
+                    for (int x = x0; x <= x1; x++) {
+                        for (int z = z0; z <= z1; z++) {
+                            if (!section.getBlockState(x & 15, y & 15, z & 15).isAir()) {
+                                found.add(BlockPos.asLong(x, y, z));
+                            }
+                        }
+                    }
+                    scanned += (x1 - x0 + 1) * (z1 - z0 + 1);
+                }
+                y++;
+            }
+
+            if (y > maxY) nextColumn();
+        }
+
+        return isDone();
+    }
+
+    public boolean isDone() {
+        return column >= columnCount;
+    }
+
+    /**
+     * @return the non-air positions found so far, packed with {@code BlockPos.asLong()}
+     */
+    public LongPosSet found() {
+        return found;
+    }
+
+    /**
+     * @return how many chunk columns were skipped because they were not loaded
+     */
+    public int unloadedColumns() {
+        return unloadedColumns;
+    }
+
+    private void nextColumn() {
+        column++;
+        y = minY;
+    }
+}
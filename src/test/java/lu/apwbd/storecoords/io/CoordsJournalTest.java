@@ -0,0 +1,139 @@
+package lu.apwbd.storecoords.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoordsJournalTest {
+
+    /** Size of the journal header, and of op, count and CRC of a record; each position adds eight bytes. */
+    private static final int HEADER = 4;
+    private static final int OVERHEAD = 1 + 4 + 4;
+
+    @TempDir
+    File dir;
+
+    @Test
+    void replaysEntriesInOrder() {
+        CoordsJournal journal = journal();
+        assertTrue(journal.append(List.of(add(1L, 2L, 3L), remove(2L))));
+        assertTrue(journal.append(List.of(add(2L))));
+
+        assertEquals(List.of("+1", "+2", "+3", "-2", "+2"), replay(journal));
+    }
+
+    @Test
+    void missingJournalReplaysNothing() {
+        assertEquals(List.of(), replay(journal()));
+    }
+
+    @Test
+    void tornTailIsTruncatedAndAppendingContinuesAfterIt() throws IOException {
+        CoordsJournal journal = journal();
+        journal.append(List.of(add(1L, 2L)));
+        long firstEnd = journal.size();
+        journal.append(List.of(add(3L, 4L)));
+        truncate(journal.size() - 3);
+
+        assertEquals(List.of("+1", "+2"), replay(journal));
+        assertEquals(firstEnd, journal.size());
+
+        journal.append(List.of(remove(1L)));
+        assertEquals(List.of("+1", "+2", "-1"), replay(journal));
+    }
+
+    @Test
+    void recordFailingItsChecksumEndsTheLog() throws IOException {
+        CoordsJournal journal = journal();
+        journal.append(List.of(add(1L)));
+        long firstEnd = journal.size();
+        journal.append(List.of(add(2L), add(3L)));
+
+        // flip a bit in the position of the second record
+        try (RandomAccessFile raf = new RandomAccessFile(file(), "rw")) {
+            long offset = firstEnd + 1 + 4;
+            raf.seek(offset);
+            int b = raf.read();
+            raf.seek(offset);
+            raf.write(b ^ 1);
+        }
+
+        assertEquals(List.of("+1"), replay(journal));
+        assertEquals(firstEnd, journal.size());
+        assertEquals(HEADER + OVERHEAD + 8, firstEnd);
+    }
+
+    @Test
+    void tornHeaderIsTruncated() throws IOException {
+        Files.write(file().toPath(), new byte[]{0x53, 0x43});
+
+        CoordsJournal journal = journal();
+        assertEquals(List.of(), replay(journal));
+        assertEquals(0, journal.size());
+
+        journal.append(List.of(add(5L)));
+        assertEquals(List.of("+5"), replay(journal));
+    }
+
+    @Test
+    void unknownHeaderIsMovedAsideUntouched() throws IOException {
+        byte[] foreign = {0x53, 0x43, 0x4A, 0x39, 1, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 7};
+        Files.write(file().toPath(), foreign);
+
+        CoordsJournal journal = journal();
+        assertEquals(List.of(), replay(journal));
+
+        File bad = new File(dir, CoordsManager.JOURNAL + ".bad");
+        assertFalse(file().exists());
+        assertArrayEquals(foreign, Files.readAllBytes(bad.toPath()));
+    }
+
+    @Test
+    void resetLeavesAnEmptyJournal() {
+        CoordsJournal journal = journal();
+        journal.append(List.of(add(1L, 2L)));
+
+        assertTrue(journal.reset());
+        assertEquals(HEADER, journal.size());
+        assertEquals(List.of(), replay(journal));
+    }
+
+    private CoordsJournal journal() {
+        return new CoordsJournal(file());
+    }
+
+    private File file() {
+        return new File(dir, CoordsManager.JOURNAL);
+    }
+
+    private void truncate(long length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file(), "rw")) {
+            raf.setLength(length);
+        }
+    }
+
+    private static List<String> replay(CoordsJournal journal) {
+        List<String> ops = new ArrayList<>();
+        assertTrue(journal.replay(p -> ops.add("+" + p), p -> ops.add("-" + p)));
+        return ops;
+    }
+
+    private static CoordStore.Change add(long... positions) {
+        return new CoordStore.Change(true, positions);
+    }
+
+    private static CoordStore.Change remove(long... positions) {
+        return new CoordStore.Change(false, positions);
+    }
+}
@@ -0,0 +1,104 @@
+package lu.apwbd.storecoords.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongPosSetTest {
+
+    @Test
+    void zeroIsAnOrdinaryKey() {
+        LongPosSet set = new LongPosSet();
+        assertFalse(set.contains(0L));
+        assertTrue(set.add(0L));
+        assertFalse(set.add(0L));
+        assertTrue(set.contains(0L));
+        assertEquals(1, set.size());
+        assertEquals(Set.of(0L), keys(set));
+
+        assertTrue(set.remove(0L));
+        assertFalse(set.remove(0L));
+        assertTrue(set.isEmpty());
+        assertEquals(-1, set.firstSlot());
+    }
+
+    @Test
+    void removalKeepsProbeChainsIntact() {
+        // a small fixed table with many keys forces long, wrapping probe chains
+        LongPosSet set = new LongPosSet(8);
+        Set<Long> expected = new HashSet<>();
+        for (long k = 1; k <= 12; k++) {
+            set.add(k);
+            expected.add(k);
+        }
+        for (long k = 1; k <= 12; k += 3) {
+            assertTrue(set.remove(k));
+            expected.remove(k);
+            for (long other : expected) assertTrue(set.contains(other), "lost " + other + " after removing " + k);
+        }
+        assertEquals(expected, keys(set));
+    }
+
+    @Test
+    void matchesHashSetUnderRandomEdits() {
+        Random random = new Random(42);
+        LongPosSet set = new LongPosSet();
+        Set<Long> expected = new HashSet<>();
+
+        for (int i = 0; i < 200_000; i++) {
+            // a narrow key range makes removes hit often and keeps the table crowded
+            long key = random.nextInt(4096) - 2048;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), set.remove(key));
+            } else {
+                assertEquals(expected.add(key), set.add(key));
+            }
+        }
+
+        assertEquals(expected.size(), set.size());
+        assertEquals(expected, keys(set));
+        for (long k = -2048; k < 2048; k++) assertEquals(expected.contains(k), set.contains(k));
+    }
+
+    @Test
+    void toArrayAndForEachSeeEveryKey() {
+        LongPosSet set = new LongPosSet();
+        for (long k = -50; k <= 50; k++) set.add(k * 31);
+
+        Set<Long> fromArray = new HashSet<>();
+        for (long k : set.toArray()) fromArray.add(k);
+        Set<Long> fromForEach = new HashSet<>();
+        set.forEach(fromForEach::add);
+
+        assertEquals(keys(set), fromArray);
+        assertEquals(keys(set), fromForEach);
+        assertEquals(101, fromArray.size());
+    }
+
+    @Test
+    void clearEmptiesTheSet() {
+        LongPosSet set = new LongPosSet();
+        set.add(0L);
+        set.add(7L);
+        set.clear();
+
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(0L));
+        assertFalse(set.contains(7L));
+        assertTrue(set.add(7L));
+    }
+
+    private static Set<Long> keys(LongPosSet set) {
+        Set<Long> keys = new HashSet<>();
+        for (int s = set.firstSlot(); s >= 0; s = set.nextSlot(s)) {
+            assertTrue(keys.add(set.keyAt(s)), "slot iteration repeated a key");
+        }
+        return keys;
+    }
+}